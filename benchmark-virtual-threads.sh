@@ -0,0 +1,106 @@
+#!/bin/bash
+
+# Throughput benchmark for comparing platform and virtual threads
+# Usage: ./benchmark-virtual-threads.sh [requests] [concurrency] [streams]
+#
+# Run it once per mode against a fresh stack, e.g.
+#   docker-compose up -d --build
+#   ./benchmark-virtual-threads.sh 2000 100 200
+#   JAVA_VERSION=21 VIRTUAL_THREADS_ENABLED=true docker-compose up -d --build
+#   ./benchmark-virtual-threads.sh 2000 100 200
+
+REQUESTS=${1:-1000}
+CONCURRENCY=${2:-50}
+STREAMS=${3:-100}
+BASE_URL=${BASE_URL:-http://localhost:8080}
+
+GREEN='\033[0;32m'
+BLUE='\033[0;34m'
+YELLOW='\033[1;33m'
+NC='\033[0m' # No Color
+
+if ! curl -s "$BASE_URL/actuator/health" > /dev/null; then
+    echo "❌ Order Service is not responding at $BASE_URL"
+    echo "Please start services with: docker-compose up"
+    exit 1
+fi
+
+echo "=========================================="
+echo "VIRTUAL THREAD BENCHMARK"
+echo "=========================================="
+echo "Requests:    $REQUESTS"
+echo "Concurrency: $CONCURRENCY"
+echo "SSE streams: $STREAMS"
+echo ""
+
+create_order() {
+    curl -s -o /dev/null -w "%{http_code} %{time_total}\n" -X POST "$1/api/orders" \
+        -H "Content-Type: application/json" \
+        -d "{
+            \"customerId\": \"BENCH-USER-$2\",
+            \"customerEmail\": \"bench$2@test.com\",
+            \"totalAmount\": 99.99,
+            \"items\": [{
+                \"productId\": \"PROD-001\",
+                \"productName\": \"Laptop\",
+                \"quantity\": 1,
+                \"price\": 99.99
+            }]
+        }"
+}
+export -f create_order
+
+# Keep SSE streams open on real orders while the load runs
+echo -e "${BLUE}Opening $STREAMS SSE streams...${NC}"
+stream_pids=()
+for i in $(seq 1 "$STREAMS"); do
+    order_id=$(curl -s -X POST "$BASE_URL/api/orders" \
+        -H "Content-Type: application/json" \
+        -d "{
+            \"customerId\": \"BENCH-STREAM-$i\",
+            \"customerEmail\": \"stream$i@test.com\",
+            \"totalAmount\": 99.99,
+            \"items\": [{
+                \"productId\": \"PROD-001\",
+                \"productName\": \"Laptop\",
+                \"quantity\": 1,
+                \"price\": 99.99
+            }]
+        }" | jq -r '.orderId' 2> /dev/null)
+    if [ "$order_id" != "null" ] && [ -n "$order_id" ]; then
+        curl -s -N -o /dev/null "$BASE_URL/api/orders/$order_id/stream" &
+        stream_pids+=($!)
+    fi
+done
+sleep 2
+
+echo -e "${BLUE}Creating $REQUESTS orders with $CONCURRENCY concurrent clients...${NC}"
+results=$(mktemp)
+start=$(date +%s.%N)
+seq 1 "$REQUESTS" | xargs -P "$CONCURRENCY" -I {} bash -c "create_order $BASE_URL {}" > "$results"
+end=$(date +%s.%N)
+
+kill "${stream_pids[@]}" 2> /dev/null
+wait 2> /dev/null
+
+elapsed=$(echo "$end - $start" | bc)
+ok=$(grep -c '^20[01] ' "$results")
+failed=$((REQUESTS - ok))
+
+echo ""
+echo "=========================================="
+echo "RESULTS"
+echo "=========================================="
+echo -e "Elapsed:     ${GREEN}${elapsed}s${NC}"
+echo -e "Throughput:  ${GREEN}$(echo "scale=1; $REQUESTS / $elapsed" | bc) req/s${NC}"
+echo -e "Succeeded:   ${GREEN}$ok${NC}"
+if [ "$failed" -gt 0 ]; then
+    echo -e "Failed:      ${YELLOW}$failed${NC} (see status codes below)"
+    cut -d' ' -f1 "$results" | sort | uniq -c
+fi
+sort -n -k2 "$results" | awk '{ t[NR] = $2 } END {
+    printf "Latency p50: %.3fs\n", t[int(NR * 0.50) + 1]
+    printf "Latency p95: %.3fs\n", t[int(NR * 0.95) + 1]
+    printf "Latency p99: %.3fs\n", t[int(NR * 0.99) + 1]
+}'
+rm -f "$results"
@@ -0,0 +1,67 @@
+package com.orderms.common.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Rate-limits the per-order lines of the saga hot path, marked with {@link #HOT_PATH}:
+ * each logger lets through {@code permitsPerSecond} of them per second and drops the
+ * rest before a logging event is even created. WARN and ERROR are never dropped.
+ * Registered in logback-spring.xml, outside the application context.
+ */
+public class HotPathLogSampler extends TurboFilter {
+
+    public static final Marker HOT_PATH = MarkerFactory.getMarker("HOT_PATH");
+
+    private static final int COUNT_BITS = 24;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final LongAdder SUPPRESSED = new LongAdder();
+
+    // Per logger: the current second in the high bits, the lines let through in it in the low bits
+    private final ConcurrentMap<String, AtomicLong> windows = new ConcurrentHashMap<>();
+    private int permitsPerSecond = 20;
+
+    public void setPermitsPerSecond(int permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    public static long suppressed() {
+        return SUPPRESSED.sum();
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (marker == null || !marker.contains(HOT_PATH) || level.isGreaterOrEqual(Level.WARN)
+                || permitsPerSecond <= 0 || !level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+        if (tryAcquire(windows.computeIfAbsent(logger.getName(), name -> new AtomicLong()))) {
+            return FilterReply.NEUTRAL;
+        }
+        SUPPRESSED.increment();
+        return FilterReply.DENY;
+    }
+
+    boolean tryAcquire(AtomicLong window) {
+        long second = System.currentTimeMillis() / 1000;
+        while (true) {
+            long current = window.get();
+            long count = current >>> COUNT_BITS == second ? current & COUNT_MASK : 0;
+            if (count >= permitsPerSecond) {
+                return false;
+            }
+            if (window.compareAndSet(current, second << COUNT_BITS | (count + 1))) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.orderms.common.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.annotation.EnableKafkaRetryTopic;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+
+/**
+ * Non-blocking retries for the saga listeners. A failing record is moved to a
+ * delay topic with exponential backoff instead of being retried in place, so the
+ * rest of the partition keeps flowing; after the last attempt it lands on the DLT.
+ * Topic suffixes carry the service name ({@code order-service} retries on
+ * {@code <topic>-order-retry-N}) because the source topics are shared between
+ * consumer groups; {@link com.orderms.common.kafka.DlqReplayer} relies on the naming.
+ */
+@Configuration
+@EnableKafkaRetryTopic
+public class KafkaRetryConfig {
+
+    @Value("${saga.retry.attempts:4}")
+    private int attempts;
+
+    @Value("${saga.retry.initial-delay-ms:1000}")
+    private long initialDelayMs;
+
+    @Value("${saga.retry.multiplier:2.0}")
+    private double multiplier;
+
+    @Value("${saga.retry.max-delay-ms:30000}")
+    private long maxDelayMs;
+
+    @Bean
+    public RetryTopicConfiguration sagaRetryTopicConfiguration(KafkaTemplate<String, Object> kafkaTemplate,
+                                                               @Value("${spring.application.name}") String applicationName) {
+        String service = serviceName(applicationName);
+        return RetryTopicConfigurationBuilder
+                .newInstance()
+                .maxAttempts(attempts)
+                .exponentialBackoff(initialDelayMs, multiplier, maxDelayMs)
+                .retryTopicSuffix("-" + service + "-retry")
+                .dltSuffix("-" + service + "-dlt")
+                .suffixTopicsWithIndexValues()
+                .create(kafkaTemplate);
+    }
+
+    public static String serviceName(String applicationName) {
+        return applicationName.replaceFirst("-service$", "");
+    }
+}
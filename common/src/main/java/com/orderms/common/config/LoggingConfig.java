@@ -0,0 +1,21 @@
+package com.orderms.common.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Exposes how many hot-path lines {@link HotPathLogSampler} has dropped.
+ */
+@Configuration
+public class LoggingConfig {
+
+    @Bean
+    public MeterBinder hotPathLogMeterBinder() {
+        return registry -> FunctionCounter.builder("logging.hot_path.suppressed", HotPathLogSampler.class,
+                        sampler -> HotPathLogSampler.suppressed())
+                .description("Hot-path log lines dropped by the per-logger rate limit")
+                .register(registry);
+    }
+}
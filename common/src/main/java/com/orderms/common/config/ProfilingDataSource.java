@@ -0,0 +1,161 @@
+package com.orderms.common.config;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+
+/**
+ * Hands out connections whose statements report their latency and row counts to the
+ * {@link SqlProfiler}. Statements are timed around execute*; rows are counted as a
+ * result set is read (or taken from the update count) and reported when it closes.
+ */
+public class ProfilingDataSource extends DelegatingDataSource implements AutoCloseable {
+
+    private static final Set<String> EXECUTE = Set.of(
+            "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+
+    private final ObjectProvider<SqlProfiler> profilerProvider;
+    private volatile SqlProfiler profiler;
+
+    public ProfilingDataSource(DataSource target, ObjectProvider<SqlProfiler> profilerProvider) {
+        super(target);
+        this.profilerProvider = profilerProvider;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection(username, password));
+    }
+
+    @Override
+    public void close() {
+        if (getTargetDataSource() instanceof AutoCloseable target) {
+            try {
+                target.close();
+            } catch (Exception e) {
+                throw new IllegalStateException("Could not close the profiled DataSource", e);
+            }
+        }
+    }
+
+    // Resolved on first use, so wrapping the DataSource does not create the profiler early
+    private SqlProfiler profiler() {
+        SqlProfiler current = profiler;
+        if (current == null) {
+            current = profilerProvider.getObject();
+            profiler = current;
+        }
+        return current;
+    }
+
+    private Connection wrap(Connection connection) {
+        return proxy(Connection.class, connection, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof Statement statement) {
+                // The SQL of prepared statements is known up front; plain ones pass it to execute
+                String sql = method.getName().startsWith("prepare") ? (String) args[0] : null;
+                return wrap(statement, sql);
+            }
+            return result;
+        });
+    }
+
+    private Statement wrap(Statement statement, String preparedSql) {
+        Class<? extends Statement> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+        return proxy(type, statement, (proxy, method, args) -> {
+            String name = method.getName();
+            if (EXECUTE.contains(name)) {
+                String caller = profiler().currentMethod();
+                String sql = preparedSql != null ? preparedSql
+                        : args != null && args.length > 0 && args[0] instanceof String s ? s : null;
+                long start = System.nanoTime();
+                Object result = invoke(statement, method, args);
+                profiler().statement(caller, sql, preparedSql != null, System.nanoTime() - start);
+                return result(caller, result);
+            }
+            if ("getResultSet".equals(name)) {
+                Object result = invoke(statement, method, args);
+                return result instanceof ResultSet resultSet ? wrap(resultSet, profiler().currentMethod()) : result;
+            }
+            return invoke(statement, method, args);
+        });
+    }
+
+    private Object result(String method, Object result) {
+        if (result instanceof ResultSet resultSet) {
+            return wrap(resultSet, method);
+        }
+        if (result instanceof Integer count) {
+            profiler().rows(method, Math.max(count, 0));
+        } else if (result instanceof Long count) {
+            profiler().rows(method, Math.max(count, 0));
+        } else if (result instanceof int[] counts) {
+            long total = 0;
+            for (int count : counts) {
+                total += Math.max(count, 0);
+            }
+            profiler().rows(method, total);
+        } else if (result instanceof long[] counts) {
+            long total = 0;
+            for (long count : counts) {
+                total += Math.max(count, 0);
+            }
+            profiler().rows(method, total);
+        }
+        return result;
+    }
+
+    private ResultSet wrap(ResultSet resultSet, String method) {
+        long[] rows = new long[1];
+        boolean[] closed = new boolean[1];
+        return proxy(ResultSet.class, resultSet, (proxy, m, args) -> {
+            String name = m.getName();
+            Object result = invoke(resultSet, m, args);
+            if ("next".equals(name) && Boolean.TRUE.equals(result)) {
+                rows[0]++;
+            } else if ("close".equals(name) && !closed[0]) {
+                closed[0] = true;
+                profiler().rows(method, rows[0]);
+            }
+            return result;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<? extends T> type, T target, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(ProfilingDataSource.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> switch (method.getName()) {
+                    // Identity, so pools and transaction managers can match a proxy to itself
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "toString" -> "Profiling" + target;
+                    default -> handler.invoke(proxy, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
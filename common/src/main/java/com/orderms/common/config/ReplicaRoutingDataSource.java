@@ -0,0 +1,164 @@
+package com.orderms.common.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends the connections of read-only transactions to a streaming replica of one
+ * database, and everything else to its primary. A replica is used only while its
+ * replay lag, as last measured by {@link #refreshLag()}, is within {@code maxLagMs}.
+ * If the current request requires a WAL position ({@link #requirePosition}), the
+ * replica must also have replayed it, which is how a client reads its own writes;
+ * services that never set one route by lag alone. Otherwise the primary serves the
+ * read. The outermost DataSource has to be a {@code LazyConnectionDataSourceProxy},
+ * so that the connection is fetched after the transaction has been marked read-only.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final String PRIMARY = "primary";
+    private static final ThreadLocal<Long> REQUIRED_POSITION = new ThreadLocal<>();
+
+    private static final String LAG_QUERY = """
+            SELECT pg_last_wal_replay_lsn() - '0/0'::pg_lsn,
+                   CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0
+                        ELSE extract(epoch FROM now() - pg_last_xact_replay_timestamp()) * 1000 END
+            """;
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMs;
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter primaryReads;
+    private final Counter replicaReads;
+
+    public ReplicaRoutingDataSource(String name, DataSource primary, List<HikariDataSource> replicaPools,
+                                    long maxLagMs, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.maxLagMs = maxLagMs;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (HikariDataSource pool : replicaPools) {
+            replicas.add(new Replica(pool.getPoolName(), pool));
+            targets.put(pool.getPoolName(), pool);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        this.primaryReads = readCounter(meterRegistry, name, PRIMARY);
+        this.replicaReads = readCounter(meterRegistry, name, "replica");
+    }
+
+    /**
+     * Makes read-only transactions of the current thread wait for a replica that has
+     * replayed {@code position}, or fall back to the primary; {@code null} clears it.
+     */
+    public static void requirePosition(Long position) {
+        if (position == null) {
+            REQUIRED_POSITION.remove();
+        } else {
+            REQUIRED_POSITION.set(position);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicas.isEmpty() || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        Long required = REQUIRED_POSITION.get();
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.canServe(required, maxLagMs)) {
+                replicaReads.increment();
+                return replica.name;
+            }
+        }
+        primaryReads.increment();
+        return PRIMARY;
+    }
+
+    /**
+     * Measures how far every replica is behind its primary. Unreachable replicas, and
+     * servers that are not in recovery, are taken out of rotation until the next check.
+     */
+    public void refreshLag() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.pool.getConnection();
+                 Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery(LAG_QUERY)) {
+                result.next();
+                long replayed = result.getLong(1);
+                if (result.wasNull()) {
+                    throw new SQLException(replica.name + " is not a standby");
+                }
+                replica.update(replayed, result.getLong(2));
+            } catch (SQLException e) {
+                if (replica.healthy) {
+                    log.warn("Read replica {} taken out of rotation: {}", replica.name, e.getMessage());
+                }
+                replica.healthy = false;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+        if (primary instanceof HikariDataSource pool) {
+            pool.close();
+        }
+    }
+
+    private static Counter readCounter(MeterRegistry meterRegistry, String name, String target) {
+        return Counter.builder("datasource.readonly.transactions")
+                .description("Read-only transactions by the server that served them")
+                .tag("database", name)
+                .tag("target", target)
+                .register(meterRegistry);
+    }
+
+    private static class Replica {
+        final String name;
+        final HikariDataSource pool;
+        volatile long replayedPosition;
+        volatile long lagMs;
+        volatile boolean healthy;
+
+        Replica(String name, HikariDataSource pool) {
+            this.name = name;
+            this.pool = pool;
+        }
+
+        void update(long replayedPosition, long lagMs) {
+            this.replayedPosition = replayedPosition;
+            this.lagMs = lagMs;
+            if (!healthy) {
+                log.info("Read replica {} back in rotation ({} ms behind)", name, lagMs);
+            }
+            this.healthy = true;
+        }
+
+        boolean canServe(Long requiredPosition, long maxLagMs) {
+            return healthy && lagMs <= maxLagMs
+                    && (requiredPosition == null || replayedPosition >= requiredPosition);
+        }
+    }
+}
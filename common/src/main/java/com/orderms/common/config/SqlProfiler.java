@@ -0,0 +1,174 @@
+package com.orderms.common.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Cost of the SQL the service runs, without logging it. {@link ProfilingDataSource}
+ * reports every statement, which is attributed to the repository method it runs in
+ * ({@code implicit} outside one: lazy loads, flushes, plain JDBC). Statements are also
+ * summed per unit of work: a consumed record (named after its topic) or an HTTP request
+ * (named after its route). A SELECT of the same shape repeated {@code n-plus-one-threshold}
+ * times in one unit is counted as an N+1 and logged once per shape.
+ */
+@Component
+@Slf4j
+public class SqlProfiler {
+
+    static final String IMPLICIT = "implicit";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+\\b");
+
+    private final MeterRegistry meterRegistry;
+    private final int nPlusOneThreshold;
+    private final ThreadLocal<Deque<String>> methods = ThreadLocal.withInitial(ArrayDeque::new);
+    private final ThreadLocal<Unit> unit = new ThreadLocal<>();
+    private final Set<String> reported = ConcurrentHashMap.newKeySet();
+    // Registering a meter looks it up by name and tags, so each is built once per method or handler
+    private final Map<String, Timer> statementTimers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> rowSummaries = new ConcurrentHashMap<>();
+    private final Map<String, UnitMeters> unitMeters = new ConcurrentHashMap<>();
+
+    public SqlProfiler(MeterRegistry meterRegistry,
+                       @Value("${sql.profiler.n-plus-one-threshold:5}") int nPlusOneThreshold) {
+        this.meterRegistry = meterRegistry;
+        this.nPlusOneThreshold = nPlusOneThreshold;
+    }
+
+    void enterMethod(String method) {
+        methods.get().push(method);
+    }
+
+    void exitMethod() {
+        methods.get().poll();
+    }
+
+    String currentMethod() {
+        String method = methods.get().peek();
+        return method != null ? method : IMPLICIT;
+    }
+
+    /**
+     * Starts a unit of work on this thread; nested units are folded into the outer one.
+     */
+    public void beginUnit() {
+        Unit current = unit.get();
+        if (current != null) {
+            current.depth++;
+        } else {
+            unit.set(new Unit());
+        }
+    }
+
+    public void endUnit(String handler) {
+        Unit current = unit.get();
+        if (current == null || --current.depth > 0) {
+            return;
+        }
+        unit.remove();
+        UnitMeters meters = unitMeters.computeIfAbsent(handler, this::unitMeters);
+        meters.statements().record(current.statements);
+        meters.time().record(current.nanos, TimeUnit.NANOSECONDS);
+        current.repeated.forEach((shape, method) -> {
+            meterRegistry.counter("sql.n_plus_one", "handler", handler, "method", method).increment();
+            if (reported.add(handler + "|" + shape)) {
+                log.warn("N+1 in {}: {} ran the same query {}+ times: {}",
+                        handler, method, nPlusOneThreshold, shape);
+            }
+        });
+    }
+
+    public <V> RecordInterceptor<String, V> recordInterceptor() {
+        return new RecordInterceptor<>() {
+            @Override
+            public ConsumerRecord<String, V> intercept(ConsumerRecord<String, V> record, Consumer<String, V> consumer) {
+                if (record != null) {
+                    // A record is always the outermost unit on a consumer thread
+                    unit.remove();
+                    beginUnit();
+                }
+                return record;
+            }
+
+            @Override
+            public void afterRecord(ConsumerRecord<String, V> record, Consumer<String, V> consumer) {
+                endUnit(record.topic());
+            }
+        };
+    }
+
+    void statement(String method, String sql, boolean parameterized, long nanos) {
+        statementTimers.computeIfAbsent(method, name -> Timer.builder("sql.statement")
+                        .tag("method", name)
+                        .description("Latency of the statements run by the repository method")
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+
+        Unit current = unit.get();
+        if (current == null) {
+            return;
+        }
+        current.statements++;
+        current.nanos += nanos;
+        String trimmed = sql != null ? sql.stripLeading() : "";
+        if (trimmed.regionMatches(true, 0, "select", 0, 6)) {
+            String shape = parameterized ? trimmed : shapeOf(trimmed);
+            if (current.shapes.merge(shape, 1, Integer::sum) == nPlusOneThreshold) {
+                current.repeated.put(shape, method);
+            }
+        }
+    }
+
+    void rows(String method, long rows) {
+        rowSummaries.computeIfAbsent(method, name -> DistributionSummary.builder("sql.statement.rows")
+                        .tag("method", name)
+                        .description("Rows read or written per statement of the repository method")
+                        .register(meterRegistry))
+                .record(rows);
+    }
+
+    private UnitMeters unitMeters(String handler) {
+        return new UnitMeters(
+                DistributionSummary.builder("sql.unit.statements")
+                        .tag("handler", handler)
+                        .description("Statements run per consumed record or HTTP request")
+                        .register(meterRegistry),
+                Timer.builder("sql.unit.time")
+                        .tag("handler", handler)
+                        .description("Time spent in SQL per consumed record or HTTP request")
+                        .register(meterRegistry));
+    }
+
+    private static String shapeOf(String sql) {
+        return NUMBER_LITERAL.matcher(STRING_LITERAL.matcher(sql).replaceAll("?")).replaceAll("?");
+    }
+
+    private record UnitMeters(DistributionSummary statements, Timer time) {
+    }
+
+    private static class Unit {
+        int depth = 1;
+        long statements;
+        long nanos;
+        final Map<String, Integer> shapes = new HashMap<>();
+        final Map<String, String> repeated = new HashMap<>();
+    }
+}
@@ -0,0 +1,61 @@
+package com.orderms.common.config;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import javax.sql.DataSource;
+
+/**
+ * Feeds the {@link SqlProfiler}: every DataSource bean is wrapped in a
+ * {@link ProfilingDataSource}, and every Spring Data repository names the method
+ * its statements run in.
+ */
+@Configuration
+@ConditionalOnProperty(name = "sql.profiler.enabled", havingValue = "true", matchIfMissing = true)
+public class SqlProfilingConfig {
+
+    @Bean
+    public static BeanPostProcessor profilingDataSourcePostProcessor(ObjectProvider<SqlProfiler> profiler) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ProfilingDataSource)) {
+                    return new ProfilingDataSource(dataSource, profiler);
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    public static BeanPostProcessor repositoryProfilingPostProcessor(ObjectProvider<SqlProfiler> profiler) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+                    factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                            (proxyFactory, repository) -> proxyFactory.addAdvice(
+                                    methodInterceptor(repository.getRepositoryInterface().getSimpleName(), profiler))));
+                }
+                return bean;
+            }
+        };
+    }
+
+    private static MethodInterceptor methodInterceptor(String repository, ObjectProvider<SqlProfiler> profiler) {
+        return invocation -> {
+            SqlProfiler current = profiler.getObject();
+            current.enterMethod(repository + "." + invocation.getMethod().getName());
+            try {
+                return invocation.proceed();
+            } finally {
+                current.exitMethod();
+            }
+        };
+    }
+}
@@ -0,0 +1,34 @@
+package com.orderms.common.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Makes every HTTP request a {@link SqlProfiler} unit of work, named after its route.
+ */
+@Component
+@RequiredArgsConstructor
+public class SqlProfilingFilter extends OncePerRequestFilter {
+
+    private final SqlProfiler sqlProfiler;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        sqlProfiler.beginUnit();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            sqlProfiler.endUnit(request.getMethod() + " " + (route != null ? route : "unmatched"));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.orderms.common.config;
+
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.TraceContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tail sampling of traces the head sampler dropped. Their spans are still recorded
+ * locally and held per trace for {@code buffer-ms}. A trace is kept when any of its
+ * spans failed, took longer than {@code slow-threshold-ms}, or sent or received one of
+ * the {@code keep-topics} (saga failures and compensations). Its buffered spans are
+ * then reported, and so are its later spans. Every service that handles a failure or
+ * compensation topic keeps the trace, so a failed saga is kept in all the services it
+ * passed through. Head-sampled spans are left to the regular Zipkin handler.
+ *
+ * Buffers are dropped once they are older than {@code buffer-ms}, by a sweep before
+ * each new trace is buffered and every {@code evict-interval-ms}, or earlier when more
+ * than {@code max-traces} traces are buffered.
+ */
+public class TailSamplingSpanHandler extends SpanHandler {
+
+    private final SpanHandler reporter;
+    private final List<String> keepTopics;
+    private final long slowThresholdMicros;
+    private final long bufferMicros;
+    private final int maxSpansPerTrace;
+    private final Map<String, TraceBuffer> buffers;
+    private final Map<String, Boolean> kept;
+    private final MeterRegistry meterRegistry;
+    private final Counter dropped;
+    private final Counter expired;
+
+    public TailSamplingSpanHandler(SpanHandler reporter,
+                                   List<String> keepTopics,
+                                   long slowThresholdMs,
+                                   long bufferMs,
+                                   int maxTraces,
+                                   int maxSpansPerTrace,
+                                   MeterRegistry meterRegistry) {
+        this.reporter = reporter;
+        this.keepTopics = keepTopics;
+        this.slowThresholdMicros = slowThresholdMs * 1000;
+        this.bufferMicros = bufferMs * 1000;
+        this.maxSpansPerTrace = maxSpansPerTrace;
+        this.meterRegistry = meterRegistry;
+        this.dropped = meterRegistry.counter("tracing.tail.spans.dropped");
+        this.expired = meterRegistry.counter("tracing.tail.traces.expired");
+        // Insertion order: the eldest buffer is the oldest trace
+        this.buffers = Collections.synchronizedMap(new LinkedHashMap<>(maxTraces, 0.75f) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TraceBuffer> eldest) {
+                boolean full = size() > maxTraces;
+                if (full) {
+                    dropped.increment(eldest.getValue().size());
+                }
+                return full;
+            }
+        });
+        this.kept = Collections.synchronizedMap(new LinkedHashMap<>(maxTraces, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxTraces;
+            }
+        });
+    }
+
+    @Override
+    public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+        if (cause != Cause.FINISHED || Boolean.TRUE.equals(context.sampled())) {
+            return true;
+        }
+        String traceId = context.traceIdString();
+        if (kept.containsKey(traceId)) {
+            reporter.end(context, span, cause);
+            return true;
+        }
+        String reason = keepReason(span);
+        if (reason == null) {
+            buffer(traceId, context, span);
+            return true;
+        }
+
+        kept.put(traceId, Boolean.TRUE);
+        meterRegistry.counter("tracing.tail.traces.kept", "reason", reason).increment();
+        flush(traceId);
+        reporter.end(context, span, cause);
+        return true;
+    }
+
+    private void flush(String traceId) {
+        TraceBuffer buffered = buffers.remove(traceId);
+        if (buffered == null) {
+            return;
+        }
+        synchronized (buffered) {
+            for (int i = 0; i < buffered.spans.size(); i++) {
+                reporter.end(buffered.contexts.get(i), buffered.spans.get(i), Cause.FINISHED);
+            }
+            buffered.spans.clear();
+            buffered.contexts.clear();
+        }
+    }
+
+    /**
+     * Drops the buffered traces first seen more than {@code buffer-ms} ago. Buffers are
+     * in insertion order, so the sweep stops at the first one still inside the window.
+     */
+    @Scheduled(fixedDelayString = "${tracing.tail.evict-interval-ms:5000}")
+    public void evictExpired() {
+        long cutoff = nowMicros() - bufferMicros;
+        synchronized (buffers) {
+            Iterator<TraceBuffer> eldest = buffers.values().iterator();
+            while (eldest.hasNext()) {
+                TraceBuffer buffered = eldest.next();
+                if (buffered.firstSeenMicros >= cutoff) {
+                    return;
+                }
+                eldest.remove();
+                expired.increment();
+                dropped.increment(buffered.size());
+            }
+        }
+    }
+
+    private void buffer(String traceId, TraceContext context, MutableSpan span) {
+        TraceBuffer buffered = buffers.get(traceId);
+        if (buffered == null) {
+            evictExpired();
+            buffered = buffers.computeIfAbsent(traceId, id -> new TraceBuffer(nowMicros()));
+        }
+        synchronized (buffered) {
+            if (buffered.spans.size() >= maxSpansPerTrace) {
+                dropped.increment();
+                return;
+            }
+            buffered.contexts.add(context);
+            buffered.spans.add(span);
+        }
+        // The trace may have been kept while this span was being buffered
+        if (kept.containsKey(traceId)) {
+            flush(traceId);
+        }
+    }
+
+    private String keepReason(MutableSpan span) {
+        if (span.error() != null || span.tag("error") != null) {
+            return "error";
+        }
+        if (span.finishTimestamp() - span.startTimestamp() > slowThresholdMicros) {
+            return "slow";
+        }
+        // Kafka send/receive spans are named after their topic, e.g. "payment-failed receive"
+        String name = span.name();
+        if (name != null) {
+            for (String topic : keepTopics) {
+                if (name.startsWith(topic)) {
+                    return "topic";
+                }
+            }
+            if (name.contains("-dlt ")) {
+                return "topic";
+            }
+        }
+        return null;
+    }
+
+    private static long nowMicros() {
+        return System.currentTimeMillis() * 1000;
+    }
+
+    private static class TraceBuffer {
+        final long firstSeenMicros;
+        final List<TraceContext> contexts = new ArrayList<>();
+        final List<MutableSpan> spans = new ArrayList<>();
+
+        TraceBuffer(long firstSeenMicros) {
+            this.firstSeenMicros = firstSeenMicros;
+        }
+
+        synchronized int size() {
+            return spans.size();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.orderms.common.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.kafka.config.AbstractKafkaListenerContainerFactory;
+
+import java.sql.DriverManager;
+import java.util.Collections;
+
+/**
+ * Opt-in virtual-thread mode: {@code spring.threads.virtual.enabled=true} on Java 21.
+ * Spring Boot already runs Tomcat requests and its own executors on virtual threads.
+ * This class adds the Kafka listener containers, which each service's
+ * {@code KafkaConsumerConfig} builds itself, so auto-configuration does not cover them.
+ * The driver check is skipped by services without a PostgreSQL driver.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+@Slf4j
+public class VirtualThreadConfig {
+
+    @Bean
+    public static BeanPostProcessor virtualThreadListenerContainers() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof AbstractKafkaListenerContainerFactory<?, ?, ?> factory) {
+                    SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(beanName + "-");
+                    executor.setVirtualThreads(true);
+                    factory.getContainerProperties().setListenerTaskExecutor(executor);
+                }
+                return bean;
+            }
+        };
+    }
+
+    // pgjdbc before 42.6 guards socket I/O with synchronized, which pins the carrier
+    // thread for the whole round trip and quietly caps throughput at the carrier count
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkJdbcDriver() {
+        Collections.list(DriverManager.getDrivers()).stream()
+                .filter(driver -> driver.getClass().getName().equals("org.postgresql.Driver"))
+                .findFirst()
+                .ifPresent(driver -> {
+                    if (driver.getMajorVersion() < 42 || (driver.getMajorVersion() == 42 && driver.getMinorVersion() < 6)) {
+                        log.warn("PostgreSQL driver {}.{} pins virtual threads during queries; upgrade to 42.6 or later",
+                                driver.getMajorVersion(), driver.getMinorVersion());
+                    } else {
+                        log.info("Virtual threads enabled (PostgreSQL driver {}.{})",
+                                driver.getMajorVersion(), driver.getMinorVersion());
+                    }
+                });
+    }
+}
@@ -0,0 +1,34 @@
+package com.orderms.common.controller;
+
+import com.orderms.common.kafka.DlqReplayer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.ErrorResponseException;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+@RestController
+@RequestMapping("/api/dlq")
+@RequiredArgsConstructor
+@Slf4j
+public class DlqReplayController {
+
+    private final DlqReplayer dlqReplayer;
+
+    @PostMapping("/{topic}/replay")
+    public ResponseEntity<Map<String, Object>> replay(@PathVariable String topic,
+                                                      @RequestParam(defaultValue = "100") int max)
+            throws ExecutionException, InterruptedException {
+        if (!dlqReplayer.owns(topic)) {
+            ErrorResponseException e = new ErrorResponseException(HttpStatus.NOT_FOUND);
+            e.setDetail(topic + " is not a dead-letter topic of this service");
+            throw e;
+        }
+        log.info("REST: Replaying up to {} records from {}", max, topic);
+        return ResponseEntity.ok(Map.of("topic", topic, "replayed", dlqReplayer.replay(topic, max)));
+    }
+}
@@ -0,0 +1,272 @@
+package com.orderms.common.kafka;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resizes listener containers from their consumer lag and handler processing time.
+ * Each sample sums the per-partition {@code records-lag} of a container's consumers
+ * and divides it by their {@code records-consumed-rate} to estimate how long the
+ * backlog takes to drain. The {@code spring.kafka.listener} timers of the container's
+ * consumers give the time spent in the handler, and from it how busy the consumers
+ * were since the last sample.
+ *
+ * A container is scaled up by one consumer only after the drain estimate has stayed
+ * above {@code scale-up-drain-seconds}, with the consumers at least
+ * {@code scale-up-busy} busy, for {@code samples} samples in a row: lag on idle
+ * consumers is not fixed by adding more. It is scaled down after lag has stayed below
+ * {@code scale-down-lag} for the same number of samples, and only if the remaining
+ * consumers would stay below {@code scale-down-busy}, which keeps the next sample from
+ * scaling straight back up.
+ *
+ * Changing concurrency restarts the container, which causes a rebalance. After every
+ * change the container is left alone for {@code cooldown-ms}, and reversing the last
+ * change waits for {@code reverse-cooldown-ms}.
+ *
+ * Concurrency stays within [min, max] and never exceeds the partition count of the
+ * container's largest topic, since extra consumers would sit idle.
+ */
+@Component
+@Slf4j
+public class AdaptiveConcurrencyController {
+
+    // Recorded per consumer (<listener id>-<n>) by the listener observation, or by the
+    // container's own Micrometer timers when observation is disabled
+    private static final String LISTENER_TIMER = "spring.kafka.listener";
+    private static final String OBSERVATION_ID_TAG = "spring.kafka.listener.id";
+    private static final String MICROMETER_ID_TAG = "name";
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final KafkaAdmin kafkaAdmin;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, ContainerState> states = new ConcurrentHashMap<>();
+
+    @Value("${listener.concurrency.enabled:true}")
+    private boolean enabled;
+
+    @Value("${listener.concurrency.min:1}")
+    private int minConcurrency;
+
+    @Value("${listener.concurrency.max:8}")
+    private int maxConcurrency;
+
+    @Value("${listener.concurrency.samples:3}")
+    private int samples;
+
+    @Value("${listener.concurrency.scale-up-drain-seconds:30}")
+    private double scaleUpDrainSeconds;
+
+    @Value("${listener.concurrency.scale-up-busy:0.8}")
+    private double scaleUpBusy;
+
+    @Value("${listener.concurrency.scale-down-lag:10}")
+    private long scaleDownLag;
+
+    @Value("${listener.concurrency.scale-down-busy:0.5}")
+    private double scaleDownBusy;
+
+    @Value("${listener.concurrency.cooldown-ms:120000}")
+    private long cooldownMs;
+
+    @Value("${listener.concurrency.reverse-cooldown-ms:600000}")
+    private long reverseCooldownMs;
+
+    public AdaptiveConcurrencyController(KafkaListenerEndpointRegistry registry,
+                                         KafkaAdmin kafkaAdmin,
+                                         MeterRegistry meterRegistry) {
+        this.registry = registry;
+        this.kafkaAdmin = kafkaAdmin;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Scheduled(fixedDelayString = "${listener.concurrency.sample-interval-ms:10000}")
+    public void sample() {
+        if (!enabled) {
+            return;
+        }
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            if (container instanceof ConcurrentMessageListenerContainer<?, ?> concurrent && concurrent.isRunning()) {
+                evaluate(concurrent);
+            }
+        }
+    }
+
+    private void evaluate(ConcurrentMessageListenerContainer<?, ?> container) {
+        String id = container.getListenerId();
+        ContainerState state = states.computeIfAbsent(id, this::register);
+        if (state.restarting) {
+            return;
+        }
+
+        double lag = 0;
+        double rate = 0;
+        for (Map<MetricName, ? extends Metric> metrics : container.metrics().values()) {
+            for (Map.Entry<MetricName, ? extends Metric> metric : metrics.entrySet()) {
+                MetricName name = metric.getKey();
+                if (!"consumer-fetch-manager-metrics".equals(name.group())) {
+                    continue;
+                }
+                double value = ((Number) metric.getValue().metricValue()).doubleValue();
+                if (Double.isNaN(value)) {
+                    continue;
+                }
+                // Per-partition lag carries a partition tag; the client-wide rate has no topic tag
+                if ("records-lag".equals(name.name()) && name.tags().containsKey("partition")) {
+                    lag += value;
+                } else if ("records-consumed-rate".equals(name.name()) && !name.tags().containsKey("topic")) {
+                    rate += value;
+                }
+            }
+        }
+
+        int current = container.getConcurrency();
+        double busy = busy(id, state, current);
+        state.concurrency.set(current);
+        state.lag.set((long) lag);
+        double drainSeconds = lag == 0 ? 0 : lag / Math.max(rate, 0.1);
+
+        if (drainSeconds > scaleUpDrainSeconds && busy >= scaleUpBusy) {
+            state.behind++;
+            state.idle = 0;
+        } else if (lag < scaleDownLag) {
+            state.idle++;
+            state.behind = 0;
+        } else {
+            state.behind = 0;
+            state.idle = 0;
+        }
+
+        long sinceChange = System.currentTimeMillis() - state.lastChange;
+        if (sinceChange < cooldownMs) {
+            return;
+        }
+        int ceiling = Math.min(maxConcurrency, partitionCount(container, current));
+        if (state.behind >= samples && current < ceiling
+                && (state.lastDirection >= 0 || sinceChange >= reverseCooldownMs)) {
+            resize(container, state, current + 1,
+                    String.format("lag %.0f drains in %.0fs, consumers %.0f%% busy", lag, drainSeconds, busy * 100));
+        } else if (state.idle >= samples && current > minConcurrency
+                && busy * current / (current - 1) < scaleDownBusy
+                && (state.lastDirection <= 0 || sinceChange >= reverseCooldownMs)) {
+            resize(container, state, current - 1, String.format("lag %.0f, consumers %.0f%% busy", lag, busy * 100));
+        }
+    }
+
+    // Share of the sample interval the container's consumers spent in the handler
+    private double busy(String id, ContainerState state, int consumers) {
+        double handlerSeconds = 0;
+        for (Timer timer : meterRegistry.find(LISTENER_TIMER).timers()) {
+            String consumer = timer.getId().getTag(OBSERVATION_ID_TAG);
+            if (consumer == null) {
+                consumer = timer.getId().getTag(MICROMETER_ID_TAG);
+            }
+            if (consumer != null && isConsumerOf(consumer, id)) {
+                handlerSeconds += timer.totalTime(TimeUnit.SECONDS);
+            }
+        }
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - state.sampledAt) / 1e9;
+        double busy = state.sampledAt == 0 || elapsedSeconds <= 0
+                ? 0 : Math.max(0, handlerSeconds - state.handlerSeconds) / (elapsedSeconds * Math.max(consumers, 1));
+        state.handlerSeconds = handlerSeconds;
+        state.sampledAt = now;
+        state.busy.set(Math.round(busy * 100));
+        return busy;
+    }
+
+    private static boolean isConsumerOf(String consumer, String listenerId) {
+        return consumer.length() > listenerId.length() + 1
+                && consumer.startsWith(listenerId + "-")
+                && consumer.substring(listenerId.length() + 1).chars().allMatch(Character::isDigit);
+    }
+
+    private void resize(ConcurrentMessageListenerContainer<?, ?> container, ContainerState state, int target, String reason) {
+        String direction = target > container.getConcurrency() ? "up" : "down";
+        log.info("Scaling listener {} {} from {} to {} consumers ({})",
+                container.getListenerId(), direction, container.getConcurrency(), target, reason);
+
+        state.restarting = true;
+        state.behind = 0;
+        state.idle = 0;
+        state.lastChange = System.currentTimeMillis();
+        state.lastDirection = target > container.getConcurrency() ? 1 : -1;
+        meterRegistry.counter("listener.concurrency.adjustments",
+                "listener", container.getListenerId(), "direction", direction).increment();
+
+        // Concurrency only takes effect on start, so the container is cycled
+        container.stop(() -> {
+            try {
+                container.setConcurrency(target);
+                container.start();
+                state.concurrency.set(target);
+            } finally {
+                state.restarting = false;
+            }
+        });
+    }
+
+    // Falls back to the current concurrency, so a failed lookup never triggers a resize
+    private int partitionCount(ConcurrentMessageListenerContainer<?, ?> container, int current) {
+        String[] topics = container.getContainerProperties().getTopics();
+        if (topics == null || topics.length == 0) {
+            return maxConcurrency;
+        }
+        try {
+            return kafkaAdmin.describeTopics(topics).values().stream()
+                    .mapToInt(description -> description.partitions().size())
+                    .max()
+                    .orElse(current);
+        } catch (RuntimeException e) {
+            log.warn("Could not describe topics {}: {}", Arrays.toString(topics), e.getMessage());
+            return current;
+        }
+    }
+
+    private ContainerState register(String listenerId) {
+        ContainerState state = new ContainerState();
+        Gauge.builder("listener.concurrency", state.concurrency, AtomicInteger::get)
+                .tag("listener", listenerId)
+                .description("Consumers currently running in the listener container")
+                .register(meterRegistry);
+        Gauge.builder("listener.lag", state.lag, AtomicLong::get)
+                .tag("listener", listenerId)
+                .description("Consumer lag last sampled by the concurrency controller")
+                .register(meterRegistry);
+        Gauge.builder("listener.busy", state.busy, AtomicLong::get)
+                .tag("listener", listenerId)
+                .description("Percentage of the last sample interval the consumers spent in the handler")
+                .register(meterRegistry);
+        return state;
+    }
+
+    private static class ContainerState {
+        final AtomicInteger concurrency = new AtomicInteger();
+        final AtomicLong lag = new AtomicLong();
+        final AtomicLong busy = new AtomicLong();
+        volatile boolean restarting;
+        int behind;
+        int idle;
+        long lastChange;
+        int lastDirection;
+        double handlerSeconds;
+        long sampledAt;
+    }
+}
@@ -0,0 +1,130 @@
+package com.orderms.common.kafka;
+
+import com.orderms.common.config.KafkaRetryConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Moves records from one of this service's dead-letter topics back to its first retry
+ * topic, so only the consumer group that failed sees them again. Records are copied
+ * byte for byte: key, value, partition and every header (event id, the
+ * {@code kafka_dlt-original-*} headers, saga timing and trace context), so a record that
+ * was already handled is still recognized as a duplicate. Progress is committed by the
+ * {@code dlq-replay} group after each poll, once the copies are acknowledged, so a record
+ * is replayed once.
+ */
+@Component
+@Slf4j
+public class DlqReplayer {
+
+    private static final String DLT_SUFFIX = "-dlt";
+    private static final int MAX_IDLE_POLLS = 3;
+
+    private final String bootstrapServers;
+    private final String service;
+    private final String replayGroup;
+
+    public DlqReplayer(@Value("${spring.kafka.bootstrap-servers}") String bootstrapServers,
+                       @Value("${spring.application.name}") String applicationName,
+                       @Value("${dlq.replay.group:dlq-replay}") String replayGroup) {
+        this.bootstrapServers = bootstrapServers;
+        this.service = KafkaRetryConfig.serviceName(applicationName);
+        this.replayGroup = replayGroup;
+    }
+
+    public boolean owns(String dltTopic) {
+        return dltTopic.endsWith("-" + service + DLT_SUFFIX);
+    }
+
+    /**
+     * Replays up to {@code maxRecords} records of {@code dltTopic} and returns how many
+     * were sent back. Stops early once the topic has been drained.
+     */
+    public int replay(String dltTopic, int maxRecords) throws ExecutionException, InterruptedException {
+        if (!owns(dltTopic)) {
+            throw new IllegalArgumentException(dltTopic + " is not a dead-letter topic of the " + service + " service");
+        }
+        // <topic>-<service>-dlt  ->  <topic>-<service>-retry-0
+        String target = dltTopic.substring(0, dltTopic.length() - DLT_SUFFIX.length()) + "-retry-0";
+
+        try (KafkaConsumer<byte[], byte[]> consumer = new KafkaConsumer<>(consumerProps(),
+                     new ByteArrayDeserializer(), new ByteArrayDeserializer());
+             KafkaProducer<byte[], byte[]> producer = new KafkaProducer<>(producerProps(),
+                     new ByteArraySerializer(), new ByteArraySerializer())) {
+            int targetPartitions = producer.partitionsFor(target).size();
+            consumer.subscribe(List.of(dltTopic));
+
+            int replayed = 0;
+            int idlePolls = 0;
+            while (replayed < maxRecords && idlePolls < MAX_IDLE_POLLS) {
+                ConsumerRecords<byte[], byte[]> records = consumer.poll(Duration.ofSeconds(2));
+                if (records.isEmpty()) {
+                    idlePolls++;
+                    continue;
+                }
+                idlePolls = 0;
+
+                List<Future<RecordMetadata>> sends = new ArrayList<>();
+                Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+                for (ConsumerRecord<byte[], byte[]> record : records) {
+                    if (replayed == maxRecords) {
+                        break;
+                    }
+                    // Same partition when the retry topic has it, so per-key ordering is kept
+                    Integer partition = record.partition() < targetPartitions ? record.partition() : null;
+                    sends.add(producer.send(new ProducerRecord<>(target, partition, record.key(), record.value(),
+                            record.headers())));
+                    offsets.put(new TopicPartition(record.topic(), record.partition()),
+                            new OffsetAndMetadata(record.offset() + 1));
+                    replayed++;
+                }
+                for (Future<RecordMetadata> send : sends) {
+                    send.get();
+                }
+                consumer.commitSync(offsets);
+            }
+            log.info("Replayed {} records from {} to {}", replayed, dltTopic, target);
+            return replayed;
+        }
+    }
+
+    private Map<String, Object> consumerProps() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, replayGroup);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        return props;
+    }
+
+    private Map<String, Object> producerProps() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.ACKS_CONFIG, "all");
+        props.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        props.put(ProducerConfig.MAX_BLOCK_MS_CONFIG, 10_000);
+        return props;
+    }
+}
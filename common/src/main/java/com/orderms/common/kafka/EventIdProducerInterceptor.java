@@ -0,0 +1,38 @@
+package com.orderms.common.kafka;
+
+import org.apache.kafka.clients.producer.ProducerInterceptor;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stamps every outgoing event with a unique {@code event-id} header, which the
+ * consumers use for duplicate detection. Records re-published to retry or
+ * dead-letter topics keep the id they already carry.
+ */
+public class EventIdProducerInterceptor implements ProducerInterceptor<String, Object> {
+    
+    @Override
+    public ProducerRecord<String, Object> onSend(ProducerRecord<String, Object> record) {
+        if (record.headers().lastHeader(IdempotentConsumer.EVENT_ID_HEADER) == null) {
+            record.headers().add(IdempotentConsumer.EVENT_ID_HEADER,
+                    UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return record;
+    }
+    
+    @Override
+    public void onAcknowledgement(RecordMetadata metadata, Exception exception) {
+    }
+    
+    @Override
+    public void close() {
+    }
+    
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+}
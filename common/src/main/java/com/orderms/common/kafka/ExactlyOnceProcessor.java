@@ -0,0 +1,435 @@
+package com.orderms.common.kafka;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orderms.common.config.KafkaRetryConfig;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.AuthorizationException;
+import org.apache.kafka.common.errors.OutOfOrderSequenceException;
+import org.apache.kafka.common.errors.ProducerFencedException;
+import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Exactly-once read-process-write loop. It replaces the listener containers when
+ * {@code exactly-once.enabled=true}. Each poll is handled as one Kafka transaction,
+ * so the transaction overhead is paid once per batch rather than once per record.
+ * Every record is processed in its own database transaction, which stores the state
+ * change, the processed-message marker and the outgoing events (in the outbox).
+ * The outbox rows of the whole batch are then sent, and the consumed offsets
+ * committed, in one producer transaction.
+ *
+ * If that transaction aborts, the batch is polled again. The marker makes its records
+ * skip processing, so only their outbox rows are sent again. Outbox rows are deleted
+ * once their transaction has committed.
+ *
+ * A failed record is retried with exponential backoff without blocking the loop: its
+ * partition is rewound to it and paused until the backoff has passed, while the other
+ * partitions carry on. After {@code exactly-once.attempts} tries the record goes to
+ * the service's dead-letter topic in the batch transaction.
+ *
+ * Each service subclasses this with its topic handlers and its idempotency and outbox
+ * storage.
+ */
+@Slf4j
+public abstract class ExactlyOnceProcessor implements SmartLifecycle {
+
+    private final Map<String, Handler<?>> handlers = new LinkedHashMap<>();
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary batchSize;
+    private final List<KafkaConsumer<String, String>> consumers = new CopyOnWriteArrayList<>();
+    private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    @Value("${spring.kafka.consumer.group-id}")
+    private String groupId;
+
+    @Value("${spring.application.name}")
+    private String applicationName;
+
+    @Value("${exactly-once.consumers:2}")
+    private int consumerCount;
+
+    @Value("${exactly-once.batch-size:100}")
+    private int maxBatchSize;
+
+    @Value("${exactly-once.poll-timeout-ms:500}")
+    private long pollTimeoutMs;
+
+    @Value("${exactly-once.attempts:3}")
+    private int attempts;
+
+    @Value("${exactly-once.backoff-ms:500}")
+    private long backoffMs;
+
+    @Value("${exactly-once.max-backoff-ms:10000}")
+    private long maxBackoffMs;
+
+    @Value("${exactly-once.restart-delay-ms:5000}")
+    private long restartDelayMs;
+
+    @Value("${exactly-once.transaction-id-prefix:${spring.application.name}-eos-}")
+    private String transactionIdPrefix;
+
+    @Value("${exactly-once.outbox-ttl-hours:24}")
+    private long outboxTtlHours;
+
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    protected ExactlyOnceProcessor(TransactionTemplate transactionTemplate,
+                                   ObjectMapper objectMapper,
+                                   MeterRegistry meterRegistry) {
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = DistributionSummary.builder("saga.eos.batch.size")
+                .description("Records committed per exactly-once transaction")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether the record was already processed, i.e. its marker is committed.
+     */
+    protected abstract boolean isDuplicate(ConsumerRecord<String, String> record);
+
+    /**
+     * Stores the record's processed marker in the current database transaction.
+     */
+    protected abstract void markProcessedInTransaction(ConsumerRecord<String, String> record);
+
+    protected abstract void onPartitionsAssigned(KafkaConsumer<String, String> consumer,
+                                                 Collection<TopicPartition> partitions);
+
+    /**
+     * The id the outbox rows written while handling the record are stored under.
+     */
+    protected abstract String sourceId(ConsumerRecord<String, String> record);
+
+    /**
+     * Runs the handler so that the events it publishes go to the outbox under {@code sourceId}.
+     */
+    protected abstract void runForSource(String sourceId, Runnable action);
+
+    protected abstract List<OutboxRecord> findOutbox(List<String> sourceIds);
+
+    protected abstract void deleteOutbox(List<Long> ids);
+
+    protected abstract int deleteOutboxCreatedBefore(LocalDateTime cutoff);
+
+    protected <T> void register(String topic, Class<T> type, Consumer<T> action) {
+        handlers.put(topic, new Handler<>(type, action));
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        executor = Executors.newFixedThreadPool(consumerCount, new CustomizableThreadFactory("eos-"));
+        for (int i = 0; i < consumerCount; i++) {
+            int index = i;
+            executor.execute(() -> runWorker(index));
+        }
+        log.info("Exactly-once mode: {} transactional consumers on {}", consumerCount, handlers.keySet());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        consumers.forEach(KafkaConsumer::wakeup);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Outbox rows are deleted after their transaction commits; this only catches rows
+    // whose delete was lost to a crash
+    @Scheduled(fixedDelayString = "${exactly-once.outbox-prune-interval-ms:3600000}")
+    public void pruneOutbox() {
+        int deleted = deleteOutboxCreatedBefore(LocalDateTime.now().minusHours(outboxTtlHours));
+        if (deleted > 0) {
+            log.info("Pruned {} outbox events older than {} hours", deleted, outboxTtlHours);
+        }
+    }
+
+    // Fatal producer errors (fencing, lost sequence) need a new producer and consumer;
+    // the uncommitted batch is then polled again from the committed offsets
+    private void runWorker(int index) {
+        while (running) {
+            try {
+                consume(index);
+            } catch (WakeupException e) {
+                if (running) {
+                    log.warn("Exactly-once consumer {} woken up unexpectedly, restarting", index);
+                }
+            } catch (RuntimeException e) {
+                log.error("Exactly-once consumer {} failed, restarting in {} ms", index, restartDelayMs, e);
+                try {
+                    Thread.sleep(restartDelayMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void consume(int index) {
+        Map<String, Object> consumerProps = new HashMap<>();
+        consumerProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        consumerProps.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        consumerProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        consumerProps.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        consumerProps.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxBatchSize);
+
+        Map<String, Object> producerProps = new HashMap<>();
+        producerProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        producerProps.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        producerProps.put(ProducerConfig.TRANSACTIONAL_ID_CONFIG, transactionIdPrefix + instanceId + "-" + index);
+
+        // Partitions waiting out the backoff of a failed record
+        Map<TopicPartition, Retry> retries = new HashMap<>();
+
+        try (KafkaConsumer<String, String> consumer =
+                     new KafkaConsumer<>(consumerProps, new StringDeserializer(), new StringDeserializer());
+             KafkaProducer<String, String> producer =
+                     new KafkaProducer<>(producerProps, new StringSerializer(), new StringSerializer())) {
+            consumers.add(consumer);
+            try {
+                producer.initTransactions();
+                consumer.subscribe(handlers.keySet(), new ConsumerRebalanceListener() {
+                    @Override
+                    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                        partitions.forEach(retries::remove);
+                    }
+
+                    @Override
+                    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                        ExactlyOnceProcessor.this.onPartitionsAssigned(consumer, partitions);
+                    }
+                });
+                while (running) {
+                    resumeDue(consumer, retries);
+                    ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(pollTimeoutMs));
+                    if (!records.isEmpty()) {
+                        processBatch(consumer, producer, records, retries);
+                    }
+                }
+            } finally {
+                consumers.remove(consumer);
+            }
+        }
+    }
+
+    private void processBatch(KafkaConsumer<String, String> consumer, KafkaProducer<String, String> producer,
+                              ConsumerRecords<String, String> records, Map<TopicPartition, Retry> retries) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        List<String> sources = new ArrayList<>();
+        List<ProducerRecord<String, String>> deadLetters = new ArrayList<>();
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        Map<TopicPartition, Long> backingOff = new HashMap<>();
+        int handled = 0;
+
+        for (TopicPartition partition : records.partitions()) {
+            for (ConsumerRecord<String, String> record : records.records(partition)) {
+                Retry retry = retries.get(partition);
+                int attempt = retry != null && retry.offset() == record.offset() ? retry.attempt() + 1 : 1;
+                try {
+                    process(record);
+                    sources.add(sourceId(record));
+                } catch (RuntimeException e) {
+                    if (attempt < attempts) {
+                        long backoff = Math.min(backoffMs << (attempt - 1), maxBackoffMs);
+                        log.warn("Record {} on {}-{}@{} failed (attempt {} of {}), retrying in {} ms: {}",
+                                record.key(), record.topic(), record.partition(), record.offset(), attempt, attempts,
+                                backoff, e.getMessage());
+                        retries.put(partition, new Retry(record.offset(), attempt, System.currentTimeMillis() + backoff));
+                        backingOff.put(partition, record.offset());
+                        break;
+                    }
+                    log.error("Record {} on {}-{}@{} failed after {} attempts, sending it to {}",
+                            record.key(), record.topic(), record.partition(), record.offset(), attempts,
+                            record.topic() + dltSuffix(), e);
+                    deadLetters.add(deadLetter(record));
+                }
+                retries.remove(partition);
+                offsets.put(partition, new OffsetAndMetadata(record.offset() + 1));
+                handled++;
+            }
+        }
+        if (offsets.isEmpty()) {
+            backOff(consumer, backingOff);
+            return;
+        }
+        List<OutboxRecord> events = sources.isEmpty() ? List.of() : findOutbox(sources);
+
+        producer.beginTransaction();
+        try {
+            events.forEach(event -> producer.send(event.record()));
+            deadLetters.forEach(producer::send);
+            producer.sendOffsetsToTransaction(offsets, consumer.groupMetadata());
+            producer.commitTransaction();
+        } catch (ProducerFencedException | OutOfOrderSequenceException | AuthorizationException e) {
+            sample.stop(transactionTimer("fenced"));
+            throw e;
+        } catch (KafkaException e) {
+            log.warn("Exactly-once transaction for {} records aborted, polling them again: {}",
+                    records.count(), e.getMessage());
+            producer.abortTransaction();
+            rewind(consumer, records);
+            sample.stop(transactionTimer("aborted"));
+            return;
+        }
+        sample.stop(transactionTimer("committed"));
+        batchSize.record(handled);
+
+        backOff(consumer, backingOff);
+
+        if (!events.isEmpty()) {
+            deleteOutbox(events.stream().map(OutboxRecord::id).toList());
+        }
+    }
+
+    private void process(ConsumerRecord<String, String> record) {
+        Handler<?> handler = handlers.get(record.topic());
+        String source = sourceId(record);
+        transactionTemplate.executeWithoutResult(status -> {
+            // Already processed in an earlier, aborted transaction: only its outbox rows are resent
+            if (isDuplicate(record)) {
+                log.info("Record {} on {}-{}@{} already processed",
+                        record.key(), record.topic(), record.partition(), record.offset());
+                return;
+            }
+            runForSource(source, () -> handler.handle(record.value()));
+            markProcessedInTransaction(record);
+        });
+    }
+
+    // The failed record is polled again once its partition resumes
+    private void backOff(KafkaConsumer<String, String> consumer, Map<TopicPartition, Long> failedOffsets) {
+        failedOffsets.forEach(consumer::seek);
+        consumer.pause(failedOffsets.keySet());
+    }
+
+    private void resumeDue(KafkaConsumer<String, String> consumer, Map<TopicPartition, Retry> retries) {
+        long now = System.currentTimeMillis();
+        Set<TopicPartition> paused = consumer.paused();
+        List<TopicPartition> due = retries.entrySet().stream()
+                .filter(retry -> retry.getValue().resumeAt() <= now && paused.contains(retry.getKey()))
+                .map(Map.Entry::getKey)
+                .toList();
+        if (!due.isEmpty()) {
+            consumer.resume(due);
+        }
+    }
+
+    private String dltSuffix() {
+        return "-" + KafkaRetryConfig.serviceName(applicationName) + "-dlt";
+    }
+
+    // Same headers as the DeadLetterPublishingRecoverer, so replay and duplicate detection work unchanged
+    private ProducerRecord<String, String> deadLetter(ConsumerRecord<String, String> record) {
+        ProducerRecord<String, String> deadLetter =
+                new ProducerRecord<>(record.topic() + dltSuffix(), record.key(), record.value());
+        Headers headers = deadLetter.headers();
+        record.headers().forEach(headers::add);
+        if (headers.lastHeader(KafkaHeaders.DLT_ORIGINAL_TOPIC) == null) {
+            headers.add(KafkaHeaders.DLT_ORIGINAL_TOPIC, record.topic().getBytes(StandardCharsets.UTF_8));
+            headers.add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(record.partition()).array());
+            headers.add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(record.offset()).array());
+        }
+        return deadLetter;
+    }
+
+    private void rewind(KafkaConsumer<String, String> consumer, ConsumerRecords<String, String> records) {
+        for (TopicPartition partition : records.partitions()) {
+            consumer.seek(partition, records.records(partition).get(0).offset());
+        }
+    }
+
+    private Timer transactionTimer(String result) {
+        return Timer.builder("saga.eos.transaction")
+                .description("Exactly-once batch transactions")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * An outbox row ready to send, with the id it is deleted by once sent.
+     */
+    public record OutboxRecord(Long id, ProducerRecord<String, String> record) {
+    }
+
+    private record Retry(long offset, int attempt, long resumeAt) {
+    }
+
+    private class Handler<T> {
+        private final Class<T> type;
+        private final Consumer<T> action;
+
+        Handler(Class<T> type, Consumer<T> action) {
+            this.type = type;
+            this.action = action;
+        }
+
+        void handle(String payload) {
+            try {
+                action.accept(objectMapper.readValue(payload, type));
+            } catch (JsonProcessingException e) {
+                throw new RuntimeException("Unreadable " + type.getSimpleName() + " payload", e);
+            }
+        }
+    }
+}
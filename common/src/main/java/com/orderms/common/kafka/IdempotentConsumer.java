@@ -0,0 +1,271 @@
+package com.orderms.common.kafka;
+
+import com.orderms.common.model.ProcessedMessage;
+import com.orderms.common.repository.ProcessedMessageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionExecution;
+import org.springframework.transaction.TransactionExecutionListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Skips records that were already processed. Processed messages are recorded in the
+ * {@code processed_messages} table keyed by (topic, key, event id), fronted by an LRU
+ * cache of recent ids and a Bloom filter, so a duplicate check normally costs nothing
+ * and at most one indexed lookup.
+ *
+ * A Bloom filter only knows what this instance has seen, so for the first records of
+ * every newly assigned partition (where redeliveries from a previous owner show up)
+ * the table is always consulted.
+ *
+ * Services that spread the table over several databases override
+ * {@link #forEachDatabase} so that loading and pruning visit each of them.
+ */
+@Component
+@Slf4j
+public class IdempotentConsumer implements ConsumerAwareRebalanceListener {
+
+    public static final String EVENT_ID_HEADER = "event-id";
+
+    // The processed marker of the record being handled on this thread, until a transaction picks it up
+    private static final ThreadLocal<Runnable> PENDING_MARK = new ThreadLocal<>();
+
+    private final ProcessedMessageRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<String, Boolean> recent;
+    private final Map<TopicPartition, AtomicInteger> warmup = new ConcurrentHashMap<>();
+    private final long bloomExpectedInsertions;
+    private final int warmupRecords;
+    private final long ttlHours;
+
+    private volatile BloomFilter bloomFilter;
+
+    public IdempotentConsumer(ProcessedMessageRepository repository,
+                              TransactionTemplate transactionTemplate,
+                              @Value("${idempotency.cache-size:10000}") int cacheSize,
+                              @Value("${idempotency.bloom-expected-insertions:1000000}") long bloomExpectedInsertions,
+                              @Value("${idempotency.warmup-records:500}") int warmupRecords,
+                              @Value("${idempotency.ttl-hours:72}") long ttlHours) {
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.recent = Collections.synchronizedMap(new LinkedHashMap<>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        this.bloomExpectedInsertions = bloomExpectedInsertions;
+        this.warmupRecords = warmupRecords;
+        this.ttlHours = ttlHours;
+        this.bloomFilter = new BloomFilter(bloomExpectedInsertions, 0.01);
+    }
+
+    public <V> RecordInterceptor<String, V> recordInterceptor() {
+        return new RecordInterceptor<>() {
+            @Override
+            public ConsumerRecord<String, V> intercept(ConsumerRecord<String, V> record, Consumer<String, V> consumer) {
+                if (isDuplicate(record)) {
+                    log.info("Skipping duplicate record {} on {}-{}@{}",
+                            record.key(), record.topic(), record.partition(), record.offset());
+                    return null;
+                }
+                PENDING_MARK.set(() -> markProcessedInTransaction(record));
+                return record;
+            }
+
+            // Only reached with the mark still pending when the listener wrote nothing
+            @Override
+            public void success(ConsumerRecord<String, V> record, Consumer<String, V> consumer) {
+                if (PENDING_MARK.get() != null) {
+                    PENDING_MARK.remove();
+                    markProcessed(record);
+                }
+            }
+
+            @Override
+            public void failure(ConsumerRecord<String, V> record, Exception exception, Consumer<String, V> consumer) {
+                PENDING_MARK.remove();
+            }
+        };
+    }
+
+    public boolean isDuplicate(ConsumerRecord<String, ?> record) {
+        MessageId id = MessageId.of(record);
+        String value = id.value();
+
+        if (recent.containsKey(value)) {
+            return true;
+        }
+        if (!inWarmup(record) && !bloomFilter.mightContain(value)) {
+            return false;
+        }
+
+        boolean seen = repository.existsByTopicAndMessageKeyAndEventId(id.topic(), id.key(), id.eventId());
+        if (seen) {
+            recent.put(value, Boolean.TRUE);
+        }
+        return seen;
+    }
+
+    public void markProcessed(ConsumerRecord<String, ?> record) {
+        MessageId id = MessageId.of(record);
+        try {
+            repository.save(ProcessedMessage.builder()
+                    .topic(id.topic())
+                    .messageKey(id.key())
+                    .eventId(id.eventId())
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Message {} already recorded as processed", id.value());
+        }
+        recent.put(id.value(), Boolean.TRUE);
+        bloomFilter.put(id.value());
+    }
+
+    /**
+     * Records the message as processed in the caller's transaction, so the marker
+     * commits or rolls back together with the work it stands for. The in-memory
+     * caches learn about it only after the commit.
+     */
+    public void markProcessedInTransaction(ConsumerRecord<String, ?> record) {
+        MessageId id = MessageId.of(record);
+        repository.save(ProcessedMessage.builder()
+                .topic(id.topic())
+                .messageKey(id.key())
+                .eventId(id.eventId())
+                .build());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recent.put(id.value(), Boolean.TRUE);
+                bloomFilter.put(id.value());
+            }
+        });
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        partitions.forEach(partition -> warmup.put(partition, new AtomicInteger(warmupRecords)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadBloomFilter() {
+        BloomFilter filter = new BloomFilter(bloomExpectedInsertions, 0.01);
+        forEachDatabase(() -> transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<ProcessedMessage> messages = repository.streamByProcessedAtAfter(cutoff())) {
+                messages.forEach(message ->
+                        filter.put(new MessageId(message.getTopic(), message.getMessageKey(), message.getEventId()).value()));
+            }
+        }));
+        bloomFilter = filter;
+    }
+
+    @Scheduled(fixedDelayString = "${idempotency.prune-interval-ms:3600000}")
+    public void pruneExpired() {
+        AtomicInteger deleted = new AtomicInteger();
+        forEachDatabase(() -> deleted.addAndGet(repository.deleteProcessedBefore(cutoff())));
+        log.info("Pruned {} processed-message entries older than {} hours", deleted.get(), ttlHours);
+        // Bloom filters cannot forget, so rebuild it from what is left
+        loadBloomFilter();
+    }
+
+    /**
+     * Runs the action against every database that holds processed messages; by default
+     * there is only the service's own.
+     */
+    protected void forEachDatabase(Runnable action) {
+        action.run();
+    }
+
+    private LocalDateTime cutoff() {
+        return LocalDateTime.now().minusHours(ttlHours);
+    }
+
+    private boolean inWarmup(ConsumerRecord<String, ?> record) {
+        return warmup.computeIfAbsent(new TopicPartition(record.topic(), record.partition()),
+                partition -> new AtomicInteger(warmupRecords)).getAndUpdate(left -> Math.max(left - 1, 0)) > 0;
+    }
+
+    /**
+     * Hands the pending processed marker of a consumed record to the first read-write
+     * transaction the listener starts, which writes it just before committing: the
+     * marker then lands on the same database, and in the same commit, as the handler's
+     * own changes.
+     */
+    @Component
+    static class PendingMarkTransactionListener implements TransactionExecutionListener {
+
+        @Override
+        public void afterBegin(TransactionExecution transaction, Throwable beginFailure) {
+            Runnable mark = PENDING_MARK.get();
+            if (mark == null || beginFailure != null || !transaction.isNewTransaction() || transaction.isReadOnly()) {
+                return;
+            }
+            PENDING_MARK.remove();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    mark.run();
+                }
+            });
+        }
+    }
+
+    public record MessageId(String topic, String key, String eventId) {
+
+        // Records on retry topics are identified by the topic (and offset) they were first consumed from
+        public static MessageId of(ConsumerRecord<String, ?> record) {
+            String topic = firstHeader(record, KafkaHeaders.DLT_ORIGINAL_TOPIC);
+            String eventId = firstHeader(record, EVENT_ID_HEADER);
+            if (eventId == null) {
+                byte[] partition = firstHeaderBytes(record, KafkaHeaders.DLT_ORIGINAL_PARTITION);
+                byte[] offset = firstHeaderBytes(record, KafkaHeaders.DLT_ORIGINAL_OFFSET);
+                eventId = partition != null && offset != null
+                        ? ByteBuffer.wrap(partition).getInt() + "@" + ByteBuffer.wrap(offset).getLong()
+                        : record.partition() + "@" + record.offset();
+            }
+            return new MessageId(topic != null ? topic : record.topic(),
+                    record.key() != null ? record.key() : "", eventId);
+        }
+
+        public String value() {
+            return topic + "|" + key + "|" + eventId;
+        }
+
+        private static String firstHeader(ConsumerRecord<String, ?> record, String name) {
+            byte[] bytes = firstHeaderBytes(record, name);
+            return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+        }
+
+        private static byte[] firstHeaderBytes(ConsumerRecord<String, ?> record, String name) {
+            Iterator<Header> headers = record.headers().headers(name).iterator();
+            return headers.hasNext() ? headers.next().value() : null;
+        }
+    }
+}
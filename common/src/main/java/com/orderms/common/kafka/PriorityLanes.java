@@ -0,0 +1,400 @@
+package com.orderms.common.kafka;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Express and standard lanes of the saga topics. Express orders travel on
+ * {@code <topic>-express}, which has its own listener containers. Before a record
+ * reaches the listener, its thread takes one of the processing permits of the record's
+ * step: the base topic, its express lane and their retry topics. While both lanes of a
+ * step have records waiting, freed permits are handed out in proportion to the lane
+ * weights (smooth weighted round robin). A standard backlog therefore cannot hold up
+ * express orders, and an express burst still leaves standard orders their share. An
+ * idle lane's share goes to the other lane.
+ *
+ * Each step has {@code lanes.slots} permits, or by default as many as its largest
+ * listener container has consumers, so one lane on its own runs at full concurrency
+ * and the permits follow containers that are resized at runtime. Steps never share
+ * permits.
+ *
+ * The waiting happens on the consumer thread, so it is bounded by
+ * {@code lanes.max-poll-wait-ms} per poll to stay within {@code max.poll.interval.ms}.
+ * Once that budget is spent, the rest of the poll bypasses the lanes.
+ */
+@Component
+public class PriorityLanes {
+
+    public static final String EXPRESS_SUFFIX = "-express";
+
+    // Retry and dead-letter topics, e.g. payment-completed-express-order-retry-0
+    private static final Pattern RETRY_SUFFIX = Pattern.compile("-[a-z]+-(retry(-\\d+)?|dlt)$");
+
+    public enum Lane { EXPRESS, STANDARD }
+
+    private final MeterRegistry meterRegistry;
+    private final KafkaListenerEndpointRegistry registry;
+    private final Map<Lane, Integer> weights = new EnumMap<>(Lane.class);
+    private final Map<Lane, Timer> latency = new EnumMap<>(Lane.class);
+    private final Map<Lane, Counter> bypassed = new EnumMap<>(Lane.class);
+    private final Map<Lane, Map<TopicPartition, Long>> lag = new EnumMap<>(Lane.class);
+    private final Map<String, Step> steps = new ConcurrentHashMap<>();
+    private final ThreadLocal<Step> held = new ThreadLocal<>();
+    private final ThreadLocal<Long> waitDeadline = new ThreadLocal<>();
+    private final boolean enabled;
+    private final int slots;
+    private final long maxPollWaitNanos;
+
+    public PriorityLanes(MeterRegistry meterRegistry,
+                         KafkaListenerEndpointRegistry registry,
+                         @Value("${lanes.enabled:true}") boolean enabled,
+                         @Value("${lanes.slots:0}") int slots,
+                         @Value("${lanes.express-weight:4}") int expressWeight,
+                         @Value("${lanes.standard-weight:1}") int standardWeight,
+                         @Value("${lanes.max-poll-wait-ms:60000}") long maxPollWaitMs) {
+        this.meterRegistry = meterRegistry;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.slots = slots;
+        this.maxPollWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxPollWaitMs);
+        weights.put(Lane.EXPRESS, expressWeight);
+        weights.put(Lane.STANDARD, standardWeight);
+
+        for (Lane lane : Lane.values()) {
+            lag.put(lane, new ConcurrentHashMap<>());
+            latency.put(lane, Timer.builder("saga.lane.latency")
+                    .tag("lane", lane.name())
+                    .description("Time from publish until the record reaches the listener")
+                    .register(meterRegistry));
+            bypassed.put(lane, Counter.builder("saga.lane.bypassed")
+                    .tag("lane", lane.name())
+                    .description("Records let through without a slot once the poll's wait budget was spent")
+                    .register(meterRegistry));
+            Gauge.builder("saga.lane.lag", lag.get(lane), partitions ->
+                            partitions.values().stream().mapToLong(Long::longValue).sum())
+                    .tag("lane", lane.name())
+                    .description("Consumer lag summed over the lane's assigned partitions")
+                    .register(meterRegistry);
+        }
+    }
+
+    public static String topic(String baseTopic, String priority) {
+        return "EXPRESS".equalsIgnoreCase(priority) ? baseTopic + EXPRESS_SUFFIX : baseTopic;
+    }
+
+    public static Lane laneOf(String topic) {
+        // Also matches the lane's retry topics, e.g. payment-completed-express-order-retry-0
+        return topic.contains(EXPRESS_SUFFIX) ? Lane.EXPRESS : Lane.STANDARD;
+    }
+
+    // The base topic both lanes and their retry topics belong to
+    static String stepOf(String topic) {
+        String step = RETRY_SUFFIX.matcher(topic).replaceFirst("");
+        return step.endsWith(EXPRESS_SUFFIX) ? step.substring(0, step.length() - EXPRESS_SUFFIX.length()) : step;
+    }
+
+    public <V> RecordInterceptor<String, V> recordInterceptor() {
+        return new RecordInterceptor<>() {
+            @Override
+            public ConsumerRecord<String, V> intercept(ConsumerRecord<String, V> record, Consumer<String, V> consumer) {
+                if (record == null) {
+                    return null;
+                }
+                Lane lane = laneOf(record.topic());
+                TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                consumer.currentLag(partition).ifPresent(value -> lag.get(lane).put(partition, value));
+
+                if (enabled) {
+                    acquireWithinPoll(record.topic());
+                }
+                latency.get(lane).record(Duration.ofMillis(Math.max(0, System.currentTimeMillis() - record.timestamp())));
+                return record;
+            }
+
+            @Override
+            public void setupThreadState(Consumer<?, ?> consumer) {
+                startPoll();
+            }
+
+            @Override
+            public void afterRecord(ConsumerRecord<String, V> record, Consumer<String, V> consumer) {
+                release();
+            }
+        };
+    }
+
+    // Containers only ever subscribe to topics of one lane, so a whole poll shares it
+    public <V> BatchInterceptor<String, V> batchInterceptor() {
+        return new BatchInterceptor<>() {
+            @Override
+            public ConsumerRecords<String, V> intercept(ConsumerRecords<String, V> records, Consumer<String, V> consumer) {
+                if (records == null) {
+                    return null;
+                }
+                String topic = null;
+                for (TopicPartition partition : records.partitions()) {
+                    topic = partition.topic();
+                    consumer.currentLag(partition).ifPresent(value -> lag.get(laneOf(partition.topic())).put(partition, value));
+                }
+
+                if (enabled && topic != null) {
+                    acquireWithinPoll(topic);
+                }
+                long now = System.currentTimeMillis();
+                for (ConsumerRecord<String, V> record : records) {
+                    latency.get(laneOf(record.topic())).record(Duration.ofMillis(Math.max(0, now - record.timestamp())));
+                }
+                return records;
+            }
+
+            @Override
+            public void setupThreadState(Consumer<?, ?> consumer) {
+                startPoll();
+            }
+
+            @Override
+            public void success(ConsumerRecords<String, V> records, Consumer<String, V> consumer) {
+                release();
+            }
+
+            @Override
+            public void failure(ConsumerRecords<String, V> records, Exception exception, Consumer<String, V> consumer) {
+                release();
+            }
+        };
+    }
+
+    /**
+     * Waits up to {@code timeoutNanos} for a slot of the topic's step in the topic's
+     * lane. Returns false, holding no slot, if none was granted in time.
+     */
+    public boolean acquire(String topic, long timeoutNanos) throws InterruptedException {
+        // A permit this thread still holds (its record never completed) is handed back first
+        release();
+        Step step = steps.computeIfAbsent(stepOf(topic), this::register);
+        if (!step.acquire(laneOf(topic), timeoutNanos)) {
+            return false;
+        }
+        held.set(step);
+        return true;
+    }
+
+    public void release() {
+        Step step = held.get();
+        if (step == null) {
+            return;
+        }
+        held.remove();
+        step.release();
+    }
+
+    // Follows listener containers resized at runtime
+    @Scheduled(fixedDelayString = "${lanes.refresh-interval-ms:10000}")
+    public void refreshSlots() {
+        if (slots <= 0) {
+            steps.forEach((name, step) -> step.resize(slotsFor(name)));
+        }
+    }
+
+    private Step register(String name) {
+        Step step = new Step(weights, slotsFor(name));
+        for (Lane lane : Lane.values()) {
+            Gauge.builder("saga.lane.waiting", step, s -> s.waiting(lane))
+                    .tag("lane", lane.name())
+                    .tag("step", name)
+                    .description("Listener threads waiting for a processing slot")
+                    .register(meterRegistry);
+        }
+        Gauge.builder("saga.lane.slots", step, Step::slots)
+                .tag("step", name)
+                .description("Processing slots the step's lanes share")
+                .register(meterRegistry);
+        return step;
+    }
+
+    private int slotsFor(String step) {
+        if (slots > 0) {
+            return slots;
+        }
+        int concurrency = 1;
+        for (MessageListenerContainer container : registry.getListenerContainers()) {
+            String[] topics = container.getContainerProperties().getTopics();
+            if (!(container instanceof ConcurrentMessageListenerContainer<?, ?> concurrent) || topics == null) {
+                continue;
+            }
+            for (String topic : topics) {
+                if (stepOf(topic).equals(step)) {
+                    concurrency = Math.max(concurrency, concurrent.getConcurrency());
+                }
+            }
+        }
+        return concurrency;
+    }
+
+    private void startPoll() {
+        waitDeadline.set(System.nanoTime() + maxPollWaitNanos);
+    }
+
+    private void acquireWithinPoll(String topic) {
+        Long deadline = waitDeadline.get();
+        long timeout = deadline != null ? deadline - System.nanoTime() : maxPollWaitNanos;
+        try {
+            if (!acquire(topic, timeout)) {
+                bypassed.get(laneOf(topic)).increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a " + laneOf(topic) + " lane slot", e);
+        }
+    }
+
+    /**
+     * The permits of one step, shared by its express and standard lanes.
+     */
+    static class Step {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<Lane, Condition> granted = new EnumMap<>(Lane.class);
+        private final Map<Lane, Integer> weights;
+        private final int[] waiting = new int[Lane.values().length];
+        private final int[] grants = new int[Lane.values().length];
+        private final int[] current = new int[Lane.values().length];
+
+        private int slots;
+        private int available;
+
+        Step(Map<Lane, Integer> weights, int slots) {
+            this.weights = weights;
+            this.slots = slots;
+            this.available = slots;
+            for (Lane lane : Lane.values()) {
+                granted.put(lane, lock.newCondition());
+            }
+        }
+
+        boolean acquire(Lane lane, long timeoutNanos) throws InterruptedException {
+            lock.lock();
+            try {
+                waiting[lane.ordinal()]++;
+                dispatch();
+                long remaining = timeoutNanos;
+                try {
+                    while (grants[lane.ordinal()] == 0) {
+                        if (remaining <= 0) {
+                            leave(lane);
+                            return false;
+                        }
+                        remaining = granted.get(lane).awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    leave(lane);
+                    throw e;
+                }
+                grants[lane.ordinal()]--;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void release() {
+            lock.lock();
+            try {
+                available++;
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Permits in use stay out until released, so available may dip below zero after shrinking
+        void resize(int newSlots) {
+            lock.lock();
+            try {
+                available += newSlots - slots;
+                slots = newSlots;
+                dispatch();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int slots() {
+            lock.lock();
+            try {
+                return slots;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int waiting(Lane lane) {
+            lock.lock();
+            try {
+                return waiting[lane.ordinal()];
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Leave the lane: drop a waiter, or if all of them were granted hand one grant back
+        private void leave(Lane lane) {
+            if (waiting[lane.ordinal()] > 0) {
+                waiting[lane.ordinal()]--;
+            } else {
+                grants[lane.ordinal()]--;
+                available++;
+                dispatch();
+            }
+        }
+
+        // Smooth weighted round robin over the lanes that have threads waiting
+        private void dispatch() {
+            while (available > 0) {
+                Lane next = null;
+                int total = 0;
+                for (Lane lane : Lane.values()) {
+                    if (waiting[lane.ordinal()] == 0) {
+                        continue;
+                    }
+                    current[lane.ordinal()] += weights.get(lane);
+                    total += weights.get(lane);
+                    if (next == null || current[lane.ordinal()] > current[next.ordinal()]) {
+                        next = lane;
+                    }
+                }
+                if (next == null) {
+                    return;
+                }
+                current[next.ordinal()] -= total;
+                waiting[next.ordinal()]--;
+                grants[next.ordinal()]++;
+                available--;
+                granted.get(next).signal();
+            }
+        }
+    }
+}
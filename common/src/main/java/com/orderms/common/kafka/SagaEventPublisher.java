@@ -0,0 +1,64 @@
+package com.orderms.common.kafka;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.UUID;
+
+/**
+ * Sends the saga events produced while handling a record. In exactly-once mode the
+ * event is written to the outbox in the caller's database transaction instead, and
+ * the service's {@link ExactlyOnceProcessor} sends it in the Kafka transaction that
+ * commits the consumed record's offset.
+ */
+public abstract class SagaEventPublisher {
+
+    private static final ThreadLocal<String> SOURCE = new ThreadLocal<>();
+
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean exactlyOnce;
+
+    protected SagaEventPublisher(KafkaTemplate<String, Object> kafkaTemplate,
+                                 ObjectMapper objectMapper,
+                                 boolean exactlyOnce) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.exactlyOnce = exactlyOnce;
+    }
+
+    /**
+     * Stores an outgoing event in the service's outbox, in the current database transaction.
+     */
+    protected abstract void saveOutbox(String eventId, String topic, String key, String payload, String sourceId);
+
+    public void publish(String topic, String key, Object event) {
+        if (!exactlyOnce) {
+            kafkaTemplate.send(topic, key, event);
+            return;
+        }
+        String source = SOURCE.get();
+        if (source == null) {
+            throw new IllegalStateException("Event for " + topic + " published outside an exactly-once record");
+        }
+        saveOutbox(UUID.randomUUID().toString(), topic, key, serialize(event), source);
+    }
+
+    public void runForSource(String sourceId, Runnable action) {
+        SOURCE.set(sourceId);
+        try {
+            action.run();
+        } finally {
+            SOURCE.remove();
+        }
+    }
+
+    private String serialize(Object event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not serialize " + event.getClass().getSimpleName(), e);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.orderms.common.kafka;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Per-stage saga latency. {@link SagaTimingProducerInterceptor} stamps every event with
+ * the time its saga started ({@code saga-origin-ts}, carried over from the record being
+ * handled) and the time the event itself was sent ({@code saga-sent-ts}). For every
+ * record, the listeners record how long it waited in its topic and how long processing
+ * took, and they sample the lag of its partition. Batch listeners time processing per
+ * batch; events they send from other threads carry their record's origin explicitly
+ * ({@link #originOf}, {@link #stampOrigin}). The order service records the saga's
+ * end-to-end latency once it is COMPLETED or CANCELLED.
+ */
+@Component
+public class SagaTiming {
+
+    public static final String ORIGIN_HEADER = "saga-origin-ts";
+    public static final String SENT_HEADER = "saga-sent-ts";
+
+    private static final ThreadLocal<Long> ORIGIN = new ThreadLocal<>();
+
+    private final MeterRegistry meterRegistry;
+    private final ThreadLocal<Long> started = new ThreadLocal<>();
+    private final Map<String, Map<TopicPartition, Long>> lag = new ConcurrentHashMap<>();
+
+    public SagaTiming(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Origin of the saga whose record this thread is handling, if it carried one.
+     */
+    public static Long currentOrigin() {
+        return ORIGIN.get();
+    }
+
+    /**
+     * Origin carried by a consumed record, for events sent on another thread.
+     */
+    public static Long originOf(ConsumerRecord<String, ?> record) {
+        return longHeader(record, ORIGIN_HEADER);
+    }
+
+    public static void stampOrigin(ProducerRecord<String, ?> record, Long origin) {
+        if (origin != null) {
+            record.headers().add(ORIGIN_HEADER, ByteBuffer.allocate(Long.BYTES).putLong(origin).array());
+        }
+    }
+
+    public <V> RecordInterceptor<String, V> recordInterceptor() {
+        return new RecordInterceptor<>() {
+            @Override
+            public ConsumerRecord<String, V> intercept(ConsumerRecord<String, V> record, Consumer<String, V> consumer) {
+                if (record == null) {
+                    return null;
+                }
+                received(record, consumer);
+                ORIGIN.set(longHeader(record, ORIGIN_HEADER));
+                started.set(System.nanoTime());
+                return record;
+            }
+
+            @Override
+            public void success(ConsumerRecord<String, V> record, Consumer<String, V> consumer) {
+                processed(Stream.of(record.topic()), "success");
+            }
+
+            @Override
+            public void failure(ConsumerRecord<String, V> record, Exception exception, Consumer<String, V> consumer) {
+                processed(Stream.of(record.topic()), "error");
+            }
+
+            @Override
+            public void afterRecord(ConsumerRecord<String, V> record, Consumer<String, V> consumer) {
+                clear();
+            }
+
+            @Override
+            public void clearThreadState(Consumer<?, ?> consumer) {
+                clear();
+            }
+        };
+    }
+
+    public <V> BatchInterceptor<String, V> batchInterceptor() {
+        return new BatchInterceptor<>() {
+            @Override
+            public ConsumerRecords<String, V> intercept(ConsumerRecords<String, V> records, Consumer<String, V> consumer) {
+                if (records == null) {
+                    return null;
+                }
+                records.forEach(record -> received(record, consumer));
+                started.set(System.nanoTime());
+                return records;
+            }
+
+            @Override
+            public void success(ConsumerRecords<String, V> records, Consumer<String, V> consumer) {
+                processed(topicsOf(records), "success");
+                started.remove();
+            }
+
+            @Override
+            public void failure(ConsumerRecords<String, V> records, Exception exception, Consumer<String, V> consumer) {
+                processed(topicsOf(records), "error");
+                started.remove();
+            }
+        };
+    }
+
+    /**
+     * Records the time from the saga's origin until now, once the current transaction
+     * commits. Falls back to {@code fallbackOriginMs} (the order's creation) when the
+     * thread is not handling a record that carries an origin.
+     */
+    public void recordEndToEnd(String outcome, Long fallbackOriginMs) {
+        Long origin = ORIGIN.get() != null ? ORIGIN.get() : fallbackOriginMs;
+        if (origin == null) {
+            return;
+        }
+        Runnable record = () -> Timer.builder("saga.end.to.end")
+                .tag("outcome", outcome)
+                .description("Time from order creation until the saga finished")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(Math.max(0, System.currentTimeMillis() - origin), TimeUnit.MILLISECONDS);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record.run();
+            }
+        });
+    }
+
+    private void received(ConsumerRecord<String, ?> record, Consumer<?, ?> consumer) {
+        Long sent = longHeader(record, SENT_HEADER);
+        long waited = System.currentTimeMillis() - (sent != null ? sent : record.timestamp());
+        Timer.builder("saga.stage.queue.wait")
+                .tag("stage", record.topic())
+                .description("Time from send until the record reaches the listener")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(Math.max(0, waited), TimeUnit.MILLISECONDS);
+
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+        consumer.currentLag(partition).ifPresent(value -> lagOf(record.topic()).put(partition, value));
+    }
+
+    // A batch is delivered as a whole, so each of its topics is charged the batch's time
+    private void processed(Stream<String> topics, String outcome) {
+        Long start = started.get();
+        if (start == null) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        topics.forEach(topic -> Timer.builder("saga.stage.processing")
+                .tag("stage", topic)
+                .tag("outcome", outcome)
+                .description("Time the listener spent handling the record")
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(elapsed, TimeUnit.NANOSECONDS));
+    }
+
+    private Map<TopicPartition, Long> lagOf(String topic) {
+        return lag.computeIfAbsent(topic, t -> {
+            Map<TopicPartition, Long> partitions = new ConcurrentHashMap<>();
+            Gauge.builder("saga.stage.lag", partitions, p -> p.values().stream().mapToLong(Long::longValue).sum())
+                    .tag("stage", t)
+                    .description("Consumer lag summed over the topic's assigned partitions")
+                    .register(meterRegistry);
+            return partitions;
+        });
+    }
+
+    private void clear() {
+        ORIGIN.remove();
+        started.remove();
+    }
+
+    private static Stream<String> topicsOf(ConsumerRecords<String, ?> records) {
+        return records.partitions().stream().map(TopicPartition::topic).distinct();
+    }
+
+    static Long longHeader(ConsumerRecord<String, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header != null && header.value().length == Long.BYTES ? ByteBuffer.wrap(header.value()).getLong() : null;
+    }
+}
@@ -0,0 +1,47 @@
+package com.orderms.common.kafka;
+
+import org.apache.kafka.clients.producer.ProducerInterceptor;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.header.Headers;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Stamps every outgoing event with its send time and the origin of its saga: the origin
+ * already set on the record by its sender, else that of the record the sending thread
+ * is handling, or now for an event that starts a saga. Records re-published to retry
+ * or dead-letter topics keep their origin.
+ */
+public class SagaTimingProducerInterceptor implements ProducerInterceptor<String, Object> {
+
+    @Override
+    public ProducerRecord<String, Object> onSend(ProducerRecord<String, Object> record) {
+        long now = System.currentTimeMillis();
+        Headers headers = record.headers();
+        if (headers.lastHeader(SagaTiming.ORIGIN_HEADER) == null) {
+            Long origin = SagaTiming.currentOrigin();
+            headers.add(SagaTiming.ORIGIN_HEADER, toBytes(origin != null ? origin : now));
+        }
+        headers.remove(SagaTiming.SENT_HEADER);
+        headers.add(SagaTiming.SENT_HEADER, toBytes(now));
+        return record;
+    }
+
+    @Override
+    public void onAcknowledgement(RecordMetadata metadata, Exception exception) {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+    }
+
+    private static byte[] toBytes(long value) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(value).array();
+    }
+}
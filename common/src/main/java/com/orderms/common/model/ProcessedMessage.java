@@ -0,0 +1,42 @@
+package com.orderms.common.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "processed_messages",
+        uniqueConstraints = @UniqueConstraint(name = "uk_processed_messages",
+                columnNames = {"topic", "messageKey", "eventId"}),
+        indexes = @Index(name = "idx_processed_messages_processed_at", columnList = "processedAt"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ProcessedMessage {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private String topic;
+    
+    @Column(nullable = false)
+    private String messageKey;
+    
+    @Column(nullable = false)
+    private String eventId;
+    
+    @Column(nullable = false)
+    private LocalDateTime processedAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        processedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,25 @@
+package com.orderms.common.repository;
+
+import com.orderms.common.model.ProcessedMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+@Repository
+public interface ProcessedMessageRepository extends JpaRepository<ProcessedMessage, Long> {
+    
+    boolean existsByTopicAndMessageKeyAndEventId(String topic, String messageKey, String eventId);
+    
+    Stream<ProcessedMessage> streamByProcessedAtAfter(LocalDateTime after);
+    
+    @Modifying
+    @Transactional
+    @Query("delete from ProcessedMessage m where m.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+}
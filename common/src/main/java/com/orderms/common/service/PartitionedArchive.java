@@ -0,0 +1,122 @@
+package com.orderms.common.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Archive of a hot table, natively range-partitioned by month of {@code created_at}.
+ * The archive is created with the hot table's columns (plus any archive-only ones),
+ * picks up columns the hot table gains later, and gets a partition for every month
+ * that archived rows fall into. Callers move rows inside their own transaction after
+ * {@link #tryLock()} has made them the only archiver, so partition DDL cannot race.
+ * {@link #initialize} and {@link #createIndex} are meant to run once per archive run,
+ * under the same lock, before the first batch.
+ */
+public class PartitionedArchive {
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("'_y'yyyy'm'MM");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String hotTable;
+    private final String archiveTable;
+
+    private volatile List<String> columns;
+
+    public PartitionedArchive(JdbcTemplate jdbcTemplate, String hotTable, String archiveTable) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.hotTable = hotTable;
+        this.archiveTable = archiveTable;
+    }
+
+    /**
+     * Creates the archive table if needed and adds the hot table's new columns to it.
+     * {@code archiveColumns} are extra column definitions, e.g. {@code "items jsonb"}.
+     */
+    public void initialize(String... archiveColumns) {
+        StringBuilder ddl = new StringBuilder("CREATE TABLE IF NOT EXISTS ")
+                .append(archiveTable).append(" (LIKE ").append(hotTable).append(" INCLUDING DEFAULTS");
+        for (String column : archiveColumns) {
+            ddl.append(", ").append(column);
+        }
+        jdbcTemplate.execute(ddl.append(") PARTITION BY RANGE (created_at)").toString());
+
+        Map<String, String> archived = columnTypes(archiveTable);
+        columnTypes(hotTable).forEach((name, type) -> {
+            if (!archived.containsKey(name)) {
+                jdbcTemplate.execute("ALTER TABLE " + archiveTable + " ADD COLUMN IF NOT EXISTS " + name + " " + type);
+            }
+        });
+        columns = new ArrayList<>(columnTypes(hotTable).keySet());
+    }
+
+    public void createIndex(String... columns) {
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_" + archiveTable + "_" + String.join("_", columns)
+                + " ON " + archiveTable + " (" + String.join(", ", columns) + ")");
+    }
+
+    /**
+     * Takes a transaction-scoped advisory lock so only one instance archives at a time.
+     */
+    public boolean tryLock() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(hashtext(?))", Boolean.class, archiveTable));
+    }
+
+    /**
+     * Hot table columns, comma separated and prefixed with {@code alias}.
+     */
+    public String columnList(String alias) {
+        return columns.stream()
+                .map(column -> alias.isEmpty() ? column : alias + "." + column)
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Makes sure a partition exists for every month the given hot rows were created in.
+     */
+    public void ensurePartitions(Long[] ids) {
+        Map<String, Object> range = jdbcTemplate.queryForMap(
+                "SELECT min(created_at) AS first, max(created_at) AS last FROM " + hotTable + " WHERE id = ANY(?)",
+                (Object) ids);
+        if (range.get("first") == null) {
+            return;
+        }
+        YearMonth last = YearMonth.from(((Timestamp) range.get("last")).toLocalDateTime());
+        for (YearMonth month = YearMonth.from(((Timestamp) range.get("first")).toLocalDateTime());
+             !month.isAfter(last); month = month.plusMonths(1)) {
+            String partition = archiveTable + month.format(PARTITION_SUFFIX);
+            if (!exists(partition)) {
+                LocalDate from = month.atDay(1);
+                jdbcTemplate.execute("CREATE TABLE " + partition + " PARTITION OF " + archiveTable
+                        + " FOR VALUES FROM ('" + from + "') TO ('" + from.plusMonths(1) + "')");
+            }
+        }
+    }
+
+    public boolean exists() {
+        return exists(archiveTable);
+    }
+
+    private boolean exists(String table) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass(?) IS NOT NULL", Boolean.class, table));
+    }
+
+    private Map<String, String> columnTypes(String table) {
+        Map<String, String> types = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT a.attname, format_type(a.atttypid, a.atttypmod) FROM pg_attribute a " +
+                        "WHERE a.attrelid = ?::regclass AND a.attnum > 0 AND NOT a.attisdropped ORDER BY a.attnum",
+                (RowCallbackHandler) row -> types.put(row.getString(1), row.getString(2)), table);
+        return types;
+    }
+}
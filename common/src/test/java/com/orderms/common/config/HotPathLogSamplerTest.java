@@ -0,0 +1,107 @@
+package com.orderms.common.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotPathLogSamplerTest {
+
+    private final HotPathLogSampler sampler = new HotPathLogSampler();
+    private final AtomicLong window = new AtomicLong();
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        sampler.setPermitsPerSecond(3);
+        // Start well inside a second, so a test does not straddle two windows
+        while (System.currentTimeMillis() % 1000 > 700) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void letsThroughThePermitsOfASecondThenRefuses() {
+        assertThat(sampler.tryAcquire(window)).isTrue();
+        assertThat(sampler.tryAcquire(window)).isTrue();
+        assertThat(sampler.tryAcquire(window)).isTrue();
+
+        assertThat(sampler.tryAcquire(window)).isFalse();
+        assertThat(sampler.tryAcquire(window)).isFalse();
+    }
+
+    @Test
+    void startsAFreshCountInTheNextSecond() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            sampler.tryAcquire(window);
+        }
+        assertThat(sampler.tryAcquire(window)).isFalse();
+
+        long second = System.currentTimeMillis() / 1000;
+        while (System.currentTimeMillis() / 1000 == second) {
+            Thread.sleep(10);
+        }
+
+        assertThat(sampler.tryAcquire(window)).isTrue();
+    }
+
+    @Test
+    void grantsExactlyThePermitsToConcurrentCallers() throws Exception {
+        sampler.setPermitsPerSecond(50);
+        AtomicInteger granted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    if (sampler.tryAcquire(window)) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(granted.get()).isEqualTo(50);
+    }
+
+    @Test
+    void onlyDropsHotPathLinesBelowWarn() {
+        sampler.setPermitsPerSecond(1);
+        Logger logger = new LoggerContext().getLogger("sampled");
+        logger.setLevel(Level.DEBUG);
+        long suppressed = HotPathLogSampler.suppressed();
+
+        assertThat(decide(logger, Level.INFO, true)).isEqualTo(FilterReply.NEUTRAL);
+        assertThat(decide(logger, Level.INFO, true)).isEqualTo(FilterReply.DENY);
+        assertThat(decide(logger, Level.DEBUG, true)).isEqualTo(FilterReply.DENY);
+        assertThat(decide(logger, Level.WARN, true)).isEqualTo(FilterReply.NEUTRAL);
+        assertThat(decide(logger, Level.INFO, false)).isEqualTo(FilterReply.NEUTRAL);
+        assertThat(HotPathLogSampler.suppressed() - suppressed).isEqualTo(2);
+    }
+
+    @Test
+    void neverSamplesWhenPermitsAreDisabled() {
+        sampler.setPermitsPerSecond(0);
+        Logger logger = new LoggerContext().getLogger("unsampled");
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(decide(logger, Level.INFO, true)).isEqualTo(FilterReply.NEUTRAL);
+        }
+    }
+
+    private FilterReply decide(Logger logger, Level level, boolean hotPath) {
+        return sampler.decide(hotPath ? HotPathLogSampler.HOT_PATH : null, logger, level, "line", null, null);
+    }
+}
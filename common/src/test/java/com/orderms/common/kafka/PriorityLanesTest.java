@@ -0,0 +1,127 @@
+package com.orderms.common.kafka;
+
+import com.orderms.common.kafka.PriorityLanes.Lane;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PriorityLanesTest {
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+    private static final String EXPRESS = "payment-completed-express";
+    private static final String STANDARD = "payment-completed";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // One slot per step, express:standard = 4:1
+    private final PriorityLanes lanes = new PriorityLanes(meterRegistry, null, true, 1, 4, 1, 60_000);
+
+    @Test
+    void grantsSlotsByWeightWhileBothLanesWait() throws Exception {
+        List<Lane> order = grantOrder(10, 3);
+
+        assertThat(order).containsExactly(
+                Lane.EXPRESS, Lane.EXPRESS, Lane.STANDARD, Lane.EXPRESS, Lane.EXPRESS,
+                Lane.EXPRESS, Lane.EXPRESS, Lane.STANDARD, Lane.EXPRESS, Lane.EXPRESS,
+                Lane.EXPRESS, Lane.EXPRESS, Lane.STANDARD);
+    }
+
+    @Test
+    void givesAnIdleLanesShareToTheOtherLane() throws Exception {
+        List<Lane> order = grantOrder(0, 4);
+
+        assertThat(order).containsExactly(Lane.STANDARD, Lane.STANDARD, Lane.STANDARD, Lane.STANDARD);
+    }
+
+    @Test
+    void givesUpAfterTheTimeoutWithoutHoldingASlot() throws Exception {
+        assertThat(lanes.acquire(STANDARD, TIMEOUT)).isTrue();
+
+        AtomicBoolean acquired = new AtomicBoolean(true);
+        Thread waiter = new Thread(() -> {
+            try {
+                acquired.set(lanes.acquire(EXPRESS, TimeUnit.MILLISECONDS.toNanos(50)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        waiter.join();
+
+        assertThat(acquired.get()).isFalse();
+        assertThat(waiting(Lane.EXPRESS)).isZero();
+        lanes.release();
+        assertThat(lanes.acquire(EXPRESS, 0)).isTrue();
+    }
+
+    @Test
+    void keepsTheSlotsOfEachStepApart() throws Exception {
+        assertThat(lanes.acquire(STANDARD, TIMEOUT)).isTrue();
+
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread other = new Thread(() -> {
+            try {
+                acquired.set(lanes.acquire("inventory-reserved-express", 0));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        other.start();
+        other.join();
+
+        assertThat(acquired.get()).isTrue();
+    }
+
+    @Test
+    void groupsBothLanesAndTheirRetryTopicsIntoOneStep() {
+        assertThat(PriorityLanes.stepOf("payment-completed")).isEqualTo(STANDARD);
+        assertThat(PriorityLanes.stepOf(EXPRESS)).isEqualTo(STANDARD);
+        assertThat(PriorityLanes.stepOf("payment-completed-order-retry-0")).isEqualTo(STANDARD);
+        assertThat(PriorityLanes.stepOf("payment-completed-express-order-retry-2")).isEqualTo(STANDARD);
+        assertThat(PriorityLanes.stepOf("payment-completed-express-order-dlt")).isEqualTo(STANDARD);
+        assertThat(PriorityLanes.stepOf("inventory-held")).isEqualTo("inventory-held");
+    }
+
+    // Queues the waiters behind the only slot, then records the lanes in the order they are granted
+    private List<Lane> grantOrder(int express, int standard) throws Exception {
+        assertThat(lanes.acquire(STANDARD, TIMEOUT)).isTrue();
+
+        List<Lane> order = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < express + standard; i++) {
+            Lane lane = i < express ? Lane.EXPRESS : Lane.STANDARD;
+            Thread thread = new Thread(() -> {
+                try {
+                    if (lanes.acquire(lane == Lane.EXPRESS ? EXPRESS : STANDARD, TIMEOUT)) {
+                        order.add(lane);
+                        lanes.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        while (waiting(Lane.EXPRESS) < express || waiting(Lane.STANDARD) < standard) {
+            Thread.sleep(5);
+        }
+
+        lanes.release();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return order;
+    }
+
+    private double waiting(Lane lane) {
+        return meterRegistry.get("saga.lane.waiting").tag("lane", lane.name()).tag("step", STANDARD).gauge().value();
+    }
+}
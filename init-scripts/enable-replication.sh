@@ -0,0 +1,9 @@
+#!/bin/bash
+set -e
+
+# Lets streaming replicas (docker-compose.replicas.yml) connect to this primary.
+# Like every init script it only runs when the data volume is first created.
+
+echo "host replication all all scram-sha-256" >> "$PGDATA/pg_hba.conf"
+
+echo "Replication connections enabled for $POSTGRES_DB"
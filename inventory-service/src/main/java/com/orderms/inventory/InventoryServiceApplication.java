@@ -1,11 +1,35 @@
 package com.orderms.inventory;
 
+import com.orderms.common.config.KafkaRetryConfig;
+import com.orderms.common.config.LoggingConfig;
+import com.orderms.common.config.SqlProfiler;
+import com.orderms.common.config.SqlProfilingConfig;
+import com.orderms.common.config.SqlProfilingFilter;
+import com.orderms.common.config.TracingConfig;
+import com.orderms.common.config.VirtualThreadConfig;
+import com.orderms.common.controller.DlqReplayController;
+import com.orderms.common.kafka.AdaptiveConcurrencyController;
+import com.orderms.common.kafka.DlqReplayer;
+import com.orderms.common.kafka.IdempotentConsumer;
+import com.orderms.common.kafka.PriorityLanes;
+import com.orderms.common.kafka.SagaTiming;
+import com.orderms.common.model.ProcessedMessage;
+import com.orderms.common.repository.ProcessedMessageRepository;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EntityScan(basePackageClasses = {InventoryServiceApplication.class, ProcessedMessage.class})
+@EnableJpaRepositories(basePackageClasses = {InventoryServiceApplication.class, ProcessedMessageRepository.class})
+@Import({AdaptiveConcurrencyController.class, KafkaRetryConfig.class, DlqReplayer.class, DlqReplayController.class, PriorityLanes.class, SagaTiming.class, IdempotentConsumer.class, TracingConfig.class,
+        LoggingConfig.class, VirtualThreadConfig.class, SqlProfiler.class, SqlProfilingConfig.class, SqlProfilingFilter.class})
 @EnableKafka
+@EnableScheduling
 public class InventoryServiceApplication {
     
     public static void main(String[] args) {
@@ -1,6 +1,13 @@
 package com.orderms.inventory.config;
 
+import com.orderms.common.config.SqlProfiler;
+import com.orderms.common.kafka.IdempotentConsumer;
+import com.orderms.common.kafka.PriorityLanes;
+import com.orderms.common.kafka.SagaTiming;
+import com.orderms.inventory.kafka.InventoryHoldCommand;
 import com.orderms.inventory.kafka.PaymentCompletedEvent;
+import com.orderms.inventory.kafka.ReleaseInventoryCommand;
+import lombok.RequiredArgsConstructor;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,23 +16,36 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.CompositeRecordInterceptor;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 
 import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
+@RequiredArgsConstructor
 public class KafkaConsumerConfig {
 
+    private final IdempotentConsumer idempotentConsumer;
+    private final PriorityLanes priorityLanes;
+    private final SagaTiming sagaTiming;
+    private final SqlProfiler sqlProfiler;
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    // Continues the trace (and its sampling decision) carried in the record's headers
+    @Value("${spring.kafka.listener.observation-enabled:false}")
+    private boolean observationEnabled;
+
     @Bean
     public ConsumerFactory<String, PaymentCompletedEvent> paymentCompletedConsumerFactory() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, "inventory-service-group");
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        // Never see events from aborted exactly-once transactions in payment
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
         props.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
         props.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
         
@@ -39,6 +59,66 @@ public class KafkaConsumerConfig {
     public ConcurrentKafkaListenerContainerFactory<String, PaymentCompletedEvent> paymentCompletedKafkaListenerContainerFactory() {
         ConcurrentKafkaListenerContainerFactory<String, PaymentCompletedEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(paymentCompletedConsumerFactory());
+        factory.getContainerProperties().setObservationEnabled(observationEnabled);
+        // SQL profiling covers the duplicate check; then a weighted-fair slot for the record's lane,
+        // then stage timing
+        factory.setRecordInterceptor(new CompositeRecordInterceptor<>(sqlProfiler.recordInterceptor(),
+                idempotentConsumer.recordInterceptor(), priorityLanes.recordInterceptor(), sagaTiming.recordInterceptor()));
+        factory.getContainerProperties().setConsumerRebalanceListener(idempotentConsumer);
+        return factory;
+    }
+
+    @Bean
+    public ConsumerFactory<String, InventoryHoldCommand> inventoryHoldConsumerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, "inventory-service-group");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
+        props.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
+        
+        return new DefaultKafkaConsumerFactory<>(
+                props,
+                new StringDeserializer(),
+                new JsonDeserializer<>(InventoryHoldCommand.class, false));
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, InventoryHoldCommand> inventoryHoldKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, InventoryHoldCommand> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(inventoryHoldConsumerFactory());
+        factory.getContainerProperties().setObservationEnabled(observationEnabled);
+        factory.setRecordInterceptor(new CompositeRecordInterceptor<>(sqlProfiler.recordInterceptor(),
+                idempotentConsumer.recordInterceptor(), sagaTiming.recordInterceptor()));
+        factory.getContainerProperties().setConsumerRebalanceListener(idempotentConsumer);
+        return factory;
+    }
+
+    @Bean
+    public ConsumerFactory<String, ReleaseInventoryCommand> releaseInventoryConsumerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, "inventory-service-group");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        // Never see commands from aborted transactions of the Kafka Streams saga engine
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        props.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
+        props.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
+        
+        return new DefaultKafkaConsumerFactory<>(
+                props,
+                new StringDeserializer(),
+                new JsonDeserializer<>(ReleaseInventoryCommand.class, false));
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, ReleaseInventoryCommand> releaseInventoryKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, ReleaseInventoryCommand> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(releaseInventoryConsumerFactory());
+        factory.getContainerProperties().setObservationEnabled(observationEnabled);
+        factory.setRecordInterceptor(new CompositeRecordInterceptor<>(sqlProfiler.recordInterceptor(),
+                idempotentConsumer.recordInterceptor(), sagaTiming.recordInterceptor()));
+        factory.getContainerProperties().setConsumerRebalanceListener(idempotentConsumer);
         return factory;
     }
 }
@@ -0,0 +1,36 @@
+package com.orderms.inventory.controller;
+
+import com.orderms.inventory.service.InventoryService;
+import com.orderms.inventory.service.StockLedgerService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/inventory")
+@RequiredArgsConstructor
+@Slf4j
+public class InventoryController {
+    
+    private final InventoryService inventoryService;
+    private final StockLedgerService stockLedgerService;
+    
+    @GetMapping("/{productId}/stock")
+    public ResponseEntity<Map<String, Object>> getStock(@PathVariable String productId) {
+        StockLedgerService.StockLevel level = stockLedgerService.currentStock(productId);
+        return ResponseEntity.ok(Map.of(
+                "productId", productId,
+                "availableQuantity", level.getAvailable(),
+                "reservedQuantity", level.getReserved()));
+    }
+    
+    @PostMapping("/{productId}/restock")
+    public ResponseEntity<Void> restock(@PathVariable String productId, @RequestParam int quantity) {
+        log.info("REST: Restocking {} units of product: {}", quantity, productId);
+        inventoryService.restockInventory(productId, quantity);
+        return ResponseEntity.accepted().build();
+    }
+}
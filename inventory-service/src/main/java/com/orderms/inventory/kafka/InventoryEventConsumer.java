@@ -1,5 +1,6 @@
 package com.orderms.inventory.kafka;
 
+import com.orderms.common.kafka.PriorityLanes;
 import com.orderms.inventory.service.InventoryService;
 import io.micrometer.observation.annotation.Observed;
 import lombok.RequiredArgsConstructor;
@@ -18,10 +19,45 @@ public class InventoryEventConsumer {
     @KafkaListener(
         topics = "payment-completed", 
         groupId = "inventory-service-group",
-        containerFactory = "paymentCompletedKafkaListenerContainerFactory"
+        containerFactory = "paymentCompletedKafkaListenerContainerFactory",
+        concurrency = "${lanes.concurrency:2}",
+        autoStartup = "#{!${exactly-once.enabled:false}}"
+    )
+    @KafkaListener(
+        topics = "payment-completed" + PriorityLanes.EXPRESS_SUFFIX, 
+        groupId = "inventory-service-group",
+        containerFactory = "paymentCompletedKafkaListenerContainerFactory",
+        concurrency = "${lanes.concurrency:2}",
+        autoStartup = "#{!${exactly-once.enabled:false}}"
     )
     public void handlePaymentCompleted(PaymentCompletedEvent event) {
-        log.info("Received PaymentCompletedEvent for order: {}", event.getOrderId());
+        log.debug("Received PaymentCompletedEvent for order: {}", event.getOrderId());
+        if (Boolean.TRUE.equals(event.getInventoryHold())) {
+            log.info("Inventory already held for order: {}, skipping reservation", event.getOrderId());
+            return;
+        }
         inventoryService.reserveInventory(event);
     }
+    
+    @KafkaListener(
+        topics = "inventory-hold", 
+        groupId = "inventory-service-group",
+        containerFactory = "inventoryHoldKafkaListenerContainerFactory",
+        autoStartup = "#{!${exactly-once.enabled:false}}"
+    )
+    public void handleInventoryHold(InventoryHoldCommand command) {
+        log.debug("Received InventoryHoldCommand for order: {}", command.getOrderId());
+        inventoryService.holdInventory(command);
+    }
+    
+    @KafkaListener(
+        topics = "inventory-release", 
+        groupId = "inventory-service-group",
+        containerFactory = "releaseInventoryKafkaListenerContainerFactory",
+        autoStartup = "#{!${exactly-once.enabled:false}}"
+    )
+    public void handleReleaseInventory(ReleaseInventoryCommand command) {
+        log.debug("Received ReleaseInventoryCommand for order: {} ({})", command.getOrderId(), command.getReason());
+        inventoryService.releaseInventory(command.getOrderId());
+    }
 }
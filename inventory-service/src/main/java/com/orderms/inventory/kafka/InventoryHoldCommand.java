@@ -0,0 +1,17 @@
+package com.orderms.inventory.kafka;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InventoryHoldCommand {
+    private String orderId;
+    private List<PaymentCompletedEvent.OrderItemDto> items;
+}
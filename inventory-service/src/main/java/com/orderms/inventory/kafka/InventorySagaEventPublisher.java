@@ -0,0 +1,37 @@
+package com.orderms.inventory.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orderms.common.kafka.SagaEventPublisher;
+import com.orderms.inventory.model.OutboxEvent;
+import com.orderms.inventory.repository.OutboxEventRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * The inventory service's {@link SagaEventPublisher}, writing to its outbox table.
+ */
+@Component
+public class InventorySagaEventPublisher extends SagaEventPublisher {
+
+    private final OutboxEventRepository outboxRepository;
+
+    public InventorySagaEventPublisher(KafkaTemplate<String, Object> kafkaTemplate,
+                                       OutboxEventRepository outboxRepository,
+                                       ObjectMapper objectMapper,
+                                       @Value("${exactly-once.enabled:false}") boolean exactlyOnce) {
+        super(kafkaTemplate, objectMapper, exactlyOnce);
+        this.outboxRepository = outboxRepository;
+    }
+
+    @Override
+    protected void saveOutbox(String eventId, String topic, String key, String payload, String sourceId) {
+        outboxRepository.save(OutboxEvent.builder()
+                .eventId(eventId)
+                .topic(topic)
+                .messageKey(key)
+                .payload(payload)
+                .sourceId(sourceId)
+                .build());
+    }
+}
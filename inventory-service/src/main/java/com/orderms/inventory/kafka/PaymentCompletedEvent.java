@@ -17,6 +17,8 @@ public class PaymentCompletedEvent {
     private String transactionId;
     private Double amount;
     private List<OrderItemDto> items; // Added for inventory checking
+    private Boolean inventoryHold; // Stock was already held in parallel with the payment
+    private String priority;
     
     @Data
     @NoArgsConstructor
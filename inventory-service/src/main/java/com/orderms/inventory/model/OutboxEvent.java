@@ -0,0 +1,50 @@
+package com.orderms.inventory.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "outbox_events",
+        indexes = {
+                @Index(name = "idx_outbox_events_source_id", columnList = "sourceId"),
+                @Index(name = "idx_outbox_events_created_at", columnList = "createdAt")
+        })
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboxEvent {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false, unique = true)
+    private String eventId;
+    
+    @Column(nullable = false)
+    private String topic;
+    
+    @Column(nullable = false)
+    private String messageKey;
+    
+    @Column(nullable = false, columnDefinition = "text")
+    private String payload;
+    
+    // Consumed record (topic|key|event id) whose processing produced this event
+    @Column(nullable = false)
+    private String sourceId;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,63 @@
+package com.orderms.inventory.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "inventory_stock_movements",
+        indexes = @Index(name = "idx_stock_movements_product", columnList = "productId, id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StockMovement {
+    
+    // Sequence (not IDENTITY) so Hibernate can batch the inserts of one ledger write
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_movement_seq")
+    @SequenceGenerator(name = "stock_movement_seq", sequenceName = "inventory_stock_movements_seq", allocationSize = 50)
+    private Long id;
+    
+    @Column(nullable = false)
+    private String productId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private MovementType type;
+    
+    @Column(nullable = false)
+    private Integer quantity;
+    
+    private String orderId;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+    
+    public int availableDelta() {
+        return type == MovementType.RESERVE ? -quantity : quantity;
+    }
+    
+    public int reservedDelta() {
+        return switch (type) {
+            case RESERVE -> quantity;
+            case RELEASE -> -quantity;
+            case RESTOCK -> 0;
+        };
+    }
+    
+    public enum MovementType {
+        RESERVE,
+        RELEASE,
+        RESTOCK
+    }
+}
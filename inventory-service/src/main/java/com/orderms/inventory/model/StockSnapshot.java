@@ -0,0 +1,43 @@
+package com.orderms.inventory.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "inventory_stock_snapshots",
+        indexes = @Index(name = "idx_stock_snapshots_product", columnList = "productId, id"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StockSnapshot {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private String productId;
+    
+    @Column(nullable = false)
+    private Integer availableQuantity;
+    
+    @Column(nullable = false)
+    private Integer reservedQuantity;
+    
+    // Every movement with id <= lastMovementId is folded into this snapshot
+    @Column(nullable = false)
+    private Long lastMovementId;
+    
+    private LocalDateTime createdAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
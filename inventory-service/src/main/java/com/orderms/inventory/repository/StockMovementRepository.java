@@ -0,0 +1,27 @@
+package com.orderms.inventory.repository;
+
+import com.orderms.inventory.model.StockMovement;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface StockMovementRepository extends JpaRepository<StockMovement, Long> {
+    
+    @Query("select coalesce(max(m.id), 0) from StockMovement m where m.createdAt < :before")
+    Long findMaxIdCreatedBefore(@Param("before") LocalDateTime before);
+    
+    @Query("select m.type, coalesce(sum(m.quantity), 0) from StockMovement m " +
+           "where m.productId = :productId and m.id > :fromId and m.id <= :toId group by m.type")
+    List<Object[]> sumByType(@Param("productId") String productId,
+                             @Param("fromId") Long fromId,
+                             @Param("toId") Long toId);
+    
+    @Query("select m.type, coalesce(sum(m.quantity), 0) from StockMovement m " +
+           "where m.productId = :productId and m.id > :fromId group by m.type")
+    List<Object[]> sumByTypeSince(@Param("productId") String productId, @Param("fromId") Long fromId);
+}
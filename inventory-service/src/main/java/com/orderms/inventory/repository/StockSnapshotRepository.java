@@ -0,0 +1,20 @@
+package com.orderms.inventory.repository;
+
+import com.orderms.inventory.model.StockSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface StockSnapshotRepository extends JpaRepository<StockSnapshot, Long> {
+    
+    Optional<StockSnapshot> findFirstByProductIdOrderByIdDesc(String productId);
+    
+    @Modifying
+    @Query("delete from StockSnapshot s where s.productId = :productId and s.id < :keepFromId")
+    int deleteOlderThan(@Param("productId") String productId, @Param("keepFromId") Long keepFromId);
+}
@@ -1,19 +1,24 @@
 package com.orderms.inventory.service;
 
+import com.orderms.common.config.HotPathLogSampler;
+import com.orderms.common.kafka.PriorityLanes;
+import com.orderms.common.kafka.SagaEventPublisher;
 import com.orderms.inventory.kafka.*;
 import com.orderms.inventory.model.InventoryItem;
 import com.orderms.inventory.model.InventoryReservation;
+import com.orderms.inventory.model.StockMovement;
 import com.orderms.inventory.repository.InventoryItemRepository;
 import com.orderms.inventory.repository.InventoryReservationRepository;
 import io.micrometer.observation.annotation.Observed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 
@@ -25,7 +30,8 @@ public class InventoryService {
     
     private final InventoryItemRepository inventoryItemRepository;
     private final InventoryReservationRepository reservationRepository;
-    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final StockLedgerService stockLedgerService;
+    private final SagaEventPublisher eventPublisher;
     private final Random random = new Random();
     
     // Configurable failure rate (default 5%)
@@ -72,7 +78,19 @@ public class InventoryService {
     
     @Transactional
     public void reserveInventory(PaymentCompletedEvent event) {
-        log.info("Reserving inventory for order: {} (Failure rate: {}%)", event.getOrderId(), failureRate);
+        reserve(event.getOrderId(), event.getItems(), event.getPriority(),
+                PriorityLanes.topic("inventory-reserved", event.getPriority()));
+    }
+    
+    // Parallel saga: hold stock while the payment is still being authorized
+    @Transactional
+    public void holdInventory(InventoryHoldCommand command) {
+        reserve(command.getOrderId(), command.getItems(), null, "inventory-held");
+    }
+    
+    private void reserve(String orderId, List<PaymentCompletedEvent.OrderItemDto> items, String priority,
+                         String successTopic) {
+        log.debug("Reserving inventory for order: {} (Failure rate: {}%)", orderId, failureRate);
         
         String reservationId = "RES-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
         
@@ -80,47 +98,53 @@ public class InventoryService {
             // First: Configurable failure simulation for testing
             if (random.nextInt(100) < failureRate) {
                 log.warn("Simulating inventory failure for order: {} (triggered by {}% failure rate)", 
-                    event.getOrderId(), failureRate);
+                    orderId, failureRate);
                 throw new RuntimeException("Simulated inventory failure for testing SAGA compensation");
             }
             
             // Second: REAL inventory validation
-            if (event.getItems() == null || event.getItems().isEmpty()) {
+            if (items == null || items.isEmpty()) {
                 throw new RuntimeException("No items to reserve");
             }
             
-            // Check and reserve each item
-            for (PaymentCompletedEvent.OrderItemDto itemDto : event.getItems()) {
-                log.info("Checking inventory for product: {} (quantity: {})", itemDto.getProductId(), itemDto.getQuantity());
-                
-                InventoryItem item = inventoryItemRepository.findByProductId(itemDto.getProductId())
-                        .orElseThrow(() -> new RuntimeException(
-                            "Product not found in inventory: " + itemDto.getProductId() + 
-                            " (Product Name: " + itemDto.getProductName() + ")"));
-                
-                if (!item.hasAvailableStock(itemDto.getQuantity())) {
-                    throw new RuntimeException(
-                        String.format("Insufficient stock for product: %s. Available: %d, Requested: %d",
-                            itemDto.getProductId(), item.getAvailableQuantity(), itemDto.getQuantity()));
-                }
-                
-                // Reserve the stock
-                log.info("Reserving {} units of product: {} (current available: {})", 
-                    itemDto.getQuantity(), itemDto.getProductId(), item.getAvailableQuantity());
-                item.reserveStock(itemDto.getQuantity());
-                inventoryItemRepository.save(item);
-                
-                // Create reservation record
-                InventoryReservation reservation = InventoryReservation.builder()
-                        .reservationId(reservationId + "-" + itemDto.getProductId())
-                        .orderId(event.getOrderId())
+            List<StockMovement> movements = new ArrayList<>();
+            for (PaymentCompletedEvent.OrderItemDto itemDto : items) {
+                movements.add(StockMovement.builder()
                         .productId(itemDto.getProductId())
+                        .type(StockMovement.MovementType.RESERVE)
                         .quantity(itemDto.getQuantity())
-                        .status(InventoryReservation.ReservationStatus.RESERVED)
-                        .build();
+                        .orderId(orderId)
+                        .build());
+            }
+            
+            if (stockLedgerService.isEnabled()) {
+                // Ledger mode: check against the in-memory view and append, no row update
+                stockLedgerService.reserveAll(movements);
+                items.forEach(itemDto -> saveReservation(reservationId, orderId, itemDto));
+            } else {
+                // Check and reserve each item
+                for (PaymentCompletedEvent.OrderItemDto itemDto : items) {
+                    InventoryItem item = inventoryItemRepository.findByProductId(itemDto.getProductId())
+                            .orElseThrow(() -> new RuntimeException(
+                                "Product not found in inventory: " + itemDto.getProductId() + 
+                                " (Product Name: " + itemDto.getProductName() + ")"));
+                    
+                    if (!item.hasAvailableStock(itemDto.getQuantity())) {
+                        throw new RuntimeException(
+                            String.format("Insufficient stock for product: %s. Available: %d, Requested: %d",
+                                itemDto.getProductId(), item.getAvailableQuantity(), itemDto.getQuantity()));
+                    }
+                    
+                    // Reserve the stock
+                    log.debug("Reserving {} units of product: {} (current available: {})", 
+                        itemDto.getQuantity(), itemDto.getProductId(), item.getAvailableQuantity());
+                    item.reserveStock(itemDto.getQuantity());
+                    inventoryItemRepository.save(item);
+                    
+                    saveReservation(reservationId, orderId, itemDto);
+                }
                 
-                reservationRepository.save(reservation);
-                log.info("Reserved {} units of product: {}", itemDto.getQuantity(), itemDto.getProductId());
+                stockLedgerService.append(movements);
             }
             
             // Simulate processing time
@@ -128,20 +152,24 @@ public class InventoryService {
             
             // Publish success event
             InventoryReservedEvent reservedEvent = InventoryReservedEvent.builder()
-                    .orderId(event.getOrderId())
+                    .orderId(orderId)
                     .reservationId(reservationId)
+                    .priority(priority)
+                    .productIds(productIds(items))
                     .build();
             
-            kafkaTemplate.send("inventory-reserved", event.getOrderId(), reservedEvent);
-            log.info("All inventory reserved successfully for order: {}", event.getOrderId());
+            eventPublisher.publish(successTopic, orderId, reservedEvent);
+            log.atInfo().addMarker(HotPathLogSampler.HOT_PATH).addKeyValue("orderId", orderId)
+                    .addKeyValue("reservationId", reservationId).addKeyValue("items", items.size())
+                    .log("Inventory reserved");
             
         } catch (Exception e) {
-            log.error("Inventory reservation failed for order: {} - Reason: {}", event.getOrderId(), e.getMessage());
+            log.error("Inventory reservation failed for order: {} - Reason: {}", orderId, e.getMessage());
             
             // Save failed reservation
             InventoryReservation failedReservation = InventoryReservation.builder()
                     .reservationId(reservationId)
-                    .orderId(event.getOrderId())
+                    .orderId(orderId)
                     .productId("FAILED")
                     .quantity(0)
                     .status(InventoryReservation.ReservationStatus.FAILED)
@@ -151,26 +179,52 @@ public class InventoryService {
             
             // Publish failure event
             InventoryFailedEvent failedEvent = InventoryFailedEvent.builder()
-                    .orderId(event.getOrderId())
+                    .orderId(orderId)
                     .reason(e.getMessage())
+                    .productIds(productIds(items))
                     .build();
             
-            kafkaTemplate.send("inventory-failed", event.getOrderId(), failedEvent);
+            eventPublisher.publish("inventory-failed", orderId, failedEvent);
         }
     }
     
+    private static List<String> productIds(List<PaymentCompletedEvent.OrderItemDto> items) {
+        return items != null ? items.stream().map(PaymentCompletedEvent.OrderItemDto::getProductId).toList() : null;
+    }
+    
+    private void saveReservation(String reservationId, String orderId, PaymentCompletedEvent.OrderItemDto itemDto) {
+        InventoryReservation reservation = InventoryReservation.builder()
+                .reservationId(reservationId + "-" + itemDto.getProductId())
+                .orderId(orderId)
+                .productId(itemDto.getProductId())
+                .quantity(itemDto.getQuantity())
+                .status(InventoryReservation.ReservationStatus.RESERVED)
+                .build();
+        
+        reservationRepository.save(reservation);
+    }
+    
     @Transactional
     public void releaseInventory(String orderId) {
-        log.info("Releasing inventory for order: {}", orderId);
+        log.debug("Releasing inventory for order: {}", orderId);
         
         // Find all reservations for this order
         var reservations = reservationRepository.findByOrderId(orderId);
+        List<StockMovement> movements = new ArrayList<>();
         
         for (InventoryReservation reservation : reservations) {
             if (reservation.getStatus() == InventoryReservation.ReservationStatus.RESERVED) {
                 // Release the stock
-                inventoryItemRepository.findByProductId(reservation.getProductId())
-                        .ifPresent(item -> item.releaseStock(reservation.getQuantity()));
+                if (!stockLedgerService.isEnabled()) {
+                    inventoryItemRepository.findByProductId(reservation.getProductId())
+                            .ifPresent(item -> item.releaseStock(reservation.getQuantity()));
+                }
+                movements.add(StockMovement.builder()
+                        .productId(reservation.getProductId())
+                        .type(StockMovement.MovementType.RELEASE)
+                        .quantity(reservation.getQuantity())
+                        .orderId(orderId)
+                        .build());
                 
                 // Update reservation status
                 reservation.setStatus(InventoryReservation.ReservationStatus.RELEASED);
@@ -178,6 +232,26 @@ public class InventoryService {
             }
         }
         
-        log.info("Inventory released for order: {}", orderId);
+        stockLedgerService.append(movements);
+        log.atInfo().addMarker(HotPathLogSampler.HOT_PATH).addKeyValue("orderId", orderId).log("Inventory released");
+    }
+    
+    @Transactional
+    public void restockInventory(String productId, int quantity) {
+        log.info("Restocking {} units of product: {}", quantity, productId);
+        
+        InventoryItem item = inventoryItemRepository.findByProductId(productId)
+                .orElseThrow(() -> new RuntimeException("Product not found in inventory: " + productId));
+        
+        if (!stockLedgerService.isEnabled()) {
+            item.setAvailableQuantity(item.getAvailableQuantity() + quantity);
+            inventoryItemRepository.save(item);
+        }
+        
+        stockLedgerService.append(List.of(StockMovement.builder()
+                .productId(productId)
+                .type(StockMovement.MovementType.RESTOCK)
+                .quantity(quantity)
+                .build()));
     }
 }
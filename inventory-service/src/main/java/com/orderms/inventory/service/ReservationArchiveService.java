@@ -0,0 +1,96 @@
+package com.orderms.inventory.service;
+
+import com.orderms.common.service.PartitionedArchive;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Moves reservations that have not changed for {@code inventory.archive.retention-days}
+ * into {@code inventory_reservations_archive}, range-partitioned by month of creation.
+ * A reservation still RESERVED by then belongs to a completed order; the retention has
+ * to outlast any release the order saga can still send, since releases only look at
+ * the hot table.
+ */
+@Service
+@Slf4j
+public class ReservationArchiveService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PartitionedArchive archive;
+    private final boolean enabled;
+    private final long retentionDays;
+    private final int batchSize;
+
+    public ReservationArchiveService(JdbcTemplate jdbcTemplate,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${inventory.archive.enabled:true}") boolean enabled,
+                                 @Value("${inventory.archive.retention-days:30}") long retentionDays,
+                                 @Value("${inventory.archive.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.archive = new PartitionedArchive(jdbcTemplate, "inventory_reservations", "inventory_reservations_archive");
+        this.enabled = enabled;
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.archive.interval-ms:3600000}",
+               initialDelayString = "${inventory.archive.initial-delay-ms:300000}")
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+        if (!Boolean.TRUE.equals(transactionTemplate.execute(status -> prepare()))) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int total = 0;
+        int moved;
+        do {
+            moved = transactionTemplate.execute(status -> archiveBatch(LocalDateTime.now().minusDays(retentionDays)));
+            total += moved;
+        } while (moved == batchSize);
+        if (total > 0) {
+            log.info("Archived {} reservations older than {} days in {} ms",
+                    total, retentionDays, System.currentTimeMillis() - start);
+        }
+    }
+
+    // Schema work for the run, done once under the archiver lock; false if another instance is archiving
+    private boolean prepare() {
+        if (!archive.tryLock()) {
+            return false;
+        }
+        archive.initialize();
+        archive.createIndex("order_id");
+        archive.createIndex("reservation_id");
+        return true;
+    }
+
+    private int archiveBatch(LocalDateTime cutoff) {
+        if (!archive.tryLock()) {
+            return 0;
+        }
+        // Rows without created_at have no partition to go to
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM inventory_reservations WHERE updated_at < ? " +
+                "AND created_at IS NOT NULL ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED", Long.class, cutoff, batchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Long[] batch = ids.toArray(Long[]::new);
+        archive.ensurePartitions(batch);
+        jdbcTemplate.update("INSERT INTO inventory_reservations_archive (" + archive.columnList("") + ") " +
+                "SELECT " + archive.columnList("r") + " FROM inventory_reservations r WHERE r.id = ANY(?)", (Object) batch);
+        jdbcTemplate.update("DELETE FROM inventory_reservations WHERE id = ANY(?)", (Object) batch);
+        return ids.size();
+    }
+}
@@ -0,0 +1,340 @@
+package com.orderms.inventory.service;
+
+import com.orderms.inventory.model.InventoryItem;
+import com.orderms.inventory.model.StockMovement;
+import com.orderms.inventory.model.StockSnapshot;
+import com.orderms.inventory.repository.InventoryItemRepository;
+import com.orderms.inventory.repository.StockMovementRepository;
+import com.orderms.inventory.repository.StockSnapshotRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only stock ledger. Every reserve, release and restock is written as a
+ * {@link StockMovement}; current stock is the latest {@link StockSnapshot} plus the
+ * movements recorded after it.
+ *
+ * When {@code inventory.ledger.enabled} is true the ledger is the source of truth:
+ * reservations are checked against an in-memory view rebuilt from snapshot + tail on
+ * startup, and the {@code inventory_items} counters are refreshed by the snapshot job
+ * instead of being updated on every order.
+ *
+ * The view only sees this instance's appends, and the snapshot cut relies on movement
+ * ids growing in the order they are written, which holds for one process but not for
+ * several drawing blocks from the sequence. Ledger mode therefore holds a session-level
+ * advisory lock for as long as the instance runs and refuses to start without it.
+ * Reservations are refused if the lock is lost. The view is built before the listener
+ * containers start, so no reservation sees it half-built.
+ *
+ * When disabled, movements are still recorded and the snapshot job reports drift
+ * between the ledger and the item rows.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockLedgerService implements SmartInitializingSingleton {
+
+    private static final String WRITER_LOCK = "SELECT pg_try_advisory_lock(hashtext('inventory-stock-ledger'))";
+
+    private final StockMovementRepository movementRepository;
+    private final StockSnapshotRepository snapshotRepository;
+    private final InventoryItemRepository inventoryItemRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final DataSource dataSource;
+
+    private final Map<String, StockLevel> view = new ConcurrentHashMap<>();
+
+    // Held open for the life of the instance in ledger mode; the advisory lock lives on it
+    private volatile Connection writerLock;
+
+    @Value("${inventory.ledger.enabled:false}")
+    private boolean enabled;
+
+    // Movements younger than this are left for the next snapshot so that
+    // transactions still in flight cannot commit behind the snapshot cut
+    @Value("${inventory.ledger.snapshot-lag-seconds:10}")
+    private long snapshotLagSeconds;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isTracked(String productId) {
+        return view.containsKey(productId);
+    }
+
+    // Runs once every singleton exists, before the listener containers are started
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (enabled && !acquireWriterLock()) {
+            throw new IllegalStateException(
+                    "Stock ledger mode needs a single inventory writer, but another instance holds the ledger lock");
+        }
+        transactionTemplate.executeWithoutResult(status -> rebuildView());
+    }
+
+    @PreDestroy
+    public void releaseWriterLock() {
+        Connection connection = writerLock;
+        writerLock = null;
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.warn("Could not close the stock ledger lock connection: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void rebuildView() {
+        long start = System.currentTimeMillis();
+
+        for (InventoryItem item : inventoryItemRepository.findAll()) {
+            StockSnapshot snapshot = snapshotRepository.findFirstByProductIdOrderByIdDesc(item.getProductId())
+                    .orElseGet(() -> bootstrapSnapshot(item));
+            view.put(item.getProductId(), replay(snapshot,
+                    movementRepository.sumByTypeSince(item.getProductId(), snapshot.getLastMovementId())));
+        }
+
+        log.info("Stock view rebuilt for {} products in {} ms", view.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Reserves all movements against the in-memory view, or none of them. The
+     * reservation is undone if the surrounding transaction does not commit.
+     */
+    public void reserveAll(List<StockMovement> reservations) {
+        if (writerLock == null) {
+            throw new RuntimeException("Stock ledger writer lock is not held, refusing to reserve");
+        }
+        List<StockMovement> acquired = new ArrayList<>();
+
+        for (StockMovement movement : reservations) {
+            StockLevel level = view.get(movement.getProductId());
+            if (level == null) {
+                undo(acquired);
+                throw new RuntimeException("Product not found in inventory: " + movement.getProductId());
+            }
+            if (!level.tryReserve(movement.getQuantity())) {
+                undo(acquired);
+                throw new RuntimeException(
+                    String.format("Insufficient stock for product: %s. Available: %d, Requested: %d",
+                        movement.getProductId(), level.getAvailable(), movement.getQuantity()));
+            }
+            acquired.add(movement);
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        undo(acquired);
+                    }
+                }
+            });
+        }
+
+        movementRepository.saveAll(reservations);
+    }
+
+    /**
+     * Records release or restock movements in one batched write and applies them
+     * to the in-memory view once the transaction commits.
+     */
+    public void append(List<StockMovement> movements) {
+        if (movements.isEmpty()) {
+            return;
+        }
+        movementRepository.saveAll(movements);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    movements.forEach(StockLedgerService.this::applyToView);
+                }
+            });
+        } else {
+            movements.forEach(this::applyToView);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public StockLevel currentStock(String productId) {
+        StockSnapshot snapshot = snapshotRepository.findFirstByProductIdOrderByIdDesc(productId)
+                .orElseThrow(() -> new RuntimeException("No ledger snapshot for product: " + productId));
+        return replay(snapshot, movementRepository.sumByTypeSince(productId, snapshot.getLastMovementId()));
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.ledger.snapshot-interval-ms:60000}")
+    @Transactional
+    public void snapshot() {
+        if (enabled) {
+            checkWriterLock();
+        }
+        Long cut = movementRepository.findMaxIdCreatedBefore(LocalDateTime.now().minusSeconds(snapshotLagSeconds));
+
+        for (InventoryItem item : inventoryItemRepository.findAll()) {
+            StockSnapshot previous = snapshotRepository.findFirstByProductIdOrderByIdDesc(item.getProductId())
+                    .orElse(null);
+            if (previous == null || previous.getLastMovementId() >= cut) {
+                continue;
+            }
+
+            StockLevel level = replay(previous,
+                    movementRepository.sumByType(item.getProductId(), previous.getLastMovementId(), cut));
+
+            StockSnapshot snapshot = snapshotRepository.save(StockSnapshot.builder()
+                    .productId(item.getProductId())
+                    .availableQuantity(level.getAvailable())
+                    .reservedQuantity(level.getReserved())
+                    .lastMovementId(cut)
+                    .build());
+
+            // Keep the new snapshot and the one before it, drop anything older
+            snapshotRepository.deleteOlderThan(item.getProductId(), previous.getId());
+
+            if (enabled) {
+                item.setAvailableQuantity(level.getAvailable());
+                item.setReservedQuantity(level.getReserved());
+                inventoryItemRepository.save(item);
+            } else {
+                StockLevel current = replay(snapshot, movementRepository.sumByTypeSince(item.getProductId(), cut));
+                if (item.getAvailableQuantity() != current.getAvailable()
+                        || item.getReservedQuantity() != current.getReserved()) {
+                    log.warn("Stock drift for product {}: row available={} reserved={}, ledger available={} reserved={}",
+                            item.getProductId(), item.getAvailableQuantity(), item.getReservedQuantity(),
+                            current.getAvailable(), current.getReserved());
+                }
+            }
+        }
+    }
+
+    private boolean acquireWriterLock() {
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery(WRITER_LOCK)) {
+                if (result.next() && result.getBoolean(1)) {
+                    writerLock = connection;
+                    return true;
+                }
+            }
+            connection.close();
+            return false;
+        } catch (SQLException e) {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException ignored) {
+                    // Already failing
+                }
+            }
+            throw new IllegalStateException("Could not take the stock ledger lock", e);
+        }
+    }
+
+    // A dropped connection releases the lock; take it again or stop reserving
+    private void checkWriterLock() {
+        Connection connection = writerLock;
+        try {
+            if (connection != null && connection.isValid(5)) {
+                return;
+            }
+        } catch (SQLException e) {
+            log.warn("Could not check the stock ledger lock connection: {}", e.getMessage());
+        }
+        releaseWriterLock();
+        if (!acquireWriterLock()) {
+            log.error("Stock ledger lock was lost and is now held by another instance; reservations are refused");
+        } else {
+            log.warn("Stock ledger lock connection was lost and the lock has been taken again");
+        }
+    }
+
+    private StockSnapshot bootstrapSnapshot(InventoryItem item) {
+        // Products that predate the ledger start from their current row values
+        Long cut = movementRepository.findMaxIdCreatedBefore(LocalDateTime.now().plusSeconds(1));
+        return snapshotRepository.save(StockSnapshot.builder()
+                .productId(item.getProductId())
+                .availableQuantity(item.getAvailableQuantity())
+                .reservedQuantity(item.getReservedQuantity())
+                .lastMovementId(cut)
+                .build());
+    }
+
+    private StockLevel replay(StockSnapshot snapshot, List<Object[]> sumsByType) {
+        StockLevel level = new StockLevel(snapshot.getAvailableQuantity(), snapshot.getReservedQuantity());
+        for (Object[] row : sumsByType) {
+            StockMovement movement = StockMovement.builder()
+                    .type((StockMovement.MovementType) row[0])
+                    .quantity(((Number) row[1]).intValue())
+                    .build();
+            level.apply(movement.availableDelta(), movement.reservedDelta());
+        }
+        return level;
+    }
+
+    private void applyToView(StockMovement movement) {
+        view.computeIfAbsent(movement.getProductId(), id -> new StockLevel(0, 0))
+                .apply(movement.availableDelta(), movement.reservedDelta());
+    }
+
+    private void undo(List<StockMovement> reservations) {
+        reservations.forEach(movement -> view.get(movement.getProductId()).release(movement.getQuantity()));
+    }
+
+    public static class StockLevel {
+        private int available;
+        private int reserved;
+
+        public StockLevel(int available, int reserved) {
+            this.available = available;
+            this.reserved = reserved;
+        }
+
+        public synchronized int getAvailable() { return available; }
+        public synchronized int getReserved() { return reserved; }
+
+        synchronized boolean tryReserve(int quantity) {
+            if (available < quantity) {
+                return false;
+            }
+            available -= quantity;
+            reserved += quantity;
+            return true;
+        }
+
+        synchronized void release(int quantity) {
+            available += quantity;
+            reserved -= quantity;
+        }
+
+        synchronized void apply(int availableDelta, int reservedDelta) {
+            available += availableDelta;
+            reserved += reservedDelta;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+#!/bin/bash
+
+# Order Shard Migration Tool
+# Moves one logical order shard to another order database (see ShardMigrationTool).
+#
+#   ./migrate-order-shard.sh copy <shard> <source-db> <target-db>   # e.g. copy 3 postgres-order postgres-order-2
+#   ./migrate-order-shard.sh delete <shard> <source-db>
+#
+# Procedure: stop order-service, run "copy", set ORDER_SHARD_ASSIGNMENT so the shard
+# points at the target database, start order-service, then run "delete".
+
+set -e
+
+COMPOSE=${COMPOSE:-"docker-compose -f docker-compose.yml -f docker-compose.shards.yml"}
+DB_NAME=${DB_NAME:-orderdb}
+
+if [ "$1" == "copy" ] && [ $# -eq 4 ]; then
+    ARGS=(copy "$2" "jdbc:postgresql://$3:5432/${DB_NAME}" "jdbc:postgresql://$4:5432/${DB_NAME}")
+elif [ "$1" == "delete" ] && [ $# -eq 3 ]; then
+    ARGS=(delete "$2" "jdbc:postgresql://$3:5432/${DB_NAME}")
+else
+    echo "Usage: $0 copy <shard> <source-db> <target-db> | delete <shard> <source-db>"
+    exit 1
+fi
+
+# The shard must not take writes while it is copied
+if [ "$1" == "copy" ] && docker ps --format '{{.Names}}' | grep -qx order-service; then
+    echo "❌ Stop order-service first: ${COMPOSE} stop order-service"
+    exit 1
+fi
+
+echo "🔀 $1 order shard $2"
+${COMPOSE} run --rm --no-deps --entrypoint java order-service \
+    -cp app.jar -Dloader.main=com.orderms.order.tools.ShardMigrationTool \
+    org.springframework.boot.loader.launch.PropertiesLauncher "${ARGS[@]}"
+echo "✅ Done"
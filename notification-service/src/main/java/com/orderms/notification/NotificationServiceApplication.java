@@ -1,11 +1,24 @@
 package com.orderms.notification;
 
+import com.orderms.common.config.LoggingConfig;
+import com.orderms.common.config.TracingConfig;
+import com.orderms.common.config.VirtualThreadConfig;
+import com.orderms.common.controller.DlqReplayController;
+import com.orderms.common.kafka.AdaptiveConcurrencyController;
+import com.orderms.common.kafka.DlqReplayer;
+import com.orderms.common.kafka.PriorityLanes;
+import com.orderms.common.kafka.SagaTiming;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 import org.springframework.kafka.annotation.EnableKafka;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@Import({AdaptiveConcurrencyController.class, DlqReplayer.class, DlqReplayController.class, PriorityLanes.class, SagaTiming.class, TracingConfig.class,
+        LoggingConfig.class, VirtualThreadConfig.class})
 @EnableKafka
+@EnableScheduling
 public class NotificationServiceApplication {
     
     public static void main(String[] args) {
@@ -1,7 +1,12 @@
 package com.orderms.notification.config;
 
+import com.orderms.common.kafka.PriorityLanes;
+import com.orderms.common.kafka.SagaTiming;
+import com.orderms.notification.kafka.IdempotentConsumer;
 import com.orderms.notification.kafka.InventoryReservedEvent;
+import lombok.RequiredArgsConstructor;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -9,23 +14,48 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.CompositeBatchInterceptor;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 
 import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
+@RequiredArgsConstructor
 public class KafkaConsumerConfig {
 
+    private final IdempotentConsumer idempotentConsumer;
+    private final PriorityLanes priorityLanes;
+    private final SagaTiming sagaTiming;
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    @Value("${notification.dispatch.max-poll-records:100}")
+    private int maxPollRecords;
+
+    @Value("${saga.retry.attempts:4}")
+    private int retryAttempts;
+
+    @Value("${saga.retry.initial-delay-ms:1000}")
+    private long retryInitialDelayMs;
+
+    @Value("${saga.retry.multiplier:2.0}")
+    private double retryMultiplier;
+
     @Bean
     public ConsumerFactory<String, InventoryReservedEvent> inventoryReservedConsumerFactory() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, "notification-service-group");
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        // Never see events from aborted exactly-once transactions in inventory
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
         props.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
         props.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
         
@@ -36,9 +66,29 @@ public class KafkaConsumerConfig {
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, InventoryReservedEvent> inventoryReservedKafkaListenerContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, InventoryReservedEvent> inventoryReservedKafkaListenerContainerFactory(
+            KafkaTemplate<String, Object> kafkaTemplate) {
         ConcurrentKafkaListenerContainerFactory<String, InventoryReservedEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(inventoryReservedConsumerFactory());
+        // Whole polls are handed to the dispatcher and committed once delivered
+        factory.setBatchListener(true);
+        // Duplicates are filtered first, then the batch waits for a weighted-fair slot of its lane
+        factory.setBatchInterceptor(new CompositeBatchInterceptor<>(idempotentConsumer.batchInterceptor(),
+                priorityLanes.batchInterceptor(), sagaTiming.batchInterceptor()));
+        factory.setCommonErrorHandler(deadLetterErrorHandler(kafkaTemplate));
         return factory;
     }
+
+    // Batch listeners cannot use retry topics: the failed record is retried with backoff,
+    // then parked on the DLT (any partition) so the rest of the batch is committed
+    private DefaultErrorHandler deadLetterErrorHandler(KafkaTemplate<String, Object> kafkaTemplate) {
+        DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(kafkaTemplate,
+                (record, ex) -> new TopicPartition(record.topic().replaceAll("-notification-retry-0$", "")
+                        + "-notification-dlt", -1));
+
+        ExponentialBackOffWithMaxRetries backOff = new ExponentialBackOffWithMaxRetries(retryAttempts - 1);
+        backOff.setInitialInterval(retryInitialDelayMs);
+        backOff.setMultiplier(retryMultiplier);
+        return new DefaultErrorHandler(recoverer, backOff);
+    }
 }
@@ -0,0 +1,94 @@
+package com.orderms.notification.kafka;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Skips records that were already delivered. Notification-service has no database,
+ * so processed messages are kept in a bounded in-memory map keyed by
+ * (topic, key, event id) and expire after the configured TTL; this covers
+ * redeliveries to the same instance, which is the common case after a failed commit.
+ * The listener marks each record once its confirmation is delivered.
+ */
+@Component
+@Slf4j
+public class IdempotentConsumer {
+
+    public static final String EVENT_ID_HEADER = "event-id";
+
+    private final Map<String, Long> processed;
+    private final long ttlMillis;
+
+    public IdempotentConsumer(@Value("${idempotency.cache-size:100000}") int cacheSize,
+                              @Value("${idempotency.ttl-hours:72}") long ttlHours) {
+        this.processed = Collections.synchronizedMap(new LinkedHashMap<>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        this.ttlMillis = ttlHours * 3_600_000L;
+    }
+
+    public <V> BatchInterceptor<String, V> batchInterceptor() {
+        return new BatchInterceptor<>() {
+            @Override
+            public ConsumerRecords<String, V> intercept(ConsumerRecords<String, V> records, Consumer<String, V> consumer) {
+                Map<TopicPartition, List<ConsumerRecord<String, V>>> fresh = new HashMap<>();
+                int duplicates = 0;
+                for (TopicPartition partition : records.partitions()) {
+                    for (ConsumerRecord<String, V> record : records.records(partition)) {
+                        if (isDuplicate(record)) {
+                            duplicates++;
+                        } else {
+                            fresh.computeIfAbsent(partition, p -> new ArrayList<>()).add(record);
+                        }
+                    }
+                }
+                if (duplicates > 0) {
+                    log.info("Skipping {} duplicate records", duplicates);
+                }
+                return fresh.isEmpty() ? null : new ConsumerRecords<>(fresh);
+            }
+        };
+    }
+
+    public boolean isDuplicate(ConsumerRecord<String, ?> record) {
+        Long processedAt = processed.get(messageId(record));
+        return processedAt != null && System.currentTimeMillis() - processedAt < ttlMillis;
+    }
+
+    public void markProcessed(ConsumerRecord<String, ?> record) {
+        processed.put(messageId(record), System.currentTimeMillis());
+    }
+
+    // Records on the replay topic are identified by the topic they were first consumed from
+    private static String messageId(ConsumerRecord<String, ?> record) {
+        String topic = firstHeader(record, KafkaHeaders.DLT_ORIGINAL_TOPIC);
+        String eventId = firstHeader(record, EVENT_ID_HEADER);
+        return (topic != null ? topic : record.topic()) + "|" + record.key() + "|"
+                + (eventId != null ? eventId : record.partition() + "@" + record.offset());
+    }
+
+    private static String firstHeader(ConsumerRecord<String, ?> record, String name) {
+        Iterator<Header> headers = record.headers().headers(name).iterator();
+        return headers.hasNext() ? new String(headers.next().value(), StandardCharsets.UTF_8) : null;
+    }
+}
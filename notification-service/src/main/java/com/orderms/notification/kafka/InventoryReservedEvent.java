@@ -12,4 +12,5 @@ import lombok.NoArgsConstructor;
 public class InventoryReservedEvent {
     private String orderId;
     private String reservationId;
+    private String priority;
 }
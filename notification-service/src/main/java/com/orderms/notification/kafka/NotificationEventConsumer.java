@@ -1,12 +1,20 @@
 package com.orderms.notification.kafka;
 
+import com.orderms.common.kafka.SagaTiming;
 import com.orderms.notification.service.NotificationService;
 import io.micrometer.observation.annotation.Observed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 @Component
 @RequiredArgsConstructor
 @Slf4j
@@ -14,14 +22,47 @@ import org.springframework.stereotype.Component;
 public class NotificationEventConsumer {
     
     private final NotificationService notificationService;
+    private final IdempotentConsumer idempotentConsumer;
     
     @KafkaListener(
-        topics = "inventory-reserved", 
+        topics = {"inventory-reserved", "order-confirmed",
+                  "inventory-reserved-notification-retry-0", "order-confirmed-notification-retry-0"}, 
+        groupId = "notification-service-group",
+        containerFactory = "inventoryReservedKafkaListenerContainerFactory"
+    )
+    @KafkaListener(
+        topics = {"inventory-reserved-express", "order-confirmed-express",
+                  "inventory-reserved-express-notification-retry-0", "order-confirmed-express-notification-retry-0"}, 
         groupId = "notification-service-group",
         containerFactory = "inventoryReservedKafkaListenerContainerFactory"
     )
-    public void handleInventoryReserved(InventoryReservedEvent event) {
-        log.info("Received InventoryReservedEvent for order: {}", event.getOrderId());
-        notificationService.sendOrderConfirmation(event);
+    public void handleInventoryReserved(List<ConsumerRecord<String, InventoryReservedEvent>> records) {
+        log.debug("Received {} InventoryReservedEvents", records.size());
+        
+        // Each record is marked processed as soon as its own confirmation is delivered, so when
+        // the batch fails and is redelivered, the records that did go out are skipped
+        List<CompletableFuture<Void>> deliveries = new ArrayList<>(records.size());
+        records.forEach(record -> deliveries.add(
+                notificationService.sendOrderConfirmation(record.value(), SagaTiming.originOf(record))
+                        .thenRun(() -> idempotentConsumer.markProcessed(record))));
+        
+        // Every delivery settles before the batch fails; offsets before the first failed
+        // record are committed and the rest redelivered
+        int failed = -1;
+        Throwable cause = null;
+        for (int i = 0; i < deliveries.size(); i++) {
+            try {
+                deliveries.get(i).join();
+            } catch (CompletionException e) {
+                if (failed < 0) {
+                    failed = i;
+                    cause = e.getCause();
+                }
+            }
+        }
+        if (failed >= 0) {
+            throw new BatchListenerFailedException(
+                    "Failed to send notification for order: " + records.get(failed).value().getOrderId(), cause, failed);
+        }
     }
 }
@@ -0,0 +1,16 @@
+package com.orderms.notification.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class EmailMessage {
+    private String orderId;
+    private String subject;
+    private String body;
+}
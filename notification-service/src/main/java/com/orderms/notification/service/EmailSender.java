@@ -0,0 +1,14 @@
+package com.orderms.notification.service;
+
+import com.orderms.notification.model.EmailMessage;
+
+import java.util.List;
+
+/**
+ * Outbound email provider. Implementations receive whole batches so providers
+ * with a bulk API (SendGrid, SES) can deliver them in one call.
+ */
+public interface EmailSender {
+    
+    void sendBatch(List<EmailMessage> messages) throws Exception;
+}
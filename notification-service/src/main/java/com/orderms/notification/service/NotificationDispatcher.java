@@ -0,0 +1,124 @@
+package com.orderms.notification.service;
+
+import com.orderms.notification.model.EmailMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decouples email delivery from the Kafka listener thread. Messages go into a
+ * bounded queue (a full queue blocks the listener, which is our backpressure) and
+ * a pool of sender threads drains it in batches under a shared rate limit.
+ * Express orders have their own queue, which senders drain before the standard one.
+ */
+@Component
+@Slf4j
+public class NotificationDispatcher {
+
+    private final EmailSender emailSender;
+    private final BlockingQueue<PendingEmail> queue;
+    private final BlockingQueue<PendingEmail> expressQueue;
+    private final RateLimiter rateLimiter;
+    private final int senderCount;
+    private final int batchSize;
+    private final ExecutorService senders;
+
+    private volatile boolean running = true;
+
+    public NotificationDispatcher(EmailSender emailSender,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${notification.dispatch.queue-capacity:1000}") int queueCapacity,
+                                  @Value("${notification.dispatch.senders:4}") int senderCount,
+                                  @Value("${notification.dispatch.batch-size:20}") int batchSize,
+                                  @Value("${notification.dispatch.rate-per-second:200}") double ratePerSecond) {
+        this.emailSender = emailSender;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.expressQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.rateLimiter = new RateLimiter(ratePerSecond);
+        this.senderCount = senderCount;
+        this.batchSize = batchSize;
+        this.senders = Executors.newFixedThreadPool(senderCount, new CustomizableThreadFactory("notification-sender-"));
+
+        meterRegistry.gauge("notification.dispatch.queue.size", queue, BlockingQueue::size);
+        meterRegistry.gauge("notification.dispatch.express.queue.size", expressQueue, BlockingQueue::size);
+    }
+
+    @PostConstruct
+    public void start() {
+        for (int i = 0; i < senderCount; i++) {
+            senders.submit(this::drainLoop);
+        }
+        log.info("Notification dispatcher started with {} senders (batch size {})", senderCount, batchSize);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        senders.shutdown();
+        senders.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queues a message for delivery, blocking while the queue is full. The returned
+     * future completes once the provider has accepted the message.
+     */
+    public CompletableFuture<Void> dispatch(EmailMessage message, boolean express) throws InterruptedException {
+        PendingEmail pending = new PendingEmail(message, new CompletableFuture<>());
+        (express ? expressQueue : queue).put(pending);
+        return pending.delivered();
+    }
+
+    private void drainLoop() {
+        List<PendingEmail> batch = new ArrayList<>(batchSize);
+
+        while (running || !queue.isEmpty() || !expressQueue.isEmpty()) {
+            try {
+                PendingEmail first = expressQueue.poll();
+                if (first == null) {
+                    first = queue.poll(20, TimeUnit.MILLISECONDS);
+                }
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                expressQueue.drainTo(batch, batchSize - batch.size());
+                queue.drainTo(batch, batchSize - batch.size());
+
+                rateLimiter.acquire(batch.size());
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(pending -> pending.delivered().completeExceptionally(e));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(List<PendingEmail> batch) {
+        try {
+            emailSender.sendBatch(batch.stream().map(PendingEmail::message).toList());
+            batch.forEach(pending -> pending.delivered().complete(null));
+        } catch (Exception e) {
+            log.error("Failed to send batch of {} notifications", batch.size(), e);
+            batch.forEach(pending -> pending.delivered().completeExceptionally(e));
+        }
+    }
+
+    private record PendingEmail(EmailMessage message, CompletableFuture<Void> delivered) {
+    }
+}
@@ -1,14 +1,19 @@
 package com.orderms.notification.service;
 
+import com.orderms.common.config.HotPathLogSampler;
+import com.orderms.common.kafka.SagaTiming;
 import com.orderms.notification.kafka.InventoryReservedEvent;
 import com.orderms.notification.kafka.NotificationSentEvent;
+import com.orderms.notification.model.EmailMessage;
 import io.micrometer.observation.annotation.Observed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @RequiredArgsConstructor
@@ -17,50 +22,48 @@ import java.util.UUID;
 public class NotificationService {
     
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final NotificationDispatcher dispatcher;
     
-    public void sendOrderConfirmation(InventoryReservedEvent event) {
-        log.info("Sending order confirmation notification for order: {}", event.getOrderId());
+    /**
+     * Hands the confirmation to the dispatcher. The future completes once the email
+     * is delivered and the NotificationSentEvent, carrying the saga's {@code origin},
+     * has been acknowledged by Kafka.
+     */
+    public CompletableFuture<Void> sendOrderConfirmation(InventoryReservedEvent event, Long origin) {
+        log.debug("Sending order confirmation notification for order: {}", event.getOrderId());
+        
+        EmailMessage message = EmailMessage.builder()
+                .orderId(event.getOrderId())
+                .subject("Your Order Confirmation - " + event.getOrderId())
+                .body("Thank you for your order! Your items have been reserved.")
+                .build();
         
         try {
-            // Simulate email sending
-            Thread.sleep(100);
-            
-            // In a real implementation, this would:
-            // 1. Fetch customer email from order service or database
-            // 2. Compose email with order details
-            // 3. Send via email service (SendGrid, AWS SES, etc.)
-            // 4. Log the notification
-            
-            log.info("📧 EMAIL SENT: Order {} confirmed and ready for processing", event.getOrderId());
-            log.info("   Subject: Your Order Confirmation - {}", event.getOrderId());
-            log.info("   Body: Thank you for your order! Your items have been reserved.");
-            
-            // Publish notification sent event
-            String notificationId = "NOTIF-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
-            
-            NotificationSentEvent sentEvent = NotificationSentEvent.builder()
-                    .orderId(event.getOrderId())
-                    .notificationId(notificationId)
-                    .build();
-            
-            kafkaTemplate.send("notification-sent", event.getOrderId(), sentEvent);
-            log.info("Notification sent successfully for order: {}", event.getOrderId());
-            
-        } catch (Exception e) {
-            log.error("Failed to send notification for order: {}", event.getOrderId(), e);
-            // In production, you might want to:
-            // - Retry sending
-            // - Save to dead letter queue
-            // - Alert monitoring system
+            return dispatcher.dispatch(message, "EXPRESS".equalsIgnoreCase(event.getPriority()))
+                    .thenCompose(delivered -> publishNotificationSent(event.getOrderId(), origin));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
         }
     }
     
-    public void sendOrderCancellation(String orderId, String reason) {
-        log.info("Sending order cancellation notification for order: {}", orderId);
+    private CompletableFuture<Void> publishNotificationSent(String orderId, Long origin) {
+        String notificationId = "NOTIF-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        
+        NotificationSentEvent sentEvent = NotificationSentEvent.builder()
+                .orderId(orderId)
+                .notificationId(notificationId)
+                .build();
         
-        log.info("📧 EMAIL SENT: Order {} has been cancelled", orderId);
-        log.info("   Subject: Order Cancellation - {}", orderId);
-        log.info("   Body: Your order has been cancelled. Reason: {}", reason);
-        log.info("   Any charges have been refunded to your account.");
+        ProducerRecord<String, Object> record = new ProducerRecord<>("notification-sent", orderId, sentEvent);
+        SagaTiming.stampOrigin(record, origin);
+        return kafkaTemplate.send(record)
+                .thenAccept(result -> log.atInfo().addMarker(HotPathLogSampler.HOT_PATH).addKeyValue("orderId", orderId)
+                        .addKeyValue("notificationId", notificationId).log("Notification sent"));
+    }
+    
+    public void sendOrderCancellation(String orderId, String reason) {
+        log.atInfo().addMarker(HotPathLogSampler.HOT_PATH).addKeyValue("orderId", orderId).addKeyValue("reason", reason)
+                .log("Cancellation email sent");
     }
 }
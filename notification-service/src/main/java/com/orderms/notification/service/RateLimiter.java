@@ -0,0 +1,37 @@
+package com.orderms.notification.service;
+
+/**
+ * Token bucket shared by the sender threads. Holds at most one second worth of
+ * permits so a quiet period cannot turn into a burst above the provider limit.
+ */
+public class RateLimiter {
+    
+    private final double permitsPerSecond;
+    private double availablePermits;
+    private long lastRefillNanos;
+    
+    public RateLimiter(double permitsPerSecond) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.availablePermits = permitsPerSecond;
+        this.lastRefillNanos = System.nanoTime();
+    }
+    
+    public void acquire(int permits) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            availablePermits -= permits;
+            waitNanos = availablePermits >= 0 ? 0 : (long) (-availablePermits / permitsPerSecond * 1_000_000_000L);
+        }
+        if (waitNanos > 0) {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+    
+    private void refill() {
+        long now = System.nanoTime();
+        availablePermits = Math.min(permitsPerSecond,
+                availablePermits + (now - lastRefillNanos) / 1_000_000_000.0 * permitsPerSecond);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,28 @@
+package com.orderms.notification.service;
+
+import com.orderms.common.config.HotPathLogSampler;
+import com.orderms.notification.model.EmailMessage;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@Slf4j
+public class SimulatedEmailSender implements EmailSender {
+    
+    // Simulated provider round trip, paid once per batch
+    @Value("${notification.sender.latency-ms:100}")
+    private long latencyMs;
+    
+    @Override
+    public void sendBatch(List<EmailMessage> messages) throws InterruptedException {
+        Thread.sleep(latencyMs);
+        
+        for (EmailMessage message : messages) {
+            log.atInfo().addMarker(HotPathLogSampler.HOT_PATH).addKeyValue("orderId", message.getOrderId())
+                    .addKeyValue("subject", message.getSubject()).log("Confirmation email sent");
+        }
+    }
+}
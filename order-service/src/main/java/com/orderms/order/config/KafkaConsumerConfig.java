@@ -1,6 +1,12 @@
 package com.orderms.order.config;
 
+import com.orderms.common.config.SqlProfiler;
+import com.orderms.common.kafka.IdempotentConsumer;
+import com.orderms.common.kafka.PriorityLanes;
+import com.orderms.common.kafka.SagaTiming;
 import com.orderms.order.kafka.*;
+import com.orderms.order.service.OrderShardRouter;
+import lombok.RequiredArgsConstructor;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,22 +15,36 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.CompositeRecordInterceptor;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 
 import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
+@RequiredArgsConstructor
 public class KafkaConsumerConfig {
 
+    private final IdempotentConsumer idempotentConsumer;
+    private final PriorityLanes priorityLanes;
+    private final OrderShardRouter orderShardRouter;
+    private final SagaTiming sagaTiming;
+    private final SqlProfiler sqlProfiler;
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    // Continues the trace (and its sampling decision) carried in the record's headers
+    @Value("${spring.kafka.listener.observation-enabled:false}")
+    private boolean observationEnabled;
+
     private Map<String, Object> baseProps() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, "order-service-group");
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        // Never see events from aborted transactions (exactly-once mode, Kafka Streams saga engine)
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
         props.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
         props.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
         return props;
@@ -40,9 +60,7 @@ public class KafkaConsumerConfig {
 
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, PaymentCompletedEvent> paymentCompletedKafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, PaymentCompletedEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(paymentCompletedConsumerFactory());
-        return factory;
+        return laneListenerContainerFactory(paymentCompletedConsumerFactory());
     }
 
     @Bean
@@ -55,9 +73,7 @@ public class KafkaConsumerConfig {
 
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, PaymentFailedEvent> paymentFailedKafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, PaymentFailedEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(paymentFailedConsumerFactory());
-        return factory;
+        return listenerContainerFactory(paymentFailedConsumerFactory());
     }
 
     @Bean
@@ -70,9 +86,7 @@ public class KafkaConsumerConfig {
 
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, InventoryReservedEvent> inventoryReservedKafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, InventoryReservedEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(inventoryReservedConsumerFactory());
-        return factory;
+        return laneListenerContainerFactory(inventoryReservedConsumerFactory());
     }
 
     @Bean
@@ -85,9 +99,7 @@ public class KafkaConsumerConfig {
 
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, InventoryFailedEvent> inventoryFailedKafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, InventoryFailedEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(inventoryFailedConsumerFactory());
-        return factory;
+        return listenerContainerFactory(inventoryFailedConsumerFactory());
     }
 
     @Bean
@@ -100,8 +112,60 @@ public class KafkaConsumerConfig {
 
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, NotificationSentEvent> notificationSentKafkaListenerContainerFactory() {
-        ConcurrentKafkaListenerContainerFactory<String, NotificationSentEvent> factory = new ConcurrentKafkaListenerContainerFactory<>();
-        factory.setConsumerFactory(notificationSentConsumerFactory());
+        return listenerContainerFactory(notificationSentConsumerFactory());
+    }
+
+    // Status transitions for the read model; a redelivered transition is not appended to the history again
+    @Bean
+    public ConsumerFactory<String, OrderStatusChangedEvent> orderStatusChangedConsumerFactory() {
+        return new DefaultKafkaConsumerFactory<>(
+                baseProps(),
+                new StringDeserializer(),
+                new JsonDeserializer<>(OrderStatusChangedEvent.class, false));
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, OrderStatusChangedEvent> orderStatusChangedKafkaListenerContainerFactory() {
+        return listenerContainerFactory(orderStatusChangedConsumerFactory());
+    }
+
+    // Snapshots from the Kafka Streams saga engine; the projection upsert is idempotent
+    @Bean
+    public ConsumerFactory<String, SagaState> sagaStateConsumerFactory() {
+        return new DefaultKafkaConsumerFactory<>(
+                baseProps(),
+                new StringDeserializer(),
+                new JsonDeserializer<>(SagaState.class, false));
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, SagaState> sagaStateKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, SagaState> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(sagaStateConsumerFactory());
+        factory.getContainerProperties().setObservationEnabled(observationEnabled);
+        factory.setRecordInterceptor(new CompositeRecordInterceptor<>(
+                orderShardRouter.recordInterceptor(), sqlProfiler.recordInterceptor()));
+        return factory;
+    }
+
+    private <V> ConcurrentKafkaListenerContainerFactory<String, V> listenerContainerFactory(ConsumerFactory<String, V> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<String, V> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.getContainerProperties().setObservationEnabled(observationEnabled);
+        // Routed to the order's shard before the duplicate check reads processed_messages, whose
+        // SQL counts towards the record; stage timing comes last so it only covers records that reach the listener
+        factory.setRecordInterceptor(new CompositeRecordInterceptor<>(orderShardRouter.recordInterceptor(),
+                sqlProfiler.recordInterceptor(), idempotentConsumer.recordInterceptor(), sagaTiming.recordInterceptor()));
+        factory.getContainerProperties().setConsumerRebalanceListener(idempotentConsumer);
+        return factory;
+    }
+
+    // Listeners of the laned topics take a weighted-fair processing slot after the duplicate check
+    private <V> ConcurrentKafkaListenerContainerFactory<String, V> laneListenerContainerFactory(ConsumerFactory<String, V> consumerFactory) {
+        ConcurrentKafkaListenerContainerFactory<String, V> factory = listenerContainerFactory(consumerFactory);
+        factory.setRecordInterceptor(new CompositeRecordInterceptor<>(orderShardRouter.recordInterceptor(),
+                sqlProfiler.recordInterceptor(), idempotentConsumer.recordInterceptor(), priorityLanes.recordInterceptor(),
+                sagaTiming.recordInterceptor()));
         return factory;
     }
 }
@@ -0,0 +1,135 @@
+package com.orderms.order.config;
+
+import com.orderms.common.kafka.PriorityLanes;
+import com.orderms.order.kafka.*;
+import com.orderms.order.service.SagaDeadlineService;
+import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.StreamsBuilder;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.kstream.Branched;
+import org.apache.kafka.streams.kstream.BranchedKStream;
+import org.apache.kafka.streams.kstream.Consumed;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.Produced;
+import org.apache.kafka.streams.processor.api.ProcessorSupplier;
+import org.apache.kafka.streams.state.Stores;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.annotation.EnableKafkaStreams;
+import org.springframework.kafka.annotation.KafkaStreamsDefaultConfiguration;
+import org.springframework.kafka.config.KafkaStreamsConfiguration;
+import org.springframework.kafka.support.serializer.JsonSerde;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kafka Streams saga engine ({@code orders.saga.engine=streams}). The saga topics are
+ * all keyed by order id, so they are merged without repartitioning into one
+ * {@link SagaStreamProcessor}, which keeps the saga state in a local, changelogged
+ * store. Exactly-once processing makes each state change, its commands and the
+ * consumed offsets commit together. Saga throughput then scales with the partitions
+ * of the saga topics, which must all have the same partition count.
+ */
+@Configuration
+@EnableKafkaStreams
+@ConditionalOnProperty(name = "orders.saga.engine", havingValue = "streams")
+public class KafkaStreamsConfig {
+
+    @Value("${spring.kafka.bootstrap-servers}")
+    private String bootstrapServers;
+
+    @Value("${orders.saga.streams.application-id:order-saga-engine}")
+    private String applicationId;
+
+    @Value("${orders.saga.streams.threads:2}")
+    private int threads;
+
+    @Value("${orders.saga.streams.standby-replicas:0}")
+    private int standbyReplicas;
+
+    @Value("${orders.saga.streams.state-dir:/tmp/order-saga-streams}")
+    private String stateDir;
+
+    @Value("${orders.saga.streams.commit-interval-ms:100}")
+    private long commitIntervalMs;
+
+    @Value("${orders.saga.streams.status-topic:order-saga-status}")
+    private String statusTopic;
+
+    @Value("${orders.saga.streams.punctuate-interval-ms:1000}")
+    private long punctuateIntervalMs;
+
+    @Value("${orders.saga.streams.retention-minutes:60}")
+    private long retentionMinutes;
+
+    @Value("${orders.saga.deadline.notification-max-attempts:3}")
+    private int notificationMaxAttempts;
+
+    @Bean(name = KafkaStreamsDefaultConfiguration.DEFAULT_STREAMS_CONFIG_BEAN_NAME)
+    public KafkaStreamsConfiguration kafkaStreamsConfiguration() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
+        props.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(StreamsConfig.PROCESSING_GUARANTEE_CONFIG, StreamsConfig.EXACTLY_ONCE_V2);
+        props.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, threads);
+        props.put(StreamsConfig.NUM_STANDBY_REPLICAS_CONFIG, standbyReplicas);
+        props.put(StreamsConfig.STATE_DIR_CONFIG, stateDir);
+        props.put(StreamsConfig.COMMIT_INTERVAL_MS_CONFIG, commitIntervalMs);
+        return new KafkaStreamsConfiguration(props);
+    }
+
+    @Bean
+    public KStream<String, SagaStreamProcessor.Output> sagaTopology(StreamsBuilder builder,
+                                                                    SagaDeadlineService sagaDeadlineService) {
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(SagaStreamProcessor.STATE_STORE),
+                Serdes.String(),
+                jsonSerde(SagaState.class)));
+        builder.addStateStore(Stores.keyValueStoreBuilder(
+                Stores.persistentKeyValueStore(SagaStreamProcessor.DEADLINE_STORE),
+                Serdes.String(),
+                Serdes.String()));
+
+        KStream<String, Object> events = events(builder, OrderCreatedEvent.class,
+                        "order-created", "order-created" + PriorityLanes.EXPRESS_SUFFIX)
+                .merge(events(builder, PaymentCompletedEvent.class,
+                        "payment-completed", "payment-completed" + PriorityLanes.EXPRESS_SUFFIX))
+                .merge(events(builder, PaymentFailedEvent.class, "payment-failed"))
+                .merge(events(builder, InventoryReservedEvent.class,
+                        "inventory-reserved", "inventory-reserved" + PriorityLanes.EXPRESS_SUFFIX, "inventory-held"))
+                .merge(events(builder, InventoryFailedEvent.class, "inventory-failed"))
+                .merge(events(builder, NotificationSentEvent.class, "notification-sent"));
+
+        ProcessorSupplier<String, Object, String, SagaStreamProcessor.Output> processor =
+                () -> new SagaStreamProcessor(sagaDeadlineService, statusTopic, notificationMaxAttempts,
+                        Duration.ofMillis(punctuateIntervalMs), Duration.ofMinutes(retentionMinutes));
+        KStream<String, SagaStreamProcessor.Output> outputs = events.process(processor,
+                SagaStreamProcessor.STATE_STORE, SagaStreamProcessor.DEADLINE_STORE);
+        // Outputs are written as the bare payload, the same JSON the KafkaTemplate sends
+        Produced<String, Object> produced = Produced.with(Serdes.String(), jsonSerde(Object.class));
+        BranchedKStream<String, SagaStreamProcessor.Output> byTopic = outputs.split();
+        for (String topic : SagaStreamProcessor.outputTopics(statusTopic)) {
+            byTopic.branch((orderId, output) -> output.topic().equals(topic),
+                    Branched.withConsumer(branch -> branch.mapValues(SagaStreamProcessor.Output::payload).to(topic, produced)));
+        }
+        byTopic.noDefaultBranch();
+        return outputs;
+    }
+
+    // Starts at the end of the topics: sagas begun under the JPA engine are not replayed
+    private <T> KStream<String, Object> events(StreamsBuilder builder, Class<T> type, String... topics) {
+        return builder.stream(List.of(topics), Consumed.with(Serdes.String(), jsonSerde(type))
+                        .withOffsetResetPolicy(Topology.AutoOffsetReset.LATEST))
+                .mapValues(event -> (Object) event);
+    }
+
+    private <T> JsonSerde<T> jsonSerde(Class<T> type) {
+        return new JsonSerde<>(type).noTypeInfo().ignoreTypeHeaders();
+    }
+}
@@ -0,0 +1,41 @@
+package com.orderms.order.config;
+
+import com.orderms.common.config.ReplicaRoutingDataSource;
+import com.orderms.order.service.ReadPositionService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Applies the client's {@link ReadPositionService#HEADER} to the read-only
+ * transactions of its request.
+ */
+@Component
+public class ReadPositionFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String position = request.getHeader(ReadPositionService.HEADER);
+        if (position == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        try {
+            ReplicaRoutingDataSource.requirePosition(Long.parseLong(position.trim()));
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid " + ReadPositionService.HEADER);
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.requirePosition(null);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.orderms.order.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+
+/**
+ * Order database with read replicas but without sharding ({@link ShardingConfig}
+ * attaches replicas to each shard database itself).
+ */
+@Configuration
+@ConditionalOnExpression("'${orders.sharding.enabled:false}' != 'true' && '${orders.replicas.urls:}' != ''")
+public class ReadReplicaConfig {
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties, ReadReplicas readReplicas, MeterRegistry meterRegistry) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        primary.setPoolName("order-db-0");
+        primary.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        return readReplicas.lazy(readReplicas.wrap(0, primary));
+    }
+}
@@ -0,0 +1,115 @@
+package com.orderms.order.config;
+
+import com.orderms.common.config.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Read replicas from {@code orders.replicas.urls}. A url may be prefixed with
+ * {@code <database>@} to attach it to one of the shard databases; otherwise it is a
+ * replica of database 0. The replicas share the credentials of {@code spring.datasource}.
+ */
+@Component
+public class ReadReplicas {
+
+    private final DataSourceProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<Integer, List<String>> urlsByDatabase = new TreeMap<>();
+    private final List<ReplicaRoutingDataSource> routers = new CopyOnWriteArrayList<>();
+    private final long maxLagMs;
+    private final int poolSize;
+
+    public ReadReplicas(DataSourceProperties properties,
+                        MeterRegistry meterRegistry,
+                        @Value("${orders.replicas.urls:}") List<String> urls,
+                        @Value("${orders.replicas.max-lag-ms:1000}") long maxLagMs,
+                        @Value("${orders.replicas.pool-size:10}") int poolSize) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.maxLagMs = maxLagMs;
+        this.poolSize = poolSize;
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            int at = url.indexOf('@');
+            int database = at > 0 ? Integer.parseInt(url.substring(0, at).trim()) : 0;
+            urlsByDatabase.computeIfAbsent(database, d -> new ArrayList<>()).add(url.substring(at + 1).trim());
+        }
+    }
+
+    public boolean enabled() {
+        return !urlsByDatabase.isEmpty();
+    }
+
+    /**
+     * Puts the replicas of {@code database} in front of its primary pool, or returns the
+     * pool unchanged if it has none.
+     */
+    public DataSource wrap(int database, DataSource primary) {
+        List<String> urls = urlsByDatabase.getOrDefault(database, List.of());
+        if (urls.isEmpty()) {
+            return primary;
+        }
+        List<HikariDataSource> pools = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource pool = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(urls.get(i))
+                    .build();
+            pool.setPoolName("order-db-" + database + "-replica-" + i);
+            pool.setMaximumPoolSize(poolSize);
+            pool.setReadOnly(true);
+            pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            pools.add(pool);
+        }
+        ReplicaRoutingDataSource router = new ReplicaRoutingDataSource(
+                "order-db-" + database, primary, pools, maxLagMs, meterRegistry);
+        router.afterPropertiesSet();
+        router.refreshLag();
+        routers.add(router);
+        return router;
+    }
+
+    /**
+     * Defers fetching the physical connection until the first statement, when the
+     * transaction's read-only flag is known to the routing.
+     */
+    public DataSource lazy(DataSource target) {
+        return new ClosingLazyConnectionDataSourceProxy(target);
+    }
+
+    @Scheduled(fixedDelayString = "${orders.replicas.check-interval-ms:500}")
+    public void refreshLag() {
+        routers.forEach(ReplicaRoutingDataSource::refreshLag);
+    }
+
+    static class ClosingLazyConnectionDataSourceProxy extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+        ClosingLazyConnectionDataSourceProxy(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public void close() {
+            if (getTargetDataSource() instanceof ShardRoutingDataSource shards) {
+                shards.close();
+            } else if (getTargetDataSource() instanceof ReplicaRoutingDataSource replicas) {
+                replicas.close();
+            }
+        }
+    }
+}
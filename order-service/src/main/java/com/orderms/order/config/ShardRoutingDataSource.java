@@ -0,0 +1,35 @@
+package com.orderms.order.config;
+
+import com.orderms.common.config.ReplicaRoutingDataSource;
+import com.orderms.order.service.OrderShardRouter;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Hands out connections from the pool of the database the current thread's order
+ * shard is assigned to.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private final OrderShardRouter orderShardRouter;
+
+    public ShardRoutingDataSource(OrderShardRouter orderShardRouter) {
+        this.orderShardRouter = orderShardRouter;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return orderShardRouter.currentDatabase();
+    }
+
+    @Override
+    public void close() {
+        getResolvedDataSources().values().forEach(dataSource -> {
+            if (dataSource instanceof HikariDataSource pool) {
+                pool.close();
+            } else if (dataSource instanceof ReplicaRoutingDataSource replicas) {
+                replicas.close();
+            }
+        });
+    }
+}
@@ -0,0 +1,62 @@
+package com.orderms.order.config;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.schema.TargetType;
+import org.hibernate.tool.schema.internal.ExceptionHandlerLoggedImpl;
+import org.hibernate.tool.schema.spi.ContributableMatcher;
+import org.hibernate.tool.schema.spi.SchemaManagementTool;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+import org.hibernate.tool.schema.spi.ScriptTargetOutput;
+import org.hibernate.tool.schema.spi.TargetDescriptor;
+
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * Keeps Hibernate's mapping metadata so {@code ddl-auto: update} can be applied to
+ * every order database, not only the one Hibernate bootstraps against.
+ */
+public class ShardSchemaIntegrator implements Integrator {
+
+    private static final TargetDescriptor DATABASE = new TargetDescriptor() {
+        @Override
+        public EnumSet<TargetType> getTargetTypes() {
+            return EnumSet.of(TargetType.DATABASE);
+        }
+
+        @Override
+        public ScriptTargetOutput getScriptTargetOutput() {
+            return null;
+        }
+    };
+
+    private volatile Metadata metadata;
+    private volatile SessionFactoryImplementor sessionFactory;
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext, SessionFactoryImplementor sessionFactory) {
+        this.metadata = metadata;
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    /**
+     * Updates the schema of the database the current thread is routed to.
+     */
+    public void updateSchema() {
+        ServiceRegistry registry = sessionFactory.getServiceRegistry();
+        Map<String, Object> settings = registry.getService(ConfigurationService.class).getSettings();
+        registry.getService(SchemaManagementTool.class).getSchemaMigrator(settings).doMigration(metadata,
+                SchemaManagementToolCoordinator.buildExecutionOptions(settings, ExceptionHandlerLoggedImpl.INSTANCE),
+                ContributableMatcher.ALL, DATABASE);
+    }
+}
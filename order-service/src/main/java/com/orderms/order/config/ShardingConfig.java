@@ -0,0 +1,96 @@
+package com.orderms.order.config;
+
+import com.orderms.common.config.ReplicaRoutingDataSource;
+import com.orderms.order.service.OrderShardRouter;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Order databases for {@code orders.sharding.enabled}: one Hikari pool per database in
+ * {@code orders.sharding.databases} (credentials from {@code spring.datasource}) behind
+ * a {@link ShardRoutingDataSource}. Hibernate bootstraps against shard 0's database;
+ * the others get the same schema update before the listeners start. Databases with
+ * read replicas in {@code orders.replicas.urls} get a {@link ReplicaRoutingDataSource}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "orders.sharding.enabled", havingValue = "true")
+@Slf4j
+public class ShardingConfig {
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties,
+                                 OrderShardRouter orderShardRouter,
+                                 ReadReplicas readReplicas,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${orders.sharding.databases}") List<String> urls,
+                                 @Value("${orders.sharding.pool-size:10}") int poolSize) {
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("orders.sharding.databases must list at least one JDBC url");
+        }
+        Map<Object, Object> pools = new HashMap<>();
+        for (int database = 0; database < urls.size(); database++) {
+            HikariDataSource pool = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(urls.get(database).trim())
+                    .build();
+            pool.setPoolName("order-db-" + database);
+            pool.setMaximumPoolSize(poolSize);
+            pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            pools.put(database, readReplicas.wrap(database, pool));
+        }
+        ShardRoutingDataSource dataSource = new ShardRoutingDataSource(orderShardRouter);
+        dataSource.setTargetDataSources(pools);
+        dataSource.setDefaultTargetDataSource(pools.get(orderShardRouter.databaseOf(0)));
+        if (!readReplicas.enabled()) {
+            return dataSource;
+        }
+        dataSource.afterPropertiesSet();
+        return readReplicas.lazy(dataSource);
+    }
+
+    @Bean
+    public ShardSchemaIntegrator shardSchemaIntegrator() {
+        return new ShardSchemaIntegrator();
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer shardSchemaIntegratorCustomizer(ShardSchemaIntegrator integrator) {
+        return properties -> properties.put("hibernate.integrator_provider",
+                (IntegratorProvider) () -> List.of(integrator));
+    }
+
+    @Bean
+    public SmartInitializingSingleton shardSchemaUpdate(ShardSchemaIntegrator integrator,
+                                                        OrderShardRouter orderShardRouter,
+                                                        @Value("${spring.jpa.hibernate.ddl-auto:none}") String ddlAuto) {
+        return () -> {
+            if (!"update".equals(ddlAuto)) {
+                return;
+            }
+            int bootstrapped = orderShardRouter.databaseOf(0);
+            orderShardRouter.forEachDatabase(database -> {
+                if (database != bootstrapped) {
+                    log.info("Updating schema of order database {}", database);
+                    integrator.updateSchema();
+                }
+            });
+        };
+    }
+}
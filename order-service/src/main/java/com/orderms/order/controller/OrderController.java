@@ -2,7 +2,12 @@ package com.orderms.order.controller;
 
 import com.orderms.order.model.Order;
 import com.orderms.order.model.OrderItem;
+import com.orderms.order.service.AdmissionControlService;
+import com.orderms.order.service.IdempotencyService;
+import com.orderms.order.service.OrderReadModelService;
 import com.orderms.order.service.OrderService;
+import com.orderms.order.service.OrderShardRouter;
+import com.orderms.order.service.ReadPositionService;
 import io.micrometer.observation.annotation.Observed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -21,27 +26,52 @@ import java.util.stream.Collectors;
 public class OrderController {
     
     private final OrderService orderService;
+    private final IdempotencyService idempotencyService;
+    private final AdmissionControlService admissionControlService;
+    private final OrderReadModelService orderReadModelService;
+    private final OrderShardRouter orderShardRouter;
+    private final ReadPositionService readPositionService;
     
     @PostMapping
-    public ResponseEntity<OrderResponse> createOrder(@RequestBody CreateOrderRequest request) {
+    public ResponseEntity<OrderResponse> createOrder(
+            @RequestBody CreateOrderRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         log.info("REST: Creating order for customer: {}", request.getCustomerId());
-        OrderResponse response = orderService.createOrder(request);
-        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        OrderResponse response = idempotencyKey == null
+                ? admitAndCreate(request)
+                : idempotencyService.execute(idempotencyKey, request, () -> admitAndCreate(request));
+        ResponseEntity.BodyBuilder created = ResponseEntity.status(HttpStatus.CREATED);
+        orderShardRouter.onShardOf(response.getOrderId(), readPositionService::currentWritePosition)
+                .ifPresent(position -> created.header(ReadPositionService.HEADER, position));
+        return created.body(response);
+    }
+    
+    // Replays of a completed Idempotency-Key are served even while new orders are being shed
+    private OrderResponse admitAndCreate(CreateOrderRequest request) {
+        admissionControlService.admit();
+        return orderShardRouter.onCustomerShard(request.getCustomerId(), () -> orderService.createOrder(request));
     }
     
     @GetMapping("/{orderId}")
     public ResponseEntity<OrderResponse> getOrder(@PathVariable String orderId) {
         log.info("REST: Getting order: {}", orderId);
-        OrderResponse response = orderService.getOrder(orderId);
+        OrderResponse response = orderShardRouter.onShardOf(orderId, () -> orderReadModelService.getOrder(orderId));
         return ResponseEntity.ok(response);
     }
     
+    @GetMapping("/{orderId}/history")
+    public ResponseEntity<List<StatusChangeDto>> getOrderHistory(@PathVariable String orderId) {
+        log.info("REST: Getting status history for order: {}", orderId);
+        return ResponseEntity.ok(orderShardRouter.onShardOf(orderId, () -> orderReadModelService.getHistory(orderId)));
+    }
+    
     // DTO Classes
     public static class CreateOrderRequest {
         private String customerId;
         private String customerEmail;
         private Double totalAmount;
         private List<OrderItemDto> items;
+        private String priority; // STANDARD (default) or EXPRESS
         
         public String getCustomerId() { return customerId; }
         public void setCustomerId(String customerId) { this.customerId = customerId; }
@@ -51,6 +81,8 @@ public class OrderController {
         public void setTotalAmount(Double totalAmount) { this.totalAmount = totalAmount; }
         public List<OrderItemDto> getItems() { return items; }
         public void setItems(List<OrderItemDto> items) { this.items = items; }
+        public String getPriority() { return priority; }
+        public void setPriority(String priority) { this.priority = priority; }
     }
     
     public static class OrderItemDto {
@@ -74,6 +106,7 @@ public class OrderController {
         private String customerId;
         private Double totalAmount;
         private String status;
+        private String priority;
         private List<OrderItemDto> items;
         private String createdAt;
         private String updatedAt;
@@ -86,6 +119,8 @@ public class OrderController {
         public void setTotalAmount(Double totalAmount) { this.totalAmount = totalAmount; }
         public String getStatus() { return status; }
         public void setStatus(String status) { this.status = status; }
+        public String getPriority() { return priority; }
+        public void setPriority(String priority) { this.priority = priority; }
         public List<OrderItemDto> getItems() { return items; }
         public void setItems(List<OrderItemDto> items) { this.items = items; }
         public String getCreatedAt() { return createdAt; }
@@ -93,4 +128,20 @@ public class OrderController {
         public String getUpdatedAt() { return updatedAt; }
         public void setUpdatedAt(String updatedAt) { this.updatedAt = updatedAt; }
     }
+    
+    public static class StatusChangeDto {
+        private String fromStatus;
+        private String status;
+        private String message;
+        private String occurredAt;
+        
+        public String getFromStatus() { return fromStatus; }
+        public void setFromStatus(String fromStatus) { this.fromStatus = fromStatus; }
+        public String getStatus() { return status; }
+        public void setStatus(String status) { this.status = status; }
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
+        public String getOccurredAt() { return occurredAt; }
+        public void setOccurredAt(String occurredAt) { this.occurredAt = occurredAt; }
+    }
 }
@@ -0,0 +1,41 @@
+package com.orderms.order.controller;
+
+import com.orderms.order.service.OrderExportService;
+import com.orderms.order.service.OrderExportService.Cursor;
+import com.orderms.order.service.OrderExportService.ExportFilter;
+import com.orderms.order.service.OrderExportService.Format;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/orders")
+@RequiredArgsConstructor
+@Slf4j
+public class OrderExportController {
+
+    private final OrderExportService orderExportService;
+
+    @GetMapping("/export")
+    public void exportOrders(@RequestParam(defaultValue = "ndjson") String format,
+                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                             @RequestParam(required = false) List<String> status,
+                             @RequestParam(required = false) String customerId,
+                             @RequestParam(required = false) String cursor,
+                             HttpServletResponse response) throws IOException {
+        log.info("REST: Exporting orders as {} (from {} to {}, status {}, customer {})",
+                format, from, to, status, customerId);
+        orderExportService.export(ExportFilter.of(from, to, status, customerId),
+                Format.parse(format), Cursor.decode(cursor), response);
+    }
+}
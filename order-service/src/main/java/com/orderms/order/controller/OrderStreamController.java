@@ -1,6 +1,7 @@
 package com.orderms.order.controller;
 
 import com.orderms.order.service.OrderService;
+import com.orderms.order.service.OrderShardRouter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.MediaType;
@@ -17,10 +18,11 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 public class OrderStreamController {
     
     private final OrderService orderService;
+    private final OrderShardRouter orderShardRouter;
     
     @GetMapping(value = "/{orderId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public SseEmitter streamOrderStatus(@PathVariable String orderId) {
         log.info("SSE: Streaming status updates for order: {}", orderId);
-        return orderService.streamOrderStatus(orderId);
+        return orderShardRouter.onShardOf(orderId, () -> orderService.streamOrderStatus(orderId));
     }
 }
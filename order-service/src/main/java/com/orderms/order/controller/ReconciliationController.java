@@ -0,0 +1,46 @@
+package com.orderms.order.controller;
+
+import com.orderms.order.model.ReconciliationMismatch;
+import com.orderms.order.repository.ReconciliationMismatchRepository;
+import com.orderms.order.service.PaymentReconciliationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.ErrorResponseException;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/reconciliation")
+@RequiredArgsConstructor
+@Slf4j
+public class ReconciliationController {
+    
+    private final PaymentReconciliationService reconciliationService;
+    private final ReconciliationMismatchRepository mismatchRepository;
+    
+    @PostMapping("/runs")
+    public ResponseEntity<Map<String, String>> startRun() {
+        if (!reconciliationService.isConfigured()) {
+            ErrorResponseException e = new ErrorResponseException(HttpStatus.SERVICE_UNAVAILABLE);
+            e.setDetail("Reconciliation has no payment database credentials configured");
+            throw e;
+        }
+        String runId = reconciliationService.trigger();
+        if (runId == null) {
+            ErrorResponseException e = new ErrorResponseException(HttpStatus.CONFLICT);
+            e.setDetail("A reconciliation run is already in progress");
+            throw e;
+        }
+        log.info("REST: Started payment reconciliation {}", runId);
+        return ResponseEntity.accepted().body(Map.of("runId", runId));
+    }
+    
+    @GetMapping("/runs/{runId}/mismatches")
+    public ResponseEntity<List<ReconciliationMismatch>> getMismatches(@PathVariable String runId) {
+        return ResponseEntity.ok(mismatchRepository.findByRunIdOrderByIdAsc(runId));
+    }
+}
@@ -0,0 +1,47 @@
+package com.orderms.order.controller;
+
+import com.orderms.order.service.SagaAnalyticsService;
+import com.orderms.order.service.SagaAnalyticsService.Snapshot;
+import com.orderms.order.service.SagaAnalyticsService.Window;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.ErrorResponseException;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/analytics")
+@RequiredArgsConstructor
+public class SagaAnalyticsController {
+
+    private final SagaAnalyticsService sagaAnalytics;
+
+    @GetMapping("/saga")
+    public ResponseEntity<List<Snapshot>> getSagaAnalytics(@RequestParam(required = false) String window,
+                                                           @RequestParam(defaultValue = "20") int topSkus) {
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (Window w : windows(window)) {
+            snapshots.add(sagaAnalytics.snapshot(w, Math.max(topSkus, 0)));
+        }
+        return ResponseEntity.ok(snapshots);
+    }
+
+    private static List<Window> windows(String window) {
+        if (window == null) {
+            return List.of(Window.values());
+        }
+        try {
+            return List.of(Window.parse(window));
+        } catch (IllegalArgumentException e) {
+            ErrorResponseException error = new ErrorResponseException(HttpStatus.BAD_REQUEST);
+            error.setDetail("window must be one of 1m, 5m, 1h");
+            throw error;
+        }
+    }
+}
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -12,4 +14,6 @@ import lombok.NoArgsConstructor;
 public class InventoryReservedEvent {
     private String orderId;
     private String reservationId;
+    // Products of the order, for per-SKU outcomes; null if the items were missing
+    private List<String> productIds;
 }
@@ -0,0 +1,16 @@
+package com.orderms.order.kafka;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OrderConfirmedEvent {
+    private String orderId;
+    private String reservationId;
+    private String priority;
+}
@@ -17,6 +17,9 @@ public class OrderCreatedEvent {
     private String customerEmail;
     private Double totalAmount;
     private List<OrderItemDto> items;
+    // Parallel saga: inventory is held separately, payment must not trigger a reservation
+    private Boolean inventoryHold;
+    private String priority;
     
     @Data
     @NoArgsConstructor
@@ -1,6 +1,8 @@
 package com.orderms.order.kafka;
 
+import com.orderms.common.kafka.PriorityLanes;
 import com.orderms.order.service.OrderService;
+import com.orderms.order.service.SagaAnalyticsService;
 import io.micrometer.observation.annotation.Observed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -14,54 +16,92 @@ import org.springframework.stereotype.Component;
 public class OrderEventConsumer {
     
     private final OrderService orderService;
+    private final SagaAnalyticsService sagaAnalytics;
     
     @KafkaListener(
         topics = "payment-completed", 
         groupId = "order-service-group",
-        containerFactory = "paymentCompletedKafkaListenerContainerFactory"
+        containerFactory = "paymentCompletedKafkaListenerContainerFactory",
+        concurrency = "${lanes.concurrency:2}",
+        autoStartup = "#{'${orders.saga.engine:jpa}' != 'streams'}"
+    )
+    @KafkaListener(
+        topics = "payment-completed" + PriorityLanes.EXPRESS_SUFFIX, 
+        groupId = "order-service-group",
+        containerFactory = "paymentCompletedKafkaListenerContainerFactory",
+        concurrency = "${lanes.concurrency:2}",
+        autoStartup = "#{'${orders.saga.engine:jpa}' != 'streams'}"
     )
     public void handlePaymentCompleted(PaymentCompletedEvent event) {
-        log.info("Received PaymentCompletedEvent for order: {}", event.getOrderId());
+        log.debug("Received PaymentCompletedEvent for order: {}", event.getOrderId());
         orderService.handlePaymentCompleted(event);
+        sagaAnalytics.onPaymentCompleted();
     }
     
     @KafkaListener(
         topics = "payment-failed", 
         groupId = "order-service-group",
-        containerFactory = "paymentFailedKafkaListenerContainerFactory"
+        containerFactory = "paymentFailedKafkaListenerContainerFactory",
+        autoStartup = "#{'${orders.saga.engine:jpa}' != 'streams'}"
     )
     public void handlePaymentFailed(PaymentFailedEvent event) {
-        log.info("Received PaymentFailedEvent for order: {}", event.getOrderId());
+        log.debug("Received PaymentFailedEvent for order: {}", event.getOrderId());
         orderService.handlePaymentFailed(event);
+        sagaAnalytics.onPaymentFailed();
     }
     
     @KafkaListener(
         topics = "inventory-reserved", 
         groupId = "order-service-group",
-        containerFactory = "inventoryReservedKafkaListenerContainerFactory"
+        containerFactory = "inventoryReservedKafkaListenerContainerFactory",
+        concurrency = "${lanes.concurrency:2}",
+        autoStartup = "#{'${orders.saga.engine:jpa}' != 'streams'}"
+    )
+    @KafkaListener(
+        topics = "inventory-reserved" + PriorityLanes.EXPRESS_SUFFIX, 
+        groupId = "order-service-group",
+        containerFactory = "inventoryReservedKafkaListenerContainerFactory",
+        concurrency = "${lanes.concurrency:2}",
+        autoStartup = "#{'${orders.saga.engine:jpa}' != 'streams'}"
     )
     public void handleInventoryReserved(InventoryReservedEvent event) {
-        log.info("Received InventoryReservedEvent for order: {}", event.getOrderId());
+        log.debug("Received InventoryReservedEvent for order: {}", event.getOrderId());
         orderService.handleInventoryReserved(event);
+        sagaAnalytics.onInventoryReserved(event.getProductIds());
+    }
+    
+    @KafkaListener(
+        topics = "inventory-held", 
+        groupId = "order-service-group",
+        containerFactory = "inventoryReservedKafkaListenerContainerFactory",
+        autoStartup = "#{'${orders.saga.engine:jpa}' != 'streams'}"
+    )
+    public void handleInventoryHeld(InventoryReservedEvent event) {
+        log.debug("Received inventory hold for order: {}", event.getOrderId());
+        orderService.handleInventoryHeld(event);
+        sagaAnalytics.onInventoryReserved(event.getProductIds());
     }
     
     @KafkaListener(
         topics = "inventory-failed", 
         groupId = "order-service-group",
-        containerFactory = "inventoryFailedKafkaListenerContainerFactory"
+        containerFactory = "inventoryFailedKafkaListenerContainerFactory",
+        autoStartup = "#{'${orders.saga.engine:jpa}' != 'streams'}"
     )
     public void handleInventoryFailed(InventoryFailedEvent event) {
-        log.info("Received InventoryFailedEvent for order: {}", event.getOrderId());
+        log.debug("Received InventoryFailedEvent for order: {}", event.getOrderId());
         orderService.handleInventoryFailed(event);
+        sagaAnalytics.onInventoryFailed(event.getProductIds());
     }
     
     @KafkaListener(
         topics = "notification-sent", 
         groupId = "order-service-group",
-        containerFactory = "notificationSentKafkaListenerContainerFactory"
+        containerFactory = "notificationSentKafkaListenerContainerFactory",
+        autoStartup = "#{'${orders.saga.engine:jpa}' != 'streams'}"
     )
     public void handleNotificationSent(NotificationSentEvent event) {
-        log.info("Received NotificationSentEvent for order: {}", event.getOrderId());
+        log.debug("Received NotificationSentEvent for order: {}", event.getOrderId());
         orderService.handleNotificationSent(event);
     }
 }
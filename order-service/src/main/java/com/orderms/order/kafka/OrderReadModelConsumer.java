@@ -0,0 +1,32 @@
+package com.orderms.order.kafka;
+
+import com.orderms.order.service.OrderReadModelService;
+import com.orderms.order.service.SagaAnalyticsService;
+import io.micrometer.observation.annotation.Observed;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+@Observed
+public class OrderReadModelConsumer {
+    
+    private final OrderReadModelService orderReadModelService;
+    private final SagaAnalyticsService sagaAnalytics;
+    
+    // Own consumer group, so the projection lags and scales independently of the saga
+    @KafkaListener(
+        topics = "order-status-changed", 
+        groupId = "order-service-read-model",
+        containerFactory = "orderStatusChangedKafkaListenerContainerFactory"
+    )
+    public void handleOrderStatusChanged(OrderStatusChangedEvent event) {
+        log.debug("Received status change {} for order: {}", event.getStatus(), event.getOrderId());
+        if (orderReadModelService.project(event)) {
+            sagaAnalytics.onStatusChanged(event);
+        }
+    }
+}
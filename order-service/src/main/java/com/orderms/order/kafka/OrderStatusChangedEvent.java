@@ -0,0 +1,32 @@
+package com.orderms.order.kafka;
+
+import com.orderms.order.model.Order;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * One saga status transition, published by whichever saga engine runs the order and
+ * consumed by the read model. The order details are only set on the event for the
+ * order's creation.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OrderStatusChangedEvent {
+    private String orderId;
+    private Order.OrderStatus fromStatus;
+    private Order.OrderStatus status;
+    private String message;
+    private LocalDateTime occurredAt;
+    private String customerId;
+    private String customerEmail;
+    private Double totalAmount;
+    private String priority;
+    private List<OrderCreatedEvent.OrderItemDto> items;
+}
@@ -0,0 +1,15 @@
+package com.orderms.order.kafka;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReleaseInventoryCommand {
+    private String orderId;
+    private String reason;
+}
@@ -0,0 +1,43 @@
+package com.orderms.order.kafka;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.orderms.order.model.Order;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Saga state of one order in the Kafka Streams engine. It is kept in the
+ * {@link SagaStreamProcessor#STATE_STORE} store, and every change is published as a
+ * snapshot on the status topic, which the {@code orders} table is projected from.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SagaState {
+    private String orderId;
+    private String customerId;
+    private String customerEmail;
+    private Double totalAmount;
+    private List<OrderCreatedEvent.OrderItemDto> items;
+    private Order.OrderStatus status;
+    private String priority;
+    private boolean parallelSaga;
+    private String paymentId;
+    private String reservationId;
+    private int confirmationAttempts;
+    // Status message for SSE subscribers, pushed by the projection
+    private String message;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+    
+    @JsonIgnore
+    public boolean isFinished() {
+        return status == Order.OrderStatus.COMPLETED || status == Order.OrderStatus.CANCELLED;
+    }
+}
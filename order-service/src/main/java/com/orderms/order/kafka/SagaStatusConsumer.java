@@ -0,0 +1,34 @@
+package com.orderms.order.kafka;
+
+import com.orderms.order.service.OrderService;
+import com.orderms.order.service.SagaProjectionService;
+import io.micrometer.observation.annotation.Observed;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "orders.saga.engine", havingValue = "streams")
+@RequiredArgsConstructor
+@Slf4j
+@Observed
+public class SagaStatusConsumer {
+    
+    private final SagaProjectionService sagaProjectionService;
+    private final OrderService orderService;
+    
+    @KafkaListener(
+        topics = "${orders.saga.streams.status-topic:order-saga-status}", 
+        groupId = "order-service-projection",
+        containerFactory = "sagaStateKafkaListenerContainerFactory"
+    )
+    public void handleSagaState(SagaState state) {
+        log.debug("Received saga state {} for order: {}", state.getStatus(), state.getOrderId());
+        sagaProjectionService.project(state);
+        if (state.getMessage() != null) {
+            orderService.sendStatusUpdate(state.getOrderId(), state.getMessage());
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.orderms.order.kafka;
+
+import com.orderms.common.kafka.IdempotentConsumer;
+import com.orderms.common.kafka.PriorityLanes;
+import com.orderms.order.model.Order;
+import com.orderms.order.service.SagaDeadlineService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.apache.kafka.streams.processor.api.Processor;
+import org.apache.kafka.streams.processor.api.ProcessorContext;
+import org.apache.kafka.streams.processor.api.Record;
+import org.apache.kafka.streams.processor.api.RecordMetadata;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Saga step of the Kafka Streams engine. Applies each order, payment, inventory and
+ * notification event to the order's state in {@link #STATE_STORE}, and forwards the
+ * resulting commands, compensations, status transitions for the read model and a
+ * state snapshot for the orders projection.
+ * Runs the same transitions as the JPA handlers in {@code OrderService}.
+ *
+ * Only order-created starts a saga. Events that do not advance the saga, such as
+ * redeliveries, events for a finished saga or events for a saga already evicted, are
+ * dropped without touching the state.
+ *
+ * A wall-clock punctuator does the deadline handling that the timing wheel does for
+ * the JPA engine. It also evicts finished and abandoned sagas once their retention has
+ * passed; queries for those are answered from the projection. Each saga's next
+ * deadline is indexed in {@link #DEADLINE_STORE}, so a punctuation only reads the
+ * sagas that are due.
+ */
+@Slf4j
+public class SagaStreamProcessor implements Processor<String, Object, String, SagaStreamProcessor.Output> {
+
+    public static final String STATE_STORE = "saga-state";
+    public static final String DEADLINE_STORE = "saga-deadlines";
+
+    private static final String REFUND_PAYMENT_TOPIC = "refund-payment";
+    private static final String INVENTORY_RELEASE_TOPIC = "inventory-release";
+    private static final String ORDER_CONFIRMED_TOPIC = "order-confirmed";
+    private static final String INVENTORY_HELD_TOPIC = "inventory-held";
+    private static final String ORDER_STATUS_CHANGED_TOPIC = "order-status-changed";
+
+    private final SagaDeadlineService sagaDeadlineService;
+    private final String statusTopic;
+    private final int notificationMaxAttempts;
+    private final Duration punctuateInterval;
+    private final Duration retention;
+
+    private ProcessorContext<String, Output> context;
+    private KeyValueStore<String, SagaState> store;
+    private KeyValueStore<String, String> deadlines;
+
+    public SagaStreamProcessor(SagaDeadlineService sagaDeadlineService, String statusTopic,
+                               int notificationMaxAttempts, Duration punctuateInterval, Duration retention) {
+        this.sagaDeadlineService = sagaDeadlineService;
+        this.statusTopic = statusTopic;
+        this.notificationMaxAttempts = notificationMaxAttempts;
+        this.punctuateInterval = punctuateInterval;
+        this.retention = retention;
+    }
+
+    @Override
+    public void init(ProcessorContext<String, Output> context) {
+        this.context = context;
+        this.store = context.getStateStore(STATE_STORE);
+        this.deadlines = context.getStateStore(DEADLINE_STORE);
+        indexDeadlines();
+        context.schedule(punctuateInterval, PunctuationType.WALL_CLOCK_TIME, timestamp -> checkDeadlines());
+    }
+
+    // Sagas stored before the deadline index existed get their entries once, on the first start
+    private void indexDeadlines() {
+        try (KeyValueIterator<String, String> entries = deadlines.all()) {
+            if (entries.hasNext()) {
+                return;
+            }
+        }
+        List<SagaState> states = new ArrayList<>();
+        try (KeyValueIterator<String, SagaState> entries = store.all()) {
+            entries.forEachRemaining(entry -> states.add(entry.value));
+        }
+        states.forEach(state -> save(state, null));
+    }
+
+    @Override
+    public void process(Record<String, Object> record) {
+        String orderId = record.key();
+        Object event = record.value();
+        if (orderId == null || event == null) {
+            return;
+        }
+        String topic = context.recordMetadata().map(RecordMetadata::topic).orElse("");
+
+        SagaState state = store.get(orderId);
+        String previousDeadline = null;
+        if (state == null) {
+            // The other saga events are caused by order-created and carry later timestamps, so
+            // the task reads it first; without state the saga was evicted or never started here
+            if (!(event instanceof OrderCreatedEvent created)) {
+                log.warn("Ignoring {} from {} for unknown or evicted order {}",
+                        event.getClass().getSimpleName(), topic, orderId);
+                return;
+            }
+            state = SagaState.builder()
+                    .orderId(orderId)
+                    .status(Order.OrderStatus.PAYMENT_PROCESSING)
+                    .createdAt(toLocalDateTime(record.timestamp()))
+                    .updatedAt(LocalDateTime.now())
+                    .build();
+            onOrderCreated(state, created);
+        } else {
+            previousDeadline = deadlineKey(state);
+            boolean advanced;
+            if (event instanceof PaymentCompletedEvent completed) {
+                advanced = onPaymentCompleted(state, completed);
+            } else if (event instanceof PaymentFailedEvent failed) {
+                advanced = onPaymentFailed(state, failed);
+            } else if (event instanceof InventoryReservedEvent reserved && topic.equals(INVENTORY_HELD_TOPIC)) {
+                advanced = onInventoryHeld(state, reserved);
+            } else if (event instanceof InventoryReservedEvent reserved) {
+                advanced = onInventoryReserved(state, reserved);
+            } else if (event instanceof InventoryFailedEvent failed) {
+                advanced = onInventoryFailed(state, failed);
+            } else if (event instanceof NotificationSentEvent) {
+                advanced = onNotificationSent(state);
+            } else {
+                // A redelivered order-created
+                advanced = false;
+            }
+            if (!advanced) {
+                log.debug("Ignoring {} from {} for order {} in {}",
+                        event.getClass().getSimpleName(), topic, orderId, state.getStatus());
+                return;
+            }
+        }
+
+        save(state, previousDeadline);
+        forward(statusTopic, orderId, state);
+    }
+
+    private void onOrderCreated(SagaState state, OrderCreatedEvent event) {
+        state.setCustomerId(event.getCustomerId());
+        state.setCustomerEmail(event.getCustomerEmail());
+        state.setTotalAmount(event.getTotalAmount());
+        state.setItems(event.getItems());
+        state.setPriority(event.getPriority());
+        state.setParallelSaga(Boolean.TRUE.equals(event.getInventoryHold()));
+        state.setMessage("Order created");
+        forward(ORDER_STATUS_CHANGED_TOPIC, state.getOrderId(), OrderStatusChangedEvent.builder()
+                .orderId(state.getOrderId())
+                .status(state.getStatus())
+                .message("Order created")
+                .occurredAt(state.getCreatedAt())
+                .customerId(event.getCustomerId())
+                .customerEmail(event.getCustomerEmail())
+                .totalAmount(event.getTotalAmount())
+                .priority(event.getPriority())
+                .items(event.getItems())
+                .build());
+    }
+
+    // The handlers return false for events that do not advance the saga, which leaves the state untouched
+
+    private boolean onPaymentCompleted(SagaState state, PaymentCompletedEvent event) {
+        if (state.getPaymentId() != null) {
+            // Redelivered: the payment was already applied, or refunded if it came in late
+            return false;
+        }
+        state.setPaymentId(event.getPaymentId());
+        if (state.getStatus() == Order.OrderStatus.CANCELLED) {
+            // The inventory hold failed or the saga timed out: compensate the late payment
+            requestRefund(state, "Order already cancelled");
+            return true;
+        }
+        transition(state, Order.OrderStatus.PAYMENT_COMPLETED, "Payment completed successfully");
+        if (state.isParallelSaga() && state.getReservationId() != null) {
+            confirmOrder(state);
+        } else {
+            transition(state, Order.OrderStatus.INVENTORY_RESERVING, state.getMessage());
+        }
+        return true;
+    }
+
+    private boolean onPaymentFailed(SagaState state, PaymentFailedEvent event) {
+        if (state.getStatus() != Order.OrderStatus.PAYMENT_PROCESSING || state.getPaymentId() != null) {
+            return false;
+        }
+        if (state.isParallelSaga() && state.getReservationId() != null) {
+            requestInventoryRelease(state, "Payment failed");
+        }
+        transition(state, Order.OrderStatus.PAYMENT_FAILED, "Payment failed: " + event.getReason());
+        transition(state, Order.OrderStatus.CANCELLED, state.getMessage());
+        return true;
+    }
+
+    private boolean onInventoryReserved(SagaState state, InventoryReservedEvent event) {
+        if (state.getReservationId() != null) {
+            return false;
+        }
+        state.setReservationId(event.getReservationId());
+        if (state.getStatus() == Order.OrderStatus.CANCELLED) {
+            requestInventoryRelease(state, "Order already cancelled");
+            return true;
+        }
+        transition(state, Order.OrderStatus.INVENTORY_RESERVED, "Inventory reserved successfully");
+        transition(state, Order.OrderStatus.NOTIFYING, state.getMessage());
+        return true;
+    }
+
+    private boolean onInventoryHeld(SagaState state, InventoryReservedEvent event) {
+        if (state.getReservationId() != null) {
+            return false;
+        }
+        state.setReservationId(event.getReservationId());
+        if (state.getStatus() == Order.OrderStatus.CANCELLED) {
+            requestInventoryRelease(state, "Payment failed");
+            return true;
+        }
+        state.setMessage("Inventory held");
+        if (state.getPaymentId() != null) {
+            confirmOrder(state);
+        }
+        return true;
+    }
+
+    private boolean onInventoryFailed(SagaState state, InventoryFailedEvent event) {
+        if (state.isFinished() || state.getReservationId() != null
+                || state.getStatus() == Order.OrderStatus.INVENTORY_FAILED) {
+            return false;
+        }
+        String message = "Inventory reservation failed. Payment refunded: " + event.getReason();
+        transition(state, Order.OrderStatus.INVENTORY_FAILED, message);
+        if (state.getPaymentId() != null) {
+            requestRefund(state, "Inventory reservation failed");
+        }
+        transition(state, Order.OrderStatus.CANCELLED, message);
+        return true;
+    }
+
+    private boolean onNotificationSent(SagaState state) {
+        if (state.getStatus() != Order.OrderStatus.NOTIFYING) {
+            return false;
+        }
+        transition(state, Order.OrderStatus.COMPLETED, "Order completed successfully!");
+        return true;
+    }
+
+    private void checkDeadlines() {
+        // Keys of deadlines up to now sort before the next millisecond's prefix
+        String upper = String.format("%019d", System.currentTimeMillis() + 1);
+        List<KeyValue<String, String>> due = new ArrayList<>();
+        try (KeyValueIterator<String, String> entries = deadlines.range(null, upper)) {
+            entries.forEachRemaining(due::add);
+        }
+
+        for (KeyValue<String, String> entry : due) {
+            SagaState state = store.get(entry.value);
+            if (state == null || !entry.key.equals(deadlineKey(state))) {
+                // Left behind by a saga that has since moved on, or by a changed timeout
+                deadlines.delete(entry.key);
+                continue;
+            }
+            if (isRetained(state)) {
+                store.delete(entry.value);
+                deadlines.delete(entry.key);
+                continue;
+            }
+            switch (state.getStatus()) {
+                case INVENTORY_RESERVED, NOTIFYING -> resendConfirmation(state);
+                default -> timeOut(state);
+            }
+            save(state, entry.key);
+        }
+    }
+
+    private void save(SagaState state, String previousDeadline) {
+        store.put(state.getOrderId(), state);
+        String deadline = deadlineKey(state);
+        if (previousDeadline != null && !previousDeadline.equals(deadline)) {
+            deadlines.delete(previousDeadline);
+        }
+        if (deadline != null) {
+            deadlines.put(deadline, state.getOrderId());
+        }
+    }
+
+    // Finished sagas and sagas that ran out of confirmation attempts are only kept for the retention
+    private boolean isRetained(SagaState state) {
+        return state.isFinished() || state.getConfirmationAttempts() > notificationMaxAttempts;
+    }
+
+    /**
+     * Index key of the saga's next deadline, ordered by time, or null if it has none.
+     */
+    private String deadlineKey(SagaState state) {
+        Duration delay = isRetained(state) ? retention : sagaDeadlineService.timeoutFor(state.getStatus());
+        if (delay == null) {
+            return null;
+        }
+        long deadline = state.getUpdatedAt().plus(delay).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return String.format("%019d|%s", deadline, state.getOrderId());
+    }
+
+    private void resendConfirmation(SagaState state) {
+        int attempt = state.getConfirmationAttempts();
+        state.setConfirmationAttempts(attempt + 1);
+        if (attempt >= notificationMaxAttempts) {
+            log.error("Order {} still {} after {} confirmation attempts, giving up",
+                    state.getOrderId(), state.getStatus(), attempt + 1);
+            sagaDeadlineService.recordExpiry(state.getStatus(), "abandoned");
+            return;
+        }
+        log.warn("Order {} stuck in {}, re-sending confirmation (attempt {})",
+                state.getOrderId(), state.getStatus(), attempt + 2);
+        sendConfirmation(state);
+        state.setUpdatedAt(LocalDateTime.now());
+        sagaDeadlineService.recordExpiry(state.getStatus(), "requery");
+    }
+
+    private void timeOut(SagaState state) {
+        Order.OrderStatus step = state.getStatus();
+        log.warn("Order {} timed out in {}, cancelling", state.getOrderId(), step);
+        sagaDeadlineService.recordExpiry(step, "cancel");
+        if (state.getPaymentId() != null) {
+            requestRefund(state, "Saga step timed out");
+        }
+        if (state.getReservationId() != null) {
+            requestInventoryRelease(state, "Saga step timed out");
+        }
+        transition(state, Order.OrderStatus.CANCELLED, "Order cancelled: timed out in " + step);
+        forward(statusTopic, state.getOrderId(), state);
+    }
+
+    private void confirmOrder(SagaState state) {
+        transition(state, Order.OrderStatus.INVENTORY_RESERVED, state.getMessage());
+        transition(state, Order.OrderStatus.NOTIFYING, state.getMessage());
+        sendConfirmation(state);
+        log.info("Payment and inventory hold joined, order {} confirmed", state.getOrderId());
+    }
+
+    private void sendConfirmation(SagaState state) {
+        forward(PriorityLanes.topic(ORDER_CONFIRMED_TOPIC, state.getPriority()), state.getOrderId(),
+                OrderConfirmedEvent.builder()
+                        .orderId(state.getOrderId())
+                        .reservationId(state.getReservationId())
+                        .priority(state.getPriority())
+                        .build());
+    }
+
+    private void requestRefund(SagaState state, String reason) {
+        forward(REFUND_PAYMENT_TOPIC, state.getOrderId(), RefundPaymentCommand.builder()
+                .orderId(state.getOrderId())
+                .paymentId(state.getPaymentId())
+                .reason(reason)
+                .build());
+        log.info("Refund command sent for order: {}", state.getOrderId());
+    }
+
+    private void requestInventoryRelease(SagaState state, String reason) {
+        forward(INVENTORY_RELEASE_TOPIC, state.getOrderId(), ReleaseInventoryCommand.builder()
+                .orderId(state.getOrderId())
+                .reason(reason)
+                .build());
+        log.info("Inventory release command sent for order: {}", state.getOrderId());
+    }
+
+    private void transition(SagaState state, Order.OrderStatus status, String message) {
+        Order.OrderStatus previous = state.getStatus();
+        state.setStatus(status);
+        state.setMessage(message);
+        state.setUpdatedAt(LocalDateTime.now());
+        forward(ORDER_STATUS_CHANGED_TOPIC, state.getOrderId(), OrderStatusChangedEvent.builder()
+                .orderId(state.getOrderId())
+                .fromStatus(previous)
+                .status(status)
+                .message(message)
+                .occurredAt(state.getUpdatedAt())
+                .build());
+        log.info("Order {} status updated to: {}", state.getOrderId(), status);
+    }
+
+    private void forward(String topic, String orderId, Object payload) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add(IdempotentConsumer.EVENT_ID_HEADER, UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8));
+        context.forward(new Record<>(orderId, new Output(topic, payload), System.currentTimeMillis(), headers));
+    }
+
+    private static LocalDateTime toLocalDateTime(long timestamp) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+    }
+
+    /**
+     * Topics the processor writes to, one sink each in the topology.
+     */
+    public static List<String> outputTopics(String statusTopic) {
+        return List.of(REFUND_PAYMENT_TOPIC, INVENTORY_RELEASE_TOPIC,
+                ORDER_CONFIRMED_TOPIC, ORDER_CONFIRMED_TOPIC + PriorityLanes.EXPRESS_SUFFIX,
+                ORDER_STATUS_CHANGED_TOPIC, statusTopic);
+    }
+
+    /**
+     * Record for {@code topic}; the topology routes it to that topic's sink.
+     */
+    public record Output(String topic, Object payload) {
+    }
+}
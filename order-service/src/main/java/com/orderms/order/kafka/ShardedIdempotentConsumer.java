@@ -0,0 +1,34 @@
+package com.orderms.order.kafka;
+
+import com.orderms.common.kafka.IdempotentConsumer;
+import com.orderms.common.repository.ProcessedMessageRepository;
+import com.orderms.order.service.OrderShardRouter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Processed messages live on the shard of their orderId, so loading the Bloom filter
+ * and pruning visit every order database.
+ */
+@Component
+public class ShardedIdempotentConsumer extends IdempotentConsumer {
+
+    private final OrderShardRouter orderShardRouter;
+
+    public ShardedIdempotentConsumer(ProcessedMessageRepository repository,
+                                     OrderShardRouter orderShardRouter,
+                                     TransactionTemplate transactionTemplate,
+                                     @Value("${idempotency.cache-size:10000}") int cacheSize,
+                                     @Value("${idempotency.bloom-expected-insertions:1000000}") long bloomExpectedInsertions,
+                                     @Value("${idempotency.warmup-records:500}") int warmupRecords,
+                                     @Value("${idempotency.ttl-hours:72}") long ttlHours) {
+        super(repository, transactionTemplate, cacheSize, bloomExpectedInsertions, warmupRecords, ttlHours);
+        this.orderShardRouter = orderShardRouter;
+    }
+
+    @Override
+    protected void forEachDatabase(Runnable action) {
+        orderShardRouter.forEachDatabase(database -> action.run());
+    }
+}
@@ -0,0 +1,51 @@
+package com.orderms.order.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "order_idempotency_keys",
+        indexes = @Index(name = "idx_idempotency_keys_expires_at", columnList = "expiresAt"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IdempotencyRecord {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(unique = true, nullable = false)
+    private String idempotencyKey;
+    
+    @Column(nullable = false)
+    private String requestHash;
+    
+    private String orderId;
+    
+    // Serialized OrderResponse; null while the first request is still in flight
+    @Column(columnDefinition = "TEXT")
+    private String responseBody;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    // The claim's lease while in flight, the key's TTL once the response is stored
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+    
+    public boolean isCompleted() {
+        return responseBody != null;
+    }
+}
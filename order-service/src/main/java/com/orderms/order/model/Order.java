@@ -11,7 +11,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_status", columnList = "status"),
+        @Index(name = "idx_orders_created_at", columnList = "createdAt, orderId")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -44,6 +47,17 @@ public class Order {
     private String paymentId;
     private String reservationId;
     
+    // Selects the saga topic lane (express orders use the <topic>-express lanes)
+    @Enumerated(EnumType.STRING)
+    private Priority priority;
+    
+    // Payment and inventory hold run concurrently and are joined by the handlers
+    private Boolean parallelSaga;
+    
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+    
     @Column(nullable = false)
     private LocalDateTime createdAt;
     
@@ -61,11 +75,24 @@ public class Order {
         updatedAt = LocalDateTime.now();
     }
     
+    public boolean isParallelSaga() {
+        return Boolean.TRUE.equals(parallelSaga);
+    }
+    
+    public String priorityName() {
+        return priority != null ? priority.name() : Priority.STANDARD.name();
+    }
+    
     public void addItem(OrderItem item) {
         items.add(item);
         item.setOrder(this);
     }
     
+    public enum Priority {
+        STANDARD,
+        EXPRESS
+    }
+    
     public enum OrderStatus {
         PENDING,
         PAYMENT_PROCESSING,
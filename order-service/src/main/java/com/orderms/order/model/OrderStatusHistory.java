@@ -0,0 +1,37 @@
+package com.orderms.order.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "order_status_history", indexes = @Index(name = "idx_order_status_history_order", columnList = "orderId"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OrderStatusHistory {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private String orderId;
+    
+    @Enumerated(EnumType.STRING)
+    private Order.OrderStatus fromStatus;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Order.OrderStatus status;
+    
+    private String message;
+    
+    @Column(nullable = false)
+    private LocalDateTime occurredAt;
+}
@@ -0,0 +1,51 @@
+package com.orderms.order.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Denormalized read model of an order: header, current status and the items as a
+ * JSON document, so a lookup is a single primary-key read without touching the rows
+ * the saga writes to.
+ */
+@Entity
+@Table(name = "order_views")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OrderView {
+    
+    @Id
+    private String orderId;
+    
+    private String customerId;
+    
+    private String customerEmail;
+    
+    private Double totalAmount;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Order.OrderStatus status;
+    
+    private String priority;
+    
+    @Column(columnDefinition = "text")
+    private String items;
+    
+    // Projected transitions applied so far; also tells a new view from an existing one
+    @Version
+    private Long version;
+    
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+}
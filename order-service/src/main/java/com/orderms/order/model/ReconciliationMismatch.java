@@ -0,0 +1,61 @@
+package com.orderms.order.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "reconciliation_mismatches", indexes = @Index(name = "idx_reconciliation_mismatches_run", columnList = "runId"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReconciliationMismatch {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(nullable = false)
+    private String runId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Type type;
+    
+    @Column(nullable = false)
+    private String orderId;
+    
+    @Enumerated(EnumType.STRING)
+    private Order.OrderStatus orderStatus;
+    
+    private String orderPaymentId;
+    private String paymentId;
+    private String paymentStatus;
+    
+    // REPORTED, or REFUND_REQUESTED when the mismatch was fixed automatically
+    @Column(nullable = false)
+    private String action;
+    
+    @Column(nullable = false)
+    private LocalDateTime detectedAt;
+    
+    public enum Type {
+        // Order cancelled or failed, payment still captured
+        FAILED_ORDER_CHARGED,
+        // More than one captured payment for an order that went ahead
+        DUPLICATE_PAYMENT,
+        // Order went past payment without a captured payment
+        PAID_ORDER_WITHOUT_PAYMENT,
+        // Order went past payment, but its payment was refunded
+        PAID_ORDER_REFUNDED,
+        // Payment captured, order never moved past payment
+        PAYMENT_NOT_APPLIED,
+        // Payment captured for an order that does not exist
+        ORPHAN_PAYMENT
+    }
+}
@@ -0,0 +1,28 @@
+package com.orderms.order.repository;
+
+import com.orderms.order.model.Order;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface OrderArchiveRepository {
+    Optional<ArchivedOrder> findArchivedByOrderId(String orderId);
+    
+    // Read-only: an archived order is finished and no longer has a row to update
+    record ArchivedOrder(String orderId,
+                         String customerId,
+                         String customerEmail,
+                         Double totalAmount,
+                         Order.OrderStatus status,
+                         String paymentId,
+                         String reservationId,
+                         Order.Priority priority,
+                         List<Item> items,
+                         LocalDateTime createdAt,
+                         LocalDateTime updatedAt) {
+    }
+    
+    record Item(String productId, String productName, Integer quantity, Double price) {
+    }
+}
@@ -0,0 +1,60 @@
+package com.orderms.order.repository;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orderms.order.model.Order;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads orders moved to {@code orders_archive} by {@code OrderArchiveService} as
+ * read-only {@link ArchivedOrder}s; their items come from the archived jsonb.
+ */
+@RequiredArgsConstructor
+public class OrderArchiveRepositoryImpl implements OrderArchiveRepository {
+
+    private static final TypeReference<List<Item>> ITEMS_TYPE = new TypeReference<>() {};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public Optional<ArchivedOrder> findArchivedByOrderId(String orderId) {
+        // Each order database gets its archive table on the archiver's first run there
+        boolean archiveExists = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass('orders_archive') IS NOT NULL", Boolean.class));
+        if (!archiveExists) {
+            return Optional.empty();
+        }
+        return jdbcTemplate.query("SELECT * FROM orders_archive WHERE order_id = ?",
+                (rs, rowNum) -> mapOrder(rs), orderId).stream().findFirst();
+    }
+
+    private ArchivedOrder mapOrder(ResultSet rs) throws SQLException {
+        String orderId = rs.getString("order_id");
+        List<Item> items;
+        try {
+            items = List.copyOf(objectMapper.readValue(rs.getString("items"), ITEMS_TYPE));
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Unreadable items of archived order: " + orderId, e);
+        }
+        return new ArchivedOrder(
+                orderId,
+                rs.getString("customer_id"),
+                rs.getString("customer_email"),
+                rs.getDouble("total_amount"),
+                Order.OrderStatus.valueOf(rs.getString("status")),
+                rs.getString("payment_id"),
+                rs.getString("reservation_id"),
+                rs.getString("priority") != null ? Order.Priority.valueOf(rs.getString("priority")) : null,
+                items,
+                rs.getTimestamp("created_at").toLocalDateTime(),
+                rs.getTimestamp("updated_at").toLocalDateTime());
+    }
+}
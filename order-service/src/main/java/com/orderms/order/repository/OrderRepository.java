@@ -2,11 +2,52 @@ package com.orderms.order.repository;
 
 import com.orderms.order.model.Order;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface OrderRepository extends JpaRepository<Order, Long> {
+public interface OrderRepository extends JpaRepository<Order, Long>, OrderArchiveRepository {
+    // Finished orders are moved to orders_archive after a while, see findArchivedByOrderId
     Optional<Order> findByOrderId(String orderId);
+    
+    @Query("select o.status, count(o) from Order o where o.status in :statuses group by o.status")
+    List<Object[]> countByStatusIn(@Param("statuses") Collection<Order.OrderStatus> statuses);
+    
+    Stream<SagaStep> streamByStatusIn(Collection<Order.OrderStatus> statuses);
+    
+    Optional<SagaStateView> findSagaStateByOrderId(String orderId);
+    
+    // Saga step write that only succeeds against the version the caller decided on
+    @Modifying
+    @Query("update Order o set o.status = :status, o.paymentId = :paymentId, o.reservationId = :reservationId, " +
+           "o.updatedAt = :updatedAt, o.version = o.version + 1 where o.orderId = :orderId and o.version = :version")
+    int updateSagaState(@Param("orderId") String orderId,
+                        @Param("status") Order.OrderStatus status,
+                        @Param("paymentId") String paymentId,
+                        @Param("reservationId") String reservationId,
+                        @Param("updatedAt") LocalDateTime updatedAt,
+                        @Param("version") Long version);
+    
+    interface SagaStep {
+        String getOrderId();
+        Order.OrderStatus getStatus();
+        LocalDateTime getUpdatedAt();
+    }
+    
+    interface SagaStateView extends SagaStep {
+        String getPaymentId();
+        String getReservationId();
+        Long getVersion();
+        Boolean getParallelSaga();
+        Order.Priority getPriority();
+        LocalDateTime getCreatedAt();
+    }
 }
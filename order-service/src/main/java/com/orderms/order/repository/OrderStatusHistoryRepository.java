@@ -0,0 +1,16 @@
+package com.orderms.order.repository;
+
+import com.orderms.order.model.Order;
+import com.orderms.order.model.OrderStatusHistory;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface OrderStatusHistoryRepository extends JpaRepository<OrderStatusHistory, Long> {
+    List<OrderStatusHistory> findByOrderIdOrderByOccurredAtAscIdAsc(String orderId);
+    
+    boolean existsByOrderIdAndStatusAndOccurredAt(String orderId, Order.OrderStatus status, LocalDateTime occurredAt);
+}
@@ -0,0 +1,9 @@
+package com.orderms.order.repository;
+
+import com.orderms.order.model.OrderView;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface OrderViewRepository extends JpaRepository<OrderView, String> {
+}
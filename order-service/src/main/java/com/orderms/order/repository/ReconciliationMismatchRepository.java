@@ -0,0 +1,12 @@
+package com.orderms.order.repository;
+
+import com.orderms.order.model.ReconciliationMismatch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ReconciliationMismatchRepository extends JpaRepository<ReconciliationMismatch, Long> {
+    List<ReconciliationMismatch> findByRunIdOrderByIdAsc(String runId);
+}
@@ -0,0 +1,49 @@
+package com.orderms.order.repository;
+
+import com.orderms.order.model.Order;
+import com.orderms.order.service.OrderShardRouter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * {@link OrderRepository} over all order databases: single orders are looked up on
+ * the shard in their orderId, aggregate queries fan out to every database.
+ */
+@Component
+@RequiredArgsConstructor
+public class ShardedOrderRepository {
+    
+    private final OrderRepository orderRepository;
+    private final OrderShardRouter orderShardRouter;
+    private final TransactionTemplate transactionTemplate;
+    
+    public Optional<Order> findByOrderId(String orderId) {
+        return orderShardRouter.onShardOf(orderId, () -> orderRepository.findByOrderId(orderId));
+    }
+    
+    public Map<Order.OrderStatus, Long> countByStatusIn(Collection<Order.OrderStatus> statuses) {
+        Map<Order.OrderStatus, Long> counts = new EnumMap<>(Order.OrderStatus.class);
+        orderShardRouter.forEachDatabase(database -> {
+            for (Object[] row : orderRepository.countByStatusIn(statuses)) {
+                counts.merge((Order.OrderStatus) row[0], ((Number) row[1]).longValue(), Long::sum);
+            }
+        });
+        return counts;
+    }
+    
+    public void forEachByStatusIn(Collection<Order.OrderStatus> statuses, Consumer<OrderRepository.SagaStep> action) {
+        orderShardRouter.forEachDatabase(database -> transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<OrderRepository.SagaStep> steps = orderRepository.streamByStatusIn(statuses)) {
+                steps.forEach(action);
+            }
+        }));
+    }
+}
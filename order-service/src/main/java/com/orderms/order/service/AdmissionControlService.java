@@ -0,0 +1,116 @@
+package com.orderms.order.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.ErrorResponseException;
+
+/**
+ * Admission control for new sagas. Requests are rejected with 503 once the number
+ * of in-flight sagas reaches the ceiling, and with 429 when they exceed the
+ * token-bucket rate, so overload is shed at the door instead of piling up in
+ * PAYMENT_PROCESSING.
+ */
+@Service
+@Slf4j
+public class AdmissionControlService {
+
+    private final SagaLoadTracker sagaLoadTracker;
+    private final boolean enabled;
+    private final long maxInFlight;
+    private final long saturationRetryAfterSeconds;
+    private final TokenBucket tokenBucket;
+    private final Counter rateLimited;
+    private final Counter saturated;
+
+    public AdmissionControlService(SagaLoadTracker sagaLoadTracker,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${orders.admission.enabled:true}") boolean enabled,
+                                   @Value("${orders.admission.rate-per-second:50}") double ratePerSecond,
+                                   @Value("${orders.admission.burst:100}") double burst,
+                                   @Value("${orders.admission.max-in-flight:1000}") long maxInFlight,
+                                   @Value("${orders.admission.retry-after-seconds:5}") long saturationRetryAfterSeconds) {
+        this.sagaLoadTracker = sagaLoadTracker;
+        this.enabled = enabled;
+        this.maxInFlight = maxInFlight;
+        this.saturationRetryAfterSeconds = saturationRetryAfterSeconds;
+        this.tokenBucket = new TokenBucket(ratePerSecond, burst);
+        this.rateLimited = Counter.builder("orders.admission.rejected").tag("reason", "rate").register(meterRegistry);
+        this.saturated = Counter.builder("orders.admission.rejected").tag("reason", "saturation").register(meterRegistry);
+
+        Gauge.builder("orders.admission.saturation", this,
+                        service -> (double) service.sagaLoadTracker.inFlight() / service.maxInFlight)
+                .description("In-flight sagas as a fraction of the admission ceiling")
+                .register(meterRegistry);
+        Gauge.builder("orders.admission.tokens", tokenBucket, TokenBucket::available)
+                .register(meterRegistry);
+    }
+
+    public void admit() {
+        if (!enabled) {
+            return;
+        }
+
+        long inFlight = sagaLoadTracker.inFlight();
+        if (inFlight >= maxInFlight) {
+            saturated.increment();
+            log.warn("Rejecting order: {} sagas in flight (ceiling {})", inFlight, maxInFlight);
+            throw reject(HttpStatus.SERVICE_UNAVAILABLE, saturationRetryAfterSeconds,
+                    "Order processing is saturated, please retry later");
+        }
+
+        long waitMillis = tokenBucket.tryAcquire();
+        if (waitMillis > 0) {
+            rateLimited.increment();
+            throw reject(HttpStatus.TOO_MANY_REQUESTS, (waitMillis + 999) / 1000,
+                    "Order rate limit exceeded, please retry later");
+        }
+    }
+
+    private ErrorResponseException reject(HttpStatus status, long retryAfterSeconds, String detail) {
+        ErrorResponseException e = new ErrorResponseException(status);
+        e.setDetail(detail);
+        e.getHeaders().set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfterSeconds)));
+        return e;
+    }
+
+    static class TokenBucket {
+        private final double ratePerSecond;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillNanos;
+
+        TokenBucket(double ratePerSecond, double capacity) {
+            this.ratePerSecond = ratePerSecond;
+            this.capacity = capacity;
+            this.tokens = capacity;
+            this.lastRefillNanos = System.nanoTime();
+        }
+
+        // Takes a token and returns 0, or returns the milliseconds until one is available
+        synchronized long tryAcquire() {
+            refill();
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / ratePerSecond * 1000);
+        }
+
+        synchronized double available() {
+            refill();
+            return tokens;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * ratePerSecond);
+            lastRefillNanos = now;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.orderms.order.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orderms.order.controller.OrderController.CreateOrderRequest;
+import com.orderms.order.controller.OrderController.OrderResponse;
+import com.orderms.order.model.IdempotencyRecord;
+import com.orderms.order.repository.IdempotencyRecordRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.ErrorResponseException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key handling for order creation. Completed keys replay the stored
+ * response without starting another saga; concurrent duplicates on this instance
+ * wait for the first request's result, and a duplicate racing on another instance
+ * gets 409 with Retry-After. Keys live in {@code order_idempotency_keys} with a TTL,
+ * fronted by a bounded in-memory cache. An in-flight claim only holds a short lease,
+ * so a key whose first request died before completing becomes usable again.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    private final IdempotencyRecordRepository repository;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Pending> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, IdempotencyRecord> completed;
+    private final long ttlHours;
+    private final long leaseSeconds;
+    private final long waitTimeoutMs;
+
+    public IdempotencyService(IdempotencyRecordRepository repository,
+                              ObjectMapper objectMapper,
+                              @Value("${orders.idempotency.cache-size:10000}") int cacheSize,
+                              @Value("${orders.idempotency.ttl-hours:24}") long ttlHours,
+                              @Value("${orders.idempotency.lease-seconds:30}") long leaseSeconds,
+                              @Value("${orders.idempotency.wait-timeout-ms:5000}") long waitTimeoutMs) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.completed = Collections.synchronizedMap(new LinkedHashMap<>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        this.ttlHours = ttlHours;
+        this.leaseSeconds = leaseSeconds;
+        this.waitTimeoutMs = waitTimeoutMs;
+    }
+
+    public OrderResponse execute(String key, CreateOrderRequest request, Supplier<OrderResponse> action) {
+        String requestHash = hash(request);
+
+        IdempotencyRecord cached = completed.get(key);
+        if (cached != null && cached.getExpiresAt().isAfter(LocalDateTime.now())) {
+            return replay(cached, requestHash);
+        }
+
+        Pending pending = new Pending(requestHash, new CompletableFuture<>());
+        Pending existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            if (!existing.requestHash().equals(requestHash)) {
+                throw mismatch(key);
+            }
+            log.info("Coalescing duplicate request for Idempotency-Key: {}", key);
+            return await(key, existing.result());
+        }
+
+        try {
+            OrderResponse response = executeOnce(key, requestHash, action);
+            pending.result().complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            pending.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, pending);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${orders.idempotency.prune-interval-ms:600000}")
+    public void pruneExpired() {
+        int deleted = repository.deleteExpired(LocalDateTime.now());
+        if (deleted > 0) {
+            log.info("Pruned {} expired idempotency keys", deleted);
+        }
+    }
+
+    private OrderResponse executeOnce(String key, String requestHash, Supplier<OrderResponse> action) {
+        Optional<IdempotencyRecord> stored = repository.findByIdempotencyKey(key);
+        if (stored.isPresent()) {
+            IdempotencyRecord record = stored.get();
+            if (record.getExpiresAt().isAfter(LocalDateTime.now())) {
+                if (!record.isCompleted()) {
+                    throw conflict(key);
+                }
+                completed.put(key, record);
+                return replay(record, requestHash);
+            }
+            repository.delete(record);
+        }
+
+        // Claim the key before starting the saga so another instance cannot start a second one.
+        // Until the response is stored the claim expires after a short lease, not the full TTL
+        IdempotencyRecord record;
+        try {
+            record = repository.saveAndFlush(IdempotencyRecord.builder()
+                    .idempotencyKey(key)
+                    .requestHash(requestHash)
+                    .expiresAt(LocalDateTime.now().plusSeconds(leaseSeconds))
+                    .build());
+        } catch (DataIntegrityViolationException e) {
+            throw conflict(key);
+        }
+
+        OrderResponse response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            // Release the key so the client can retry the failed request
+            repository.delete(record);
+            throw e;
+        }
+
+        record.setOrderId(response.getOrderId());
+        record.setResponseBody(serialize(response));
+        record.setExpiresAt(LocalDateTime.now().plusHours(ttlHours));
+        try {
+            repository.save(record);
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Idempotency-Key {} was reclaimed after its lease expired; response not stored", key);
+            return response;
+        }
+        completed.put(key, record);
+        return response;
+    }
+
+    private OrderResponse replay(IdempotencyRecord record, String requestHash) {
+        if (!record.getRequestHash().equals(requestHash)) {
+            throw mismatch(record.getIdempotencyKey());
+        }
+        log.info("Replaying stored response for Idempotency-Key: {} (order {})",
+                record.getIdempotencyKey(), record.getOrderId());
+        try {
+            return objectMapper.readValue(record.getResponseBody(), OrderResponse.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Unreadable stored response for Idempotency-Key: " + record.getIdempotencyKey(), e);
+        }
+    }
+
+    private OrderResponse await(String key, CompletableFuture<OrderResponse> pending) {
+        try {
+            return pending.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            throw conflict(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw conflict(key);
+        }
+    }
+
+    private ErrorResponseException mismatch(String key) {
+        ErrorResponseException e = new ErrorResponseException(HttpStatus.UNPROCESSABLE_ENTITY);
+        e.setDetail("Idempotency-Key " + key + " was already used with a different request");
+        return e;
+    }
+
+    private ErrorResponseException conflict(String key) {
+        ErrorResponseException e = new ErrorResponseException(HttpStatus.CONFLICT);
+        e.setDetail("A request with Idempotency-Key " + key + " is still being processed");
+        e.getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+        return e;
+    }
+
+    private String hash(CreateOrderRequest request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(serialize(request).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not serialize " + value.getClass().getSimpleName(), e);
+        }
+    }
+
+    private record Pending(String requestHash, CompletableFuture<OrderResponse> result) {
+    }
+}
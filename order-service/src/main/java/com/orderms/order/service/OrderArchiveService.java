@@ -0,0 +1,133 @@
+package com.orderms.order.service;
+
+import com.orderms.common.service.PartitionedArchive;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves COMPLETED and CANCELLED orders that have not changed for
+ * {@code orders.archive.retention-days} out of {@code orders}/{@code order_items} into
+ * {@code orders_archive}, which is range-partitioned by month of creation. Items are
+ * folded into an lz4-compressed jsonb column of the archived order, so the hot tables
+ * only hold in-flight and recently finished orders however much history piles up.
+ * {@code OrderRepository.findArchivedByOrderId} still finds archived orders, read-only.
+ * Runs are done on a thread of their own rather than on the scheduler's.
+ */
+@Service
+@Slf4j
+public class OrderArchiveService {
+
+    static final String ITEMS_JSON =
+            "(SELECT coalesce(jsonb_agg(jsonb_build_object('productId', i.product_id, 'productName', i.product_name, " +
+            "'quantity', i.quantity, 'price', i.price) ORDER BY i.id), '[]'::jsonb) FROM order_items i WHERE i.order_id = o.id)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PartitionedArchive archive;
+    private final OrderShardRouter orderShardRouter;
+    private final boolean enabled;
+    private final long retentionDays;
+    private final int batchSize;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final ExecutorService runner =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("order-archive-"));
+
+    public OrderArchiveService(JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate,
+                               OrderShardRouter orderShardRouter,
+                               @Value("${orders.archive.enabled:true}") boolean enabled,
+                               @Value("${orders.archive.retention-days:30}") long retentionDays,
+                               @Value("${orders.archive.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.archive = new PartitionedArchive(jdbcTemplate, "orders", "orders_archive");
+        this.orderShardRouter = orderShardRouter;
+        this.enabled = enabled;
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${orders.archive.interval-ms:3600000}",
+               initialDelayString = "${orders.archive.initial-delay-ms:300000}")
+    public void scheduledArchive() {
+        if (enabled && running.compareAndSet(false, true)) {
+            runner.execute(() -> {
+                try {
+                    archive();
+                } catch (RuntimeException e) {
+                    log.error("Order archiving failed", e);
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        runner.shutdownNow();
+    }
+
+    private void archive() {
+        orderShardRouter.forEachDatabase(database -> {
+            if (!Boolean.TRUE.equals(transactionTemplate.execute(status -> prepare()))) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            int total = 0;
+            int moved;
+            do {
+                moved = transactionTemplate.execute(status -> archiveBatch(LocalDateTime.now().minusDays(retentionDays)));
+                total += moved;
+            } while (moved == batchSize);
+            if (total > 0) {
+                log.info("Archived {} orders older than {} days from database {} in {} ms",
+                        total, retentionDays, database, System.currentTimeMillis() - start);
+            }
+        });
+    }
+
+    // Schema work for the run, done once under the archiver lock; false if another instance is archiving
+    private boolean prepare() {
+        if (!archive.tryLock()) {
+            return false;
+        }
+        // Also picks up columns Hibernate has added to orders since the last run
+        archive.initialize("items jsonb COMPRESSION lz4");
+        archive.createIndex("order_id");
+        archive.createIndex("created_at", "order_id");
+        return true;
+    }
+
+    private int archiveBatch(LocalDateTime cutoff) {
+        if (!archive.tryLock()) {
+            return 0;
+        }
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM orders WHERE status IN ('COMPLETED', 'CANCELLED') AND updated_at < ? " +
+                "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED", Long.class, cutoff, batchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Long[] batch = ids.toArray(Long[]::new);
+        archive.ensurePartitions(batch);
+        jdbcTemplate.update("INSERT INTO orders_archive (" + archive.columnList("") + ", items) " +
+                "SELECT " + archive.columnList("o") + ", " + ITEMS_JSON + " FROM orders o WHERE o.id = ANY(?)",
+                (Object) batch);
+        jdbcTemplate.update("DELETE FROM order_items WHERE order_id = ANY(?)", (Object) batch);
+        jdbcTemplate.update("DELETE FROM orders WHERE id = ANY(?)", (Object) batch);
+        return ids.size();
+    }
+}
@@ -0,0 +1,360 @@
+package com.orderms.order.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orderms.order.model.Order;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.ErrorResponseException;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams the orders matching an {@link ExportFilter} as NDJSON or CSV. Hot and
+ * archived orders are both included, in {@code (created_at, order_id)} order. Rows
+ * are read in keyset-paginated chunks, and each chunk runs in its own read-only
+ * transaction, so a read replica serves it when one is configured. Within a chunk the
+ * rows come through a server-side cursor of {@code fetch-size} rows and go straight to
+ * the response, so memory stays flat however many orders match. Every row carries the
+ * cursor that resumes the export after it.
+ */
+@Service
+@Slf4j
+public class OrderExportService {
+
+    private static final String COLUMNS =
+            "order_id, customer_id, customer_email, total_amount, status, priority, created_at, updated_at";
+    private static final String CSV_HEADER =
+            "orderId,customerId,customerEmail,totalAmount,status,priority,createdAt,updatedAt,items,cursor";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final OrderShardRouter orderShardRouter;
+    private final ObjectMapper objectMapper;
+    private final Semaphore exports;
+    private final int chunkSize;
+
+    public OrderExportService(DataSource dataSource,
+                              PlatformTransactionManager transactionManager,
+                              OrderShardRouter orderShardRouter,
+                              ObjectMapper objectMapper,
+                              @Value("${orders.export.max-concurrent:2}") int maxConcurrent,
+                              @Value("${orders.export.chunk-size:10000}") int chunkSize,
+                              @Value("${orders.export.fetch-size:500}") int fetchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(fetchSize);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.orderShardRouter = orderShardRouter;
+        this.objectMapper = objectMapper;
+        this.exports = new Semaphore(maxConcurrent);
+        this.chunkSize = chunkSize;
+    }
+
+    public void export(ExportFilter filter, Format format, Cursor after, HttpServletResponse response) throws IOException {
+        if (!exports.tryAcquire()) {
+            ErrorResponseException e = new ErrorResponseException(HttpStatus.TOO_MANY_REQUESTS);
+            e.setDetail("Too many exports running, try again later");
+            e.getHeaders().set(HttpHeaders.RETRY_AFTER, "30");
+            throw e;
+        }
+        long start = System.currentTimeMillis();
+        long[] exported = {0};
+        try {
+            response.setContentType(format.contentType);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                    "attachment; filename=\"orders." + format.name().toLowerCase() + "\"");
+            RowWriter writer = format == Format.CSV
+                    ? new CsvWriter(response.getOutputStream())
+                    : new NdjsonWriter(objectMapper, response.getOutputStream());
+
+            // A customer's orders all live on the database of its shard
+            Integer only = filter.customerId() != null
+                    ? orderShardRouter.databaseOf(orderShardRouter.shardForCustomer(filter.customerId()))
+                    : null;
+            int first = after != null ? after.database() : 0;
+            orderShardRouter.forEachDatabase(database -> {
+                if (database >= first && (only == null || only == database)) {
+                    exported[0] += exportDatabase(database, filter,
+                            after != null && after.database() == database ? after : null, writer);
+                }
+            });
+            writer.finish();
+            log.info("Exported {} orders as {} in {} ms", exported[0], format, System.currentTimeMillis() - start);
+        } catch (UncheckedIOException e) {
+            // Usually the client went away; it can resume from the last cursor it received
+            log.warn("Order export aborted after {} orders: {}", exported[0], e.getCause().getMessage());
+        } finally {
+            exports.release();
+        }
+    }
+
+    private long exportDatabase(int database, ExportFilter filter, Cursor after, RowWriter writer) {
+        boolean archived = Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass('orders_archive') IS NOT NULL", Boolean.class));
+        long total = 0;
+        Cursor position = after;
+        Chunk chunk;
+        do {
+            Cursor from = position;
+            chunk = readOnlyTransaction.execute(status -> exportChunk(database, filter, from, archived, writer));
+            total += chunk.rows();
+            position = chunk.last();
+            writer.flush();
+        } while (chunk.rows() == chunkSize);
+        return total;
+    }
+
+    private Chunk exportChunk(int database, ExportFilter filter, Cursor after, boolean archived, RowWriter writer) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT * FROM (")
+                .append(select("SELECT " + COLUMNS + ", " + OrderArchiveService.ITEMS_JSON + " AS items FROM orders o",
+                        filter, after, args));
+        if (archived) {
+            sql.append(" UNION ALL ")
+                    .append(select("SELECT " + COLUMNS + ", items FROM orders_archive", filter, after, args));
+        }
+        sql.append(") e ORDER BY created_at, order_id LIMIT ?");
+        args.add(chunkSize);
+
+        int[] rows = {0};
+        Cursor[] last = {after};
+        jdbcTemplate.query(sql.toString(), rs -> {
+            last[0] = new Cursor(database, rs.getTimestamp("created_at").toLocalDateTime(), rs.getString("order_id"));
+            try {
+                writer.row(rs, last[0].encode());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            rows[0]++;
+        }, args.toArray());
+        return new Chunk(rows[0], last[0]);
+    }
+
+    private String select(String select, ExportFilter filter, Cursor after, List<Object> args) {
+        StringBuilder sql = new StringBuilder(select).append(" WHERE created_at >= ? AND created_at < ?");
+        args.add(Timestamp.valueOf(filter.from()));
+        args.add(Timestamp.valueOf(filter.to()));
+        if (after != null) {
+            sql.append(" AND (created_at, order_id) > (?, ?)");
+            args.add(Timestamp.valueOf(after.createdAt()));
+            args.add(after.orderId());
+        }
+        if (!filter.statuses().isEmpty()) {
+            sql.append(" AND status IN (")
+                    .append(String.join(", ", Collections.nCopies(filter.statuses().size(), "?")))
+                    .append(")");
+            filter.statuses().forEach(status -> args.add(status.name()));
+        }
+        if (filter.customerId() != null) {
+            sql.append(" AND customer_id = ?");
+            args.add(filter.customerId());
+        }
+        return sql.toString();
+    }
+
+    private static ErrorResponseException badRequest(String detail) {
+        ErrorResponseException e = new ErrorResponseException(HttpStatus.BAD_REQUEST);
+        e.setDetail(detail);
+        return e;
+    }
+
+    public enum Format {
+        NDJSON("application/x-ndjson"),
+        CSV("text/csv;charset=UTF-8");
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public static Format parse(String format) {
+            try {
+                return valueOf(format.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw badRequest("Unknown export format: " + format);
+            }
+        }
+    }
+
+    /**
+     * Orders created on or after {@code from} and before {@code to}.
+     */
+    public record ExportFilter(LocalDateTime from, LocalDateTime to, Set<Order.OrderStatus> statuses, String customerId) {
+
+        public static ExportFilter of(LocalDate from, LocalDate to, List<String> statuses, String customerId) {
+            Set<Order.OrderStatus> parsed = EnumSet.noneOf(Order.OrderStatus.class);
+            for (String status : statuses != null ? statuses : List.<String>of()) {
+                try {
+                    parsed.add(Order.OrderStatus.valueOf(status.trim().toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    throw badRequest("Unknown order status: " + status);
+                }
+            }
+            return new ExportFilter(
+                    from != null ? from.atStartOfDay() : LocalDateTime.of(1970, 1, 1, 0, 0),
+                    // to is inclusive for callers
+                    to != null ? to.plusDays(1).atStartOfDay() : LocalDate.now().plusDays(1).atStartOfDay(),
+                    parsed,
+                    customerId);
+        }
+    }
+
+    /**
+     * Keyset position of the last exported row: its database, then {@code (created_at, order_id)}.
+     */
+    public record Cursor(int database, LocalDateTime createdAt, String orderId) {
+
+        String encode() {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    (database + "|" + createdAt + "|" + orderId).getBytes(StandardCharsets.UTF_8));
+        }
+
+        public static Cursor decode(String token) {
+            if (token == null || token.isBlank()) {
+                return null;
+            }
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", 3);
+                return new Cursor(Integer.parseInt(parts[0]), LocalDateTime.parse(parts[1]), parts[2]);
+            } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+                throw badRequest("Invalid export cursor");
+            }
+        }
+    }
+
+    private record Chunk(int rows, Cursor last) {
+    }
+
+    private interface RowWriter {
+        void row(ResultSet rs, String cursor) throws IOException, SQLException;
+
+        void flush();
+
+        void finish();
+    }
+
+    private static class NdjsonWriter implements RowWriter {
+        private final JsonGenerator json;
+
+        NdjsonWriter(ObjectMapper objectMapper, OutputStream out) throws IOException {
+            this.json = objectMapper.getFactory().createGenerator(out);
+            this.json.setRootValueSeparator(new SerializedString("\n"));
+        }
+
+        @Override
+        public void row(ResultSet rs, String cursor) throws IOException, SQLException {
+            json.writeStartObject();
+            json.writeStringField("orderId", rs.getString("order_id"));
+            json.writeStringField("customerId", rs.getString("customer_id"));
+            json.writeStringField("customerEmail", rs.getString("customer_email"));
+            json.writeNumberField("totalAmount", rs.getDouble("total_amount"));
+            json.writeStringField("status", rs.getString("status"));
+            json.writeStringField("priority", rs.getString("priority"));
+            json.writeStringField("createdAt", rs.getTimestamp("created_at").toLocalDateTime().toString());
+            json.writeStringField("updatedAt", rs.getTimestamp("updated_at").toLocalDateTime().toString());
+            json.writeFieldName("items");
+            json.writeRawValue(rs.getString("items"));
+            json.writeStringField("cursor", cursor);
+            json.writeEndObject();
+        }
+
+        @Override
+        public void flush() {
+            try {
+                json.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void finish() {
+            try {
+                json.writeRaw('\n');
+                json.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static class CsvWriter implements RowWriter {
+        private final Writer out;
+
+        CsvWriter(OutputStream out) throws IOException {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            this.out.write(CSV_HEADER);
+            this.out.write("\r\n");
+        }
+
+        @Override
+        public void row(ResultSet rs, String cursor) throws IOException, SQLException {
+            out.write(String.join(",",
+                    field(rs.getString("order_id")),
+                    field(rs.getString("customer_id")),
+                    field(rs.getString("customer_email")),
+                    String.valueOf(rs.getDouble("total_amount")),
+                    field(rs.getString("status")),
+                    field(rs.getString("priority")),
+                    rs.getTimestamp("created_at").toLocalDateTime().toString(),
+                    rs.getTimestamp("updated_at").toLocalDateTime().toString(),
+                    field(rs.getString("items")),
+                    cursor));
+            out.write("\r\n");
+        }
+
+        @Override
+        public void flush() {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void finish() {
+            flush();
+        }
+
+        private static String field(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.orderms.order.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orderms.order.controller.OrderController.OrderItemDto;
+import com.orderms.order.controller.OrderController.OrderResponse;
+import com.orderms.order.controller.OrderController.StatusChangeDto;
+import com.orderms.order.kafka.OrderStatusChangedEvent;
+import com.orderms.order.model.Order;
+import com.orderms.order.model.OrderStatusHistory;
+import com.orderms.order.model.OrderView;
+import com.orderms.order.repository.OrderStatusHistoryRepository;
+import com.orderms.order.repository.OrderViewRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Query side of the orders: {@code order_views} and {@code order_status_history} are
+ * projected asynchronously from the status transitions both saga engines publish, so
+ * reads never contend with the saga writes on the {@code orders} row and every
+ * transition is kept. Orders the projection has not caught up with yet are answered
+ * from the write model.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OrderReadModelService {
+    
+    private static final TypeReference<List<OrderItemDto>> ITEMS_TYPE = new TypeReference<>() {};
+    
+    private final OrderViewRepository orderViewRepository;
+    private final OrderStatusHistoryRepository orderStatusHistoryRepository;
+    private final OrderService orderService;
+    private final ObjectMapper objectMapper;
+    
+    /**
+     * Applies the transition to the view and its history; false if it was already projected.
+     */
+    @Transactional
+    public boolean project(OrderStatusChangedEvent event) {
+        OrderView view = orderViewRepository.findById(event.getOrderId())
+                .orElseGet(() -> OrderView.builder()
+                        .orderId(event.getOrderId())
+                        .status(event.getStatus())
+                        .createdAt(event.getOccurredAt())
+                        .updatedAt(event.getOccurredAt())
+                        .build());
+        
+        if (event.getCustomerId() != null) {
+            view.setCustomerId(event.getCustomerId());
+            view.setCustomerEmail(event.getCustomerEmail());
+            view.setTotalAmount(event.getTotalAmount());
+            view.setPriority(event.getPriority());
+            view.setItems(serialize(event.getItems()));
+        }
+        if (event.getOccurredAt().isBefore(view.getCreatedAt())) {
+            view.setCreatedAt(event.getOccurredAt());
+        }
+        // Transitions of one order can be published slightly out of order by different instances
+        if (!event.getOccurredAt().isBefore(view.getUpdatedAt())) {
+            view.setStatus(event.getStatus());
+            view.setUpdatedAt(event.getOccurredAt());
+        }
+        orderViewRepository.save(view);
+        
+        // Redeliveries carry the same transition; a partition's events are projected one at a time
+        if (orderStatusHistoryRepository.existsByOrderIdAndStatusAndOccurredAt(
+                event.getOrderId(), event.getStatus(), event.getOccurredAt())) {
+            log.debug("Transition to {} for order {} already projected", event.getStatus(), event.getOrderId());
+            return false;
+        }
+        orderStatusHistoryRepository.save(OrderStatusHistory.builder()
+                .orderId(event.getOrderId())
+                .fromStatus(event.getFromStatus())
+                .status(event.getStatus())
+                .message(event.getMessage())
+                .occurredAt(event.getOccurredAt())
+                .build());
+        log.debug("Projected {} -> {} for order: {}", event.getFromStatus(), event.getStatus(), event.getOrderId());
+        return true;
+    }
+    
+    @Transactional(readOnly = true)
+    public OrderResponse getOrder(String orderId) {
+        Optional<OrderView> view = orderViewRepository.findById(orderId)
+                .filter(found -> found.getCustomerId() != null);
+        if (view.isEmpty()) {
+            return orderService.getOrder(orderId);
+        }
+        return mapToResponse(view.get());
+    }
+    
+    @Transactional(readOnly = true)
+    public List<StatusChangeDto> getHistory(String orderId) {
+        List<OrderStatusHistory> history = orderStatusHistoryRepository.findByOrderIdOrderByOccurredAtAscIdAsc(orderId);
+        if (history.isEmpty()) {
+            // Unknown orders fail here; a brand-new one simply has no projected transitions yet
+            orderService.getOrder(orderId);
+        }
+        return history.stream()
+                .map(entry -> {
+                    StatusChangeDto change = new StatusChangeDto();
+                    change.setFromStatus(entry.getFromStatus() != null ? entry.getFromStatus().name() : null);
+                    change.setStatus(entry.getStatus().name());
+                    change.setMessage(entry.getMessage());
+                    change.setOccurredAt(entry.getOccurredAt().toString());
+                    return change;
+                })
+                .collect(Collectors.toList());
+    }
+    
+    private OrderResponse mapToResponse(OrderView view) {
+        OrderResponse response = new OrderResponse();
+        response.setOrderId(view.getOrderId());
+        response.setCustomerId(view.getCustomerId());
+        response.setTotalAmount(view.getTotalAmount());
+        response.setStatus(view.getStatus().name());
+        response.setPriority(view.getPriority() != null ? view.getPriority() : Order.Priority.STANDARD.name());
+        response.setItems(deserialize(view.getItems()));
+        response.setCreatedAt(view.getCreatedAt().toString());
+        response.setUpdatedAt(view.getUpdatedAt().toString());
+        return response;
+    }
+    
+    private String serialize(Object items) {
+        try {
+            return objectMapper.writeValueAsString(items != null ? items : List.of());
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Could not serialize order items", e);
+        }
+    }
+    
+    private List<OrderItemDto> deserialize(String items) {
+        if (items == null) {
+            return List.of();
+        }
+        try {
+            return objectMapper.readValue(items, ITEMS_TYPE);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Unreadable order items in read model", e);
+        }
+    }
+}
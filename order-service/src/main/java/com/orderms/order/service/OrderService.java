@@ -1,24 +1,37 @@
 package com.orderms.order.service;
 
+import com.orderms.common.config.HotPathLogSampler;
+import com.orderms.common.kafka.PriorityLanes;
+import com.orderms.common.kafka.SagaTiming;
 import com.orderms.order.controller.OrderController.CreateOrderRequest;
 import com.orderms.order.controller.OrderController.OrderResponse;
 import com.orderms.order.controller.OrderController.OrderItemDto;
 import com.orderms.order.kafka.*;
 import com.orderms.order.model.Order;
 import com.orderms.order.model.OrderItem;
+import com.orderms.order.repository.OrderArchiveRepository.ArchivedOrder;
 import com.orderms.order.repository.OrderRepository;
 import io.micrometer.observation.annotation.Observed;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.ErrorResponseException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
 import java.util.Map;
-import java.util.UUID;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
@@ -30,19 +43,42 @@ public class OrderService {
     
     private final OrderRepository orderRepository;
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final SagaLoadTracker sagaLoadTracker;
+    private final SagaDeadlineService sagaDeadlineService;
+    private final SagaStateCache sagaStateCache;
+    private final ObjectProvider<SagaStateQueryService> sagaStateQueryService;
+    private final OrderShardRouter orderShardRouter;
+    private final SagaTiming sagaTiming;
     
     // Store SSE emitters for real-time updates
     private final Map<String, SseEmitter> emitters = new ConcurrentHashMap<>();
     
     private static final String ORDER_CREATED_TOPIC = "order-created";
     private static final String REFUND_PAYMENT_TOPIC = "refund-payment";
+    private static final String INVENTORY_HOLD_TOPIC = "inventory-hold";
+    private static final String INVENTORY_RELEASE_TOPIC = "inventory-release";
+    private static final String ORDER_CONFIRMED_TOPIC = "order-confirmed";
+    private static final String ORDER_STATUS_CHANGED_TOPIC = "order-status-changed";
+    
+    // "sequential": order -> payment -> inventory; "parallel": payment and inventory hold at once
+    @Value("${orders.saga.mode:sequential}")
+    private String sagaMode;
+    
+    @Value("${orders.saga.deadline.notification-max-attempts:3}")
+    private int notificationMaxAttempts;
+    
+    // "jpa": handlers below drive the saga; "streams": SagaStreamProcessor does, the table is a projection
+    @Value("${orders.saga.engine:jpa}")
+    private String sagaEngine;
     
     @Transactional
     public OrderResponse createOrder(CreateOrderRequest request) {
-        log.info("Creating order for customer: {}", request.getCustomerId());
+        log.debug("Creating order for customer: {}", request.getCustomerId());
         
-        // Generate unique order ID
-        String orderId = "ORD-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        // Generate unique order ID (carries the customer's shard when sharding is on)
+        String orderId = orderShardRouter.newOrderId(request.getCustomerId());
+        boolean parallel = "parallel".equalsIgnoreCase(sagaMode);
+        Order.Priority priority = parsePriority(request.getPriority());
         
         // Create order entity
         Order order = Order.builder()
@@ -50,7 +86,9 @@ public class OrderService {
                 .customerId(request.getCustomerId())
                 .customerEmail(request.getCustomerEmail())
                 .totalAmount(request.getTotalAmount())
-                .status(Order.OrderStatus.PENDING)
+                .status(Order.OrderStatus.PAYMENT_PROCESSING)
+                .parallelSaga(parallel)
+                .priority(priority)
                 .build();
         
         // Add items to order
@@ -64,12 +102,21 @@ public class OrderService {
             order.addItem(item);
         });
         
-        // Save order
-        Order savedOrder = orderRepository.save(order);
-        log.info("Order created with ID: {}", orderId);
-        
-        // Update status to PAYMENT_PROCESSING
-        updateOrderStatus(savedOrder, Order.OrderStatus.PAYMENT_PROCESSING);
+        Order savedOrder;
+        if (isStreamsEngine()) {
+            // The saga state starts from order-created in the streams engine; the row follows as a projection
+            order.setCreatedAt(LocalDateTime.now());
+            order.setUpdatedAt(order.getCreatedAt());
+            savedOrder = order;
+        } else {
+            // Saved straight into PAYMENT_PROCESSING: the payment starts as soon as it commits
+            savedOrder = orderRepository.save(order);
+            sagaLoadTracker.onCreated(savedOrder.getStatus());
+            sagaDeadlineService.onTransition(orderId, savedOrder.getStatus(), savedOrder.getUpdatedAt());
+            sagaStateCache.created(savedOrder);
+        }
+        log.atInfo().addMarker(HotPathLogSampler.HOT_PATH).addKeyValue("orderId", orderId)
+                .addKeyValue("customerId", request.getCustomerId()).log("Order created");
         
         // Publish order created event to Kafka (triggers payment)
         OrderCreatedEvent event = OrderCreatedEvent.builder()
@@ -85,57 +132,144 @@ public class OrderService {
                                 .price(item.getPrice())
                                 .build())
                         .collect(Collectors.toList()))
+                .inventoryHold(parallel)
+                .priority(priority.name())
                 .build();
         
-        kafkaTemplate.send(ORDER_CREATED_TOPIC, orderId, event);
-        log.info("Published OrderCreatedEvent for order: {}", orderId);
+        publishAfterCommit(PriorityLanes.topic(ORDER_CREATED_TOPIC, priority.name()), orderId, event);
+        log.debug("Published OrderCreatedEvent for order: {}", orderId);
+        
+        if (!isStreamsEngine()) {
+            // First entry of the read model's timeline; the streams engine publishes its own
+            publishAfterCommit(ORDER_STATUS_CHANGED_TOPIC, orderId, OrderStatusChangedEvent.builder()
+                    .orderId(orderId)
+                    .status(savedOrder.getStatus())
+                    .message("Order created")
+                    .occurredAt(savedOrder.getCreatedAt())
+                    .customerId(savedOrder.getCustomerId())
+                    .customerEmail(savedOrder.getCustomerEmail())
+                    .totalAmount(savedOrder.getTotalAmount())
+                    .priority(priority.name())
+                    .items(event.getItems())
+                    .build());
+        }
+        
+        if (parallel) {
+            // Hold inventory while payment is being authorized
+            publishAfterCommit(INVENTORY_HOLD_TOPIC, orderId, InventoryHoldCommand.builder()
+                    .orderId(orderId)
+                    .items(event.getItems())
+                    .build());
+            log.debug("Published InventoryHoldCommand for order: {}", orderId);
+        }
         
         return mapToResponse(savedOrder);
     }
     
     @Transactional
     public void handlePaymentCompleted(PaymentCompletedEvent event) {
-        log.info("Payment completed for order: {}", event.getOrderId());
+        log.debug("Payment completed for order: {}", event.getOrderId());
         
-        Order order = orderRepository.findByOrderId(event.getOrderId())
+        Order order = sagaStateCache.find(event.getOrderId())
                 .orElseThrow(() -> new RuntimeException("Order not found: " + event.getOrderId()));
         
         order.setPaymentId(event.getPaymentId());
-        updateOrderStatus(order, Order.OrderStatus.PAYMENT_COMPLETED);
         
-        // Move to inventory reservation phase
-        updateOrderStatus(order, Order.OrderStatus.INVENTORY_RESERVING);
+        if (order.getStatus() == Order.OrderStatus.CANCELLED) {
+            // The inventory hold failed or the saga timed out: compensate the late payment
+            requestRefund(order, "Order already cancelled");
+            sagaStateCache.write(order);
+            return;
+        }
+        
+        String message = "Payment completed successfully";
+        updateOrderStatus(order, Order.OrderStatus.PAYMENT_COMPLETED, message);
         
-        sendStatusUpdate(event.getOrderId(), "Payment completed successfully");
+        if (order.isParallelSaga() && order.getReservationId() != null) {
+            confirmOrder(order, message);
+        } else {
+            // Move to (or wait for) the inventory reservation phase
+            updateOrderStatus(order, Order.OrderStatus.INVENTORY_RESERVING, message);
+        }
+        sagaStateCache.write(order);
+        
+        sendStatusUpdate(event.getOrderId(), message);
     }
     
     @Transactional
     public void handlePaymentFailed(PaymentFailedEvent event) {
         log.error("Payment failed for order: {}. Reason: {}", event.getOrderId(), event.getReason());
         
-        Order order = orderRepository.findByOrderId(event.getOrderId())
+        Order order = sagaStateCache.find(event.getOrderId())
                 .orElseThrow(() -> new RuntimeException("Order not found: " + event.getOrderId()));
         
-        updateOrderStatus(order, Order.OrderStatus.PAYMENT_FAILED);
-        updateOrderStatus(order, Order.OrderStatus.CANCELLED);
+        if (order.getStatus() == Order.OrderStatus.CANCELLED) {
+            log.info("Order {} already cancelled", event.getOrderId());
+            return;
+        }
         
-        sendStatusUpdate(event.getOrderId(), "Payment failed: " + event.getReason());
+        // Parallel saga: release a hold that already succeeded (a later hold is released on arrival)
+        if (order.isParallelSaga() && order.getReservationId() != null) {
+            requestInventoryRelease(order, "Payment failed");
+        }
+        
+        String message = "Payment failed: " + event.getReason();
+        updateOrderStatus(order, Order.OrderStatus.PAYMENT_FAILED, message);
+        updateOrderStatus(order, Order.OrderStatus.CANCELLED, message);
+        sagaStateCache.write(order);
+        
+        sendStatusUpdate(event.getOrderId(), message);
     }
     
     @Transactional
     public void handleInventoryReserved(InventoryReservedEvent event) {
-        log.info("Inventory reserved for order: {}", event.getOrderId());
+        log.debug("Inventory reserved for order: {}", event.getOrderId());
         
-        Order order = orderRepository.findByOrderId(event.getOrderId())
+        Order order = sagaStateCache.find(event.getOrderId())
                 .orElseThrow(() -> new RuntimeException("Order not found: " + event.getOrderId()));
         
         order.setReservationId(event.getReservationId());
-        updateOrderStatus(order, Order.OrderStatus.INVENTORY_RESERVED);
+        
+        if (order.getStatus() == Order.OrderStatus.CANCELLED) {
+            // The saga timed out while inventory was being reserved
+            requestInventoryRelease(order, "Order already cancelled");
+            sagaStateCache.write(order);
+            return;
+        }
+        
+        String message = "Inventory reserved successfully";
+        updateOrderStatus(order, Order.OrderStatus.INVENTORY_RESERVED, message);
         
         // Move to notification phase
-        updateOrderStatus(order, Order.OrderStatus.NOTIFYING);
+        updateOrderStatus(order, Order.OrderStatus.NOTIFYING, message);
+        sagaStateCache.write(order);
+        
+        sendStatusUpdate(event.getOrderId(), message);
+    }
+    
+    @Transactional
+    public void handleInventoryHeld(InventoryReservedEvent event) {
+        log.debug("Inventory held for order: {}", event.getOrderId());
+        
+        Order order = sagaStateCache.find(event.getOrderId())
+                .orElseThrow(() -> new RuntimeException("Order not found: " + event.getOrderId()));
+        
+        order.setReservationId(event.getReservationId());
         
-        sendStatusUpdate(event.getOrderId(), "Inventory reserved successfully");
+        if (order.getStatus() == Order.OrderStatus.CANCELLED) {
+            // Payment already failed: give the stock back
+            requestInventoryRelease(order, "Payment failed");
+            sagaStateCache.write(order);
+            return;
+        }
+        
+        String message = "Inventory held";
+        if (order.getPaymentId() != null) {
+            confirmOrder(order, message);
+        }
+        sagaStateCache.write(order);
+        
+        sendStatusUpdate(event.getOrderId(), message);
     }
     
     @Transactional
@@ -143,55 +277,90 @@ public class OrderService {
         log.error("Inventory reservation failed for order: {}. Reason: {}", 
                 event.getOrderId(), event.getReason());
         
-        Order order = orderRepository.findByOrderId(event.getOrderId())
+        Order order = sagaStateCache.find(event.getOrderId())
                 .orElseThrow(() -> new RuntimeException("Order not found: " + event.getOrderId()));
         
-        updateOrderStatus(order, Order.OrderStatus.INVENTORY_FAILED);
+        if (order.getStatus() == Order.OrderStatus.CANCELLED) {
+            log.info("Order {} already cancelled", event.getOrderId());
+            return;
+        }
+        
+        String message = "Inventory reservation failed. Payment refunded: " + event.getReason();
+        updateOrderStatus(order, Order.OrderStatus.INVENTORY_FAILED, message);
         
-        // SAGA Compensation: Refund payment
+        // SAGA Compensation: Refund payment (a later payment is refunded on arrival)
         if (order.getPaymentId() != null) {
-            log.info("Initiating payment refund for order: {}", event.getOrderId());
-            
-            RefundPaymentCommand refundCommand = RefundPaymentCommand.builder()
-                    .orderId(event.getOrderId())
-                    .paymentId(order.getPaymentId())
-                    .reason("Inventory reservation failed")
-                    .build();
-            
-            kafkaTemplate.send(REFUND_PAYMENT_TOPIC, event.getOrderId(), refundCommand);
-            log.info("Refund command sent for order: {}", event.getOrderId());
+            requestRefund(order, "Inventory reservation failed");
         }
         
-        updateOrderStatus(order, Order.OrderStatus.CANCELLED);
+        updateOrderStatus(order, Order.OrderStatus.CANCELLED, message);
+        sagaStateCache.write(order);
         
-        sendStatusUpdate(event.getOrderId(), 
-                "Inventory reservation failed. Payment refunded: " + event.getReason());
+        sendStatusUpdate(event.getOrderId(), message);
     }
     
     @Transactional
     public void handleNotificationSent(NotificationSentEvent event) {
-        log.info("Notification sent for order: {}", event.getOrderId());
+        log.debug("Notification sent for order: {}", event.getOrderId());
         
-        Order order = orderRepository.findByOrderId(event.getOrderId())
+        Order order = sagaStateCache.find(event.getOrderId())
                 .orElseThrow(() -> new RuntimeException("Order not found: " + event.getOrderId()));
         
-        updateOrderStatus(order, Order.OrderStatus.COMPLETED);
+        // A resent confirmation produces a second notification-sent with its own event id
+        if (order.getStatus() != Order.OrderStatus.NOTIFYING) {
+            log.info("Ignoring notification-sent for order {} in {}", event.getOrderId(), order.getStatus());
+            return;
+        }
+        
+        String message = "Order completed successfully!";
+        updateOrderStatus(order, Order.OrderStatus.COMPLETED, message);
+        sagaStateCache.write(order);
         
-        sendStatusUpdate(event.getOrderId(), "Order completed successfully!");
+        sendStatusUpdate(event.getOrderId(), message);
     }
     
+    @EventListener
+    @Transactional
+    public void handleDeadlineExpired(SagaDeadlineService.DeadlineExpired expired) {
+        Order order = sagaStateCache.find(expired.orderId()).orElse(null);
+        if (order == null || order.getStatus() != expired.status()) {
+            return;
+        }
+        
+        // The step may have been re-entered on another instance since this deadline was armed
+        if (order.getUpdatedAt().plus(sagaDeadlineService.timeoutFor(order.getStatus())).isAfter(LocalDateTime.now())) {
+            sagaDeadlineService.schedule(order.getOrderId(), order.getStatus(), order.getUpdatedAt(), expired.attempt());
+            return;
+        }
+        
+        switch (order.getStatus()) {
+            case INVENTORY_RESERVED, NOTIFYING -> resendConfirmation(order, expired.attempt());
+            default -> timeOutOrder(order);
+        }
+    }
+    
+    @Transactional(readOnly = true)
     public OrderResponse getOrder(String orderId) {
-        Order order = orderRepository.findByOrderId(orderId)
-                .orElseThrow(() -> new RuntimeException("Order not found: " + orderId));
+        Optional<SagaState> state = findStreamedState(orderId);
+        if (state.isPresent()) {
+            return mapToResponse(state.get());
+        }
         
-        return mapToResponse(order);
+        return orderRepository.findByOrderId(orderId)
+                .map(this::mapToResponse)
+                .or(() -> orderRepository.findArchivedByOrderId(orderId).map(this::mapToResponse))
+                .orElseThrow(() -> new RuntimeException("Order not found: " + orderId));
     }
     
+    @Transactional(readOnly = true)
     public SseEmitter streamOrderStatus(String orderId) {
         log.info("Creating SSE stream for order: {}", orderId);
         
         // Verify order exists
-        orderRepository.findByOrderId(orderId)
+        Order.OrderStatus status = findStreamedState(orderId)
+                .map(SagaState::getStatus)
+                .or(() -> orderRepository.findByOrderId(orderId).map(Order::getStatus))
+                .or(() -> orderRepository.findArchivedByOrderId(orderId).map(ArchivedOrder::status))
                 .orElseThrow(() -> new RuntimeException("Order not found: " + orderId));
         
         SseEmitter emitter = new SseEmitter(Long.MAX_VALUE);
@@ -214,10 +383,9 @@ public class OrderService {
         
         // Send initial status
         try {
-            Order order = orderRepository.findByOrderId(orderId).get();
             emitter.send(SseEmitter.event()
                     .name("status")
-                    .data("Connected. Current status: " + order.getStatus()));
+                    .data("Connected. Current status: " + status));
         } catch (IOException e) {
             log.error("Error sending initial SSE event", e);
         }
@@ -225,14 +393,117 @@ public class OrderService {
         return emitter;
     }
     
-    private void updateOrderStatus(Order order, Order.OrderStatus newStatus) {
+    private void confirmOrder(Order order, String message) {
+        updateOrderStatus(order, Order.OrderStatus.INVENTORY_RESERVED, message);
+        updateOrderStatus(order, Order.OrderStatus.NOTIFYING, message);
+        
+        publishAfterCommit(PriorityLanes.topic(ORDER_CONFIRMED_TOPIC, order.priorityName()), order.getOrderId(),
+                OrderConfirmedEvent.builder()
+                        .orderId(order.getOrderId())
+                        .reservationId(order.getReservationId())
+                        .priority(order.priorityName())
+                        .build());
+        log.debug("Payment and inventory hold joined, order {} confirmed", order.getOrderId());
+    }
+    
+    private void resendConfirmation(Order order, int attempt) {
+        // Payment and stock are secured, so a lost notification is re-requested rather than compensated
+        if (attempt >= notificationMaxAttempts) {
+            log.error("Order {} still {} after {} confirmation attempts, giving up",
+                    order.getOrderId(), order.getStatus(), attempt + 1);
+            sagaDeadlineService.recordExpiry(order.getStatus(), "abandoned");
+            return;
+        }
+        
+        log.warn("Order {} stuck in {}, re-sending confirmation (attempt {})",
+                order.getOrderId(), order.getStatus(), attempt + 2);
+        publishAfterCommit(PriorityLanes.topic(ORDER_CONFIRMED_TOPIC, order.priorityName()), order.getOrderId(),
+                OrderConfirmedEvent.builder()
+                        .orderId(order.getOrderId())
+                        .reservationId(order.getReservationId())
+                        .priority(order.priorityName())
+                        .build());
+        sagaDeadlineService.schedule(order.getOrderId(), order.getStatus(), LocalDateTime.now(), attempt + 1);
+        sagaDeadlineService.recordExpiry(order.getStatus(), "requery");
+    }
+    
+    private void timeOutOrder(Order order) {
+        Order.OrderStatus step = order.getStatus();
+        log.warn("Order {} timed out in {}, cancelling", order.getOrderId(), step);
+        sagaDeadlineService.recordExpiry(step, "cancel");
+        
+        // Compensate whatever already succeeded; results arriving later are compensated on arrival
+        if (order.getPaymentId() != null) {
+            requestRefund(order, "Saga step timed out");
+        }
+        if (order.getReservationId() != null) {
+            requestInventoryRelease(order, "Saga step timed out");
+        }
+        String message = "Order cancelled: timed out in " + step;
+        updateOrderStatus(order, Order.OrderStatus.CANCELLED, message);
+        sagaStateCache.write(order);
+        
+        sendStatusUpdate(order.getOrderId(), message);
+    }
+    
+    private void requestRefund(Order order, String reason) {
+        log.debug("Initiating payment refund for order: {}", order.getOrderId());
+        
+        RefundPaymentCommand refundCommand = RefundPaymentCommand.builder()
+                .orderId(order.getOrderId())
+                .paymentId(order.getPaymentId())
+                .reason(reason)
+                .build();
+        
+        publishAfterCommit(REFUND_PAYMENT_TOPIC, order.getOrderId(), refundCommand);
+        log.debug("Refund command sent for order: {}", order.getOrderId());
+    }
+    
+    private void requestInventoryRelease(Order order, String reason) {
+        publishAfterCommit(INVENTORY_RELEASE_TOPIC, order.getOrderId(), ReleaseInventoryCommand.builder()
+                .orderId(order.getOrderId())
+                .reason(reason)
+                .build());
+        log.debug("Inventory release command sent for order: {}", order.getOrderId());
+    }
+    
+    // Persisted by the handler's single sagaStateCache.write once all transitions are applied
+    private void updateOrderStatus(Order order, Order.OrderStatus newStatus, String message) {
+        Order.OrderStatus previous = order.getStatus();
+        sagaLoadTracker.onTransition(previous, newStatus);
         order.setStatus(newStatus);
         order.setUpdatedAt(LocalDateTime.now());
-        orderRepository.save(order);
-        log.info("Order {} status updated to: {}", order.getOrderId(), newStatus);
+        sagaDeadlineService.onTransition(order.getOrderId(), newStatus, order.getUpdatedAt());
+        if (!SagaLoadTracker.IN_FLIGHT.contains(newStatus)) {
+            sagaTiming.recordEndToEnd(newStatus.name(), order.getCreatedAt() != null
+                    ? order.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : null);
+        }
+        publishAfterCommit(ORDER_STATUS_CHANGED_TOPIC, order.getOrderId(), OrderStatusChangedEvent.builder()
+                .orderId(order.getOrderId())
+                .fromStatus(previous)
+                .status(newStatus)
+                .message(message)
+                .occurredAt(order.getUpdatedAt())
+                .build());
+        log.atInfo().addMarker(HotPathLogSampler.HOT_PATH).addKeyValue("orderId", order.getOrderId())
+                .addKeyValue("status", newStatus).log("Order status updated");
     }
     
-    private void sendStatusUpdate(String orderId, String message) {
+    // Commands and events decided on cached state go out only if the guarded update commits
+    private void publishAfterCommit(String topic, String key, Object payload) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            kafkaTemplate.send(topic, key, payload);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                kafkaTemplate.send(topic, key, payload);
+            }
+        });
+    }
+    
+    public void sendStatusUpdate(String orderId, String message) {
         SseEmitter emitter = emitters.get(orderId);
         if (emitter != null) {
             try {
@@ -246,12 +517,35 @@ public class OrderService {
         }
     }
     
+    private boolean isStreamsEngine() {
+        return "streams".equalsIgnoreCase(sagaEngine);
+    }
+    
+    private Optional<SagaState> findStreamedState(String orderId) {
+        SagaStateQueryService queryService = sagaStateQueryService.getIfAvailable();
+        return queryService != null ? queryService.find(orderId) : Optional.empty();
+    }
+    
+    private Order.Priority parsePriority(String priority) {
+        if (priority == null || priority.isBlank()) {
+            return Order.Priority.STANDARD;
+        }
+        try {
+            return Order.Priority.valueOf(priority.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            ErrorResponseException error = new ErrorResponseException(HttpStatus.BAD_REQUEST);
+            error.setDetail("Unknown order priority: " + priority);
+            throw error;
+        }
+    }
+    
     private OrderResponse mapToResponse(Order order) {
         OrderResponse response = new OrderResponse();
         response.setOrderId(order.getOrderId());
         response.setCustomerId(order.getCustomerId());
         response.setTotalAmount(order.getTotalAmount());
         response.setStatus(order.getStatus().name());
+        response.setPriority(order.priorityName());
         response.setCreatedAt(order.getCreatedAt().toString());
         response.setUpdatedAt(order.getUpdatedAt().toString());
         
@@ -268,4 +562,52 @@ public class OrderService {
         
         return response;
     }
+    
+    private OrderResponse mapToResponse(ArchivedOrder order) {
+        OrderResponse response = new OrderResponse();
+        response.setOrderId(order.orderId());
+        response.setCustomerId(order.customerId());
+        response.setTotalAmount(order.totalAmount());
+        response.setStatus(order.status().name());
+        response.setPriority(order.priority() != null ? order.priority().name() : Order.Priority.STANDARD.name());
+        response.setCreatedAt(order.createdAt().toString());
+        response.setUpdatedAt(order.updatedAt().toString());
+        
+        response.setItems(order.items().stream()
+                .map(item -> {
+                    OrderItemDto itemDto = new OrderItemDto();
+                    itemDto.setProductId(item.productId());
+                    itemDto.setProductName(item.productName());
+                    itemDto.setQuantity(item.quantity());
+                    itemDto.setPrice(item.price());
+                    return itemDto;
+                })
+                .collect(Collectors.toList()));
+        
+        return response;
+    }
+    
+    private OrderResponse mapToResponse(SagaState state) {
+        OrderResponse response = new OrderResponse();
+        response.setOrderId(state.getOrderId());
+        response.setCustomerId(state.getCustomerId());
+        response.setTotalAmount(state.getTotalAmount());
+        response.setStatus(state.getStatus().name());
+        response.setPriority(state.getPriority() != null ? state.getPriority() : Order.Priority.STANDARD.name());
+        response.setCreatedAt(state.getCreatedAt().toString());
+        response.setUpdatedAt(state.getUpdatedAt().toString());
+        
+        response.setItems(state.getItems() == null ? List.of() : state.getItems().stream()
+                .map(item -> {
+                    OrderItemDto itemDto = new OrderItemDto();
+                    itemDto.setProductId(item.getProductId());
+                    itemDto.setProductName(item.getProductName());
+                    itemDto.setQuantity(item.getQuantity());
+                    itemDto.setPrice(item.getPrice());
+                    return itemDto;
+                })
+                .collect(Collectors.toList()));
+        
+        return response;
+    }
 }
@@ -0,0 +1,222 @@
+package com.orderms.order.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Customer sharding of the order data. Customers are placed on one of a fixed number
+ * of logical shards by a consistent-hash ring, and the shard is written into every
+ * orderId ({@code ORD-S<shard>-XXXXXXXX}) so an order routes without a lookup. Ids
+ * without it (sharding off, or created before it was turned on) belong to shard 0.
+ * Logical shards are mapped onto the physical databases by {@code orders.sharding.assignment},
+ * so a shard can move to another database (see {@code ShardMigrationTool}) without
+ * changing any id.
+ *
+ * Connections are routed by the shard in a thread-local, which has to be set before a
+ * transaction starts: by the controllers, the Kafka record interceptor and the
+ * deadline service, or per database by background jobs that fan out.
+ */
+@Component
+@Slf4j
+public class OrderShardRouter {
+
+    private static final String SHARD_PREFIX = "ORD-S";
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final boolean enabled;
+    private final int logicalShards;
+    private final int databases;
+    private final int[] assignment;
+    private final NavigableMap<Long, Integer> ring = new TreeMap<>();
+
+    public OrderShardRouter(@Value("${orders.sharding.enabled:false}") boolean enabled,
+                            @Value("${orders.sharding.logical-shards:16}") int logicalShards,
+                            @Value("${orders.sharding.virtual-nodes:64}") int virtualNodes,
+                            @Value("${orders.sharding.databases:}") List<String> databaseUrls,
+                            @Value("${orders.sharding.assignment:}") List<Integer> assignment) {
+        this.enabled = enabled;
+        this.logicalShards = enabled ? logicalShards : 1;
+        this.databases = enabled ? Math.max(1, databaseUrls.size()) : 1;
+        List<Integer> mapping = enabled ? assignment : List.of();
+        if (!mapping.isEmpty() && mapping.size() != this.logicalShards) {
+            throw new IllegalStateException("orders.sharding.assignment needs one database per logical shard ("
+                    + this.logicalShards + "), got " + mapping.size());
+        }
+        this.assignment = new int[this.logicalShards];
+        for (int shard = 0; shard < this.logicalShards; shard++) {
+            this.assignment[shard] = mapping.isEmpty() ? shard % databases : mapping.get(shard);
+            if (this.assignment[shard] < 0 || this.assignment[shard] >= databases) {
+                throw new IllegalStateException("Logical shard " + shard + " is assigned to unknown database "
+                        + this.assignment[shard]);
+            }
+        }
+        for (int shard = 0; shard < this.logicalShards; shard++) {
+            for (int node = 0; node < virtualNodes; node++) {
+                ring.put(hash("shard-" + shard + "#" + node), shard);
+            }
+        }
+        if (enabled) {
+            log.info("Order sharding: {} logical shards on {} databases", this.logicalShards, databases);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int databases() {
+        return databases;
+    }
+
+    public int shardForCustomer(String customerId) {
+        if (!enabled || customerId == null) {
+            return 0;
+        }
+        Map.Entry<Long, Integer> node = ring.ceilingEntry(hash(customerId));
+        return node != null ? node.getValue() : ring.firstEntry().getValue();
+    }
+
+    public int shardOf(String orderId) {
+        if (orderId == null || !orderId.startsWith(SHARD_PREFIX)) {
+            return 0;
+        }
+        int end = orderId.indexOf('-', SHARD_PREFIX.length());
+        try {
+            int shard = Integer.parseInt(orderId.substring(SHARD_PREFIX.length(), end));
+            // Unknown shards are looked up (and not found) on shard 0
+            return shard < logicalShards ? shard : 0;
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return 0;
+        }
+    }
+
+    public String newOrderId(String customerId) {
+        String suffix = UUID.randomUUID().toString().substring(0, 8).toUpperCase();
+        return enabled ? SHARD_PREFIX + shardForCustomer(customerId) + "-" + suffix : "ORD-" + suffix;
+    }
+
+    public int databaseOf(int shard) {
+        return assignment[shard];
+    }
+
+    /**
+     * Database the current thread's connections go to; shard 0's when no shard is set.
+     */
+    public int currentDatabase() {
+        Integer shard = CURRENT.get();
+        return assignment[shard != null ? shard : 0];
+    }
+
+    public <T> T onShard(int shard, Supplier<T> action) {
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    public <T> T onShardOf(String orderId, Supplier<T> action) {
+        return onShard(shardOf(orderId), action);
+    }
+
+    public <T> T onCustomerShard(String customerId, Supplier<T> action) {
+        return onShard(shardForCustomer(customerId), action);
+    }
+
+    /**
+     * Runs {@code action} once per database, routed to that database.
+     */
+    public void forEachDatabase(IntConsumer action) {
+        for (int database : activeDatabases()) {
+            onDatabase(database, () -> {
+                action.accept(database);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Databases at least one logical shard is assigned to.
+     */
+    public List<Integer> activeDatabases() {
+        List<Integer> active = new ArrayList<>();
+        for (int database = 0; database < databases; database++) {
+            if (firstShardOn(database) >= 0) {
+                active.add(database);
+            }
+        }
+        return active;
+    }
+
+    public <T> T onDatabase(int database, Supplier<T> action) {
+        int shard = firstShardOn(database);
+        if (shard < 0) {
+            throw new IllegalArgumentException("No logical shard is assigned to database " + database);
+        }
+        return onShard(shard, action);
+    }
+
+    /**
+     * Routes each record's processing to the shard of its key (the orderId).
+     */
+    public <V> RecordInterceptor<String, V> recordInterceptor() {
+        return new RecordInterceptor<>() {
+            @Override
+            public ConsumerRecord<String, V> intercept(ConsumerRecord<String, V> record, Consumer<String, V> consumer) {
+                CURRENT.set(shardOf(record.key()));
+                return record;
+            }
+
+            @Override
+            public void afterRecord(ConsumerRecord<String, V> record, Consumer<String, V> consumer) {
+                CURRENT.remove();
+            }
+
+            @Override
+            public void clearThreadState(Consumer<?, ?> consumer) {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    private int firstShardOn(int database) {
+        for (int shard = 0; shard < logicalShards; shard++) {
+            if (assignment[shard] == database) {
+                return shard;
+            }
+        }
+        return -1;
+    }
+
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package com.orderms.order.service;
+
+import com.orderms.order.kafka.RefundPaymentCommand;
+import com.orderms.order.model.Order;
+import com.orderms.order.model.ReconciliationMismatch;
+import com.orderms.order.repository.ReconciliationMismatchRepository;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Checks that orders and payments agree. {@code orders} (every order database, hot
+ * and archived) and {@code payments} (read straight from the payment database) are
+ * both streamed in {@code order_id} order, in keyset-paginated chunks, and
+ * merge-joined by orderId. The orderId space is split into ranges from a sample of
+ * the payments table, and the ranges are reconciled in parallel. Memory is bounded by
+ * one chunk per reader, and reads are paced to {@code max-rows-per-second}.
+ *
+ * Rows changed within the grace period belong to sagas still running and are
+ * skipped. Mismatches are stored in {@code reconciliation_mismatches}. With
+ * {@code auto-fix}, captured payments of failed orders and duplicate captures are
+ * refunded through the regular {@code refund-payment} command.
+ */
+@Service
+@Slf4j
+public class PaymentReconciliationService {
+
+    private static final Set<Order.OrderStatus> PAID = EnumSet.of(Order.OrderStatus.PAYMENT_COMPLETED,
+            Order.OrderStatus.INVENTORY_RESERVING, Order.OrderStatus.INVENTORY_RESERVED,
+            Order.OrderStatus.NOTIFYING, Order.OrderStatus.COMPLETED);
+    private static final Set<Order.OrderStatus> FAILED = EnumSet.of(Order.OrderStatus.CANCELLED,
+            Order.OrderStatus.PAYMENT_FAILED, Order.OrderStatus.INVENTORY_FAILED);
+    private static final String REFUND_PAYMENT_TOPIC = "refund-payment";
+    // Both databases compare order ids bytewise, the same way String.compareTo does for ASCII ids
+    private static final String KEY = "order_id COLLATE \"C\"";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final OrderShardRouter orderShardRouter;
+    private final ReconciliationMismatchRepository mismatchRepository;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final MeterRegistry meterRegistry;
+    private final HikariDataSource paymentDataSource;
+    private final JdbcTemplate paymentJdbcTemplate;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong nextReadSlot = new AtomicLong();
+    private final ExecutorService runner =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("reconciliation-run-"));
+    private final boolean enabled;
+    private final boolean autoFix;
+    private final int parallelism;
+    private final int chunkSize;
+    private final long maxRowsPerSecond;
+    private final long graceMinutes;
+    private final boolean paymentDbConfigured;
+
+    public PaymentReconciliationService(DataSource dataSource,
+                                        JdbcTemplate jdbcTemplate,
+                                        PlatformTransactionManager transactionManager,
+                                        OrderShardRouter orderShardRouter,
+                                        ReconciliationMismatchRepository mismatchRepository,
+                                        KafkaTemplate<String, Object> kafkaTemplate,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${orders.reconciliation.enabled:false}") boolean enabled,
+                                        @Value("${orders.reconciliation.auto-fix:false}") boolean autoFix,
+                                        @Value("${orders.reconciliation.parallelism:4}") int parallelism,
+                                        @Value("${orders.reconciliation.chunk-size:5000}") int chunkSize,
+                                        @Value("${orders.reconciliation.max-rows-per-second:100000}") long maxRowsPerSecond,
+                                        @Value("${orders.reconciliation.grace-minutes:15}") long graceMinutes,
+                                        @Value("${orders.reconciliation.payment-db.url:jdbc:postgresql://localhost:5433/paymentdb}") String paymentDbUrl,
+                                        @Value("${orders.reconciliation.payment-db.username}") String paymentDbUser,
+                                        @Value("${orders.reconciliation.payment-db.password}") String paymentDbPassword) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.orderShardRouter = orderShardRouter;
+        this.mismatchRepository = mismatchRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.autoFix = autoFix;
+        this.parallelism = Math.max(1, parallelism);
+        this.chunkSize = chunkSize;
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        this.graceMinutes = graceMinutes;
+        this.paymentDbConfigured = !paymentDbUser.isBlank() && !paymentDbPassword.isBlank();
+        if (enabled && !paymentDbConfigured) {
+            throw new IllegalStateException("orders.reconciliation.payment-db.username and password are required "
+                    + "when reconciliation is enabled");
+        }
+
+        // Not a bean, so it does not replace the order DataSource
+        this.paymentDataSource = new HikariDataSource();
+        paymentDataSource.setPoolName("reconciliation-payment-db");
+        paymentDataSource.setJdbcUrl(paymentDbUrl);
+        paymentDataSource.setUsername(paymentDbUser);
+        paymentDataSource.setPassword(paymentDbPassword);
+        paymentDataSource.setMaximumPoolSize(this.parallelism + 1);
+        paymentDataSource.setMinimumIdle(0);
+        this.paymentJdbcTemplate = new JdbcTemplate(paymentDataSource);
+    }
+
+    @Scheduled(cron = "${orders.reconciliation.cron:0 30 3 * * *}")
+    public void scheduledRun() {
+        // On the runner, so a long run does not occupy a scheduler thread
+        if (enabled && trigger() == null) {
+            log.info("Scheduled payment reconciliation skipped, a run is still going on");
+        }
+    }
+
+    public boolean isConfigured() {
+        return paymentDbConfigured;
+    }
+
+    /**
+     * Starts a run in the background and returns its id, or null if one is already
+     * running on this instance.
+     */
+    public String trigger() {
+        if (running.get()) {
+            return null;
+        }
+        String runId = newRunId();
+        runner.execute(() -> run(runId));
+        return runId;
+    }
+
+    @PreDestroy
+    public void stop() {
+        runner.shutdownNow();
+        paymentDataSource.close();
+    }
+
+    /**
+     * Reconciles all orders and payments; returns false if a run is already going on.
+     */
+    public boolean run(String runId) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        // Session-level advisory lock on shard 0's database keeps runs on different instances apart
+        try (Connection lock = dataSource.getConnection()) {
+            if (!advisoryLock(lock, "pg_try_advisory_lock")) {
+                log.info("Payment reconciliation already running on another instance");
+                return false;
+            }
+            try {
+                reconcile(runId);
+                return true;
+            } finally {
+                advisoryLock(lock, "pg_advisory_unlock");
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Payment reconciliation failed", e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void reconcile(String runId) {
+        long start = System.currentTimeMillis();
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(graceMinutes);
+
+        Map<Integer, Boolean> orderArchives = new HashMap<>();
+        orderShardRouter.forEachDatabase(database -> orderArchives.put(database, prepareOrders()));
+        // The payment service owns the payment database and creates its order_id indexes
+        boolean paymentArchive = exists(paymentJdbcTemplate, "payments_archive");
+
+        List<String> bounds = rangeBounds();
+        log.info("Payment reconciliation {} started over {} ranges", runId, bounds.size() + 1);
+        ExecutorService workers = Executors.newFixedThreadPool(bounds.size() + 1,
+                new CustomizableThreadFactory("reconciliation-"));
+        Tally total = new Tally();
+        try {
+            List<Future<Tally>> ranges = new ArrayList<>();
+            for (int i = 0; i <= bounds.size(); i++) {
+                String from = i > 0 ? bounds.get(i - 1) : null;
+                String to = i < bounds.size() ? bounds.get(i) : null;
+                ranges.add(workers.submit(() -> reconcileRange(runId, from, to, cutoff, orderArchives, paymentArchive)));
+            }
+            for (Future<Tally> range : ranges) {
+                total.add(range.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Payment reconciliation " + runId + " interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Payment reconciliation " + runId + " failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        log.info("Payment reconciliation {} checked {} orders and {} payments in {} ms: {}",
+                runId, total.orders, total.payments, System.currentTimeMillis() - start,
+                total.mismatches.isEmpty() ? "no mismatches" : total.mismatches);
+    }
+
+    private Tally reconcileRange(String runId, String from, String to, LocalDateTime cutoff,
+                                 Map<Integer, Boolean> orderArchives, boolean paymentArchive) {
+        Tally tally = new Tally();
+        List<KeysetReader<OrderRow>> orderReaders = orderArchives.entrySet().stream()
+                .map(database -> new KeysetReader<OrderRow>(after -> orderShardRouter.onDatabase(database.getKey(),
+                        () -> readOnlyTransaction.execute(status ->
+                                readOrders(from, to, after, database.getValue())))))
+                .collect(Collectors.toList());
+        KeysetReader<PaymentRow> payments = new KeysetReader<>(after -> readPayments(from, to, after, paymentArchive));
+
+        while (true) {
+            OrderRow order = peekOrder(orderReaders);
+            PaymentRow payment = payments.peek();
+            if (order == null && payment == null) {
+                return tally;
+            }
+            String orderId = order == null ? payment.orderId()
+                    : payment == null ? order.orderId()
+                    : order.orderId().compareTo(payment.orderId()) <= 0 ? order.orderId() : payment.orderId();
+            if (order != null && order.orderId().equals(orderId)) {
+                nextOrder(orderReaders);
+                tally.orders++;
+            } else {
+                order = null;
+            }
+            List<PaymentRow> group = new ArrayList<>();
+            while (payments.peek() != null && payments.peek().orderId().equals(orderId)) {
+                group.add(payments.next());
+            }
+            tally.payments += group.size();
+            check(runId, orderId, order, group, cutoff, tally);
+        }
+    }
+
+    private void check(String runId, String orderId, OrderRow order, List<PaymentRow> payments,
+                       LocalDateTime cutoff, Tally tally) {
+        // Still moving: the saga (or its deadline) will settle it
+        if ((order != null && order.updatedAt().isAfter(cutoff))
+                || payments.stream().anyMatch(payment -> payment.updatedAt().isAfter(cutoff))) {
+            return;
+        }
+        List<PaymentRow> captured = payments.stream().filter(payment -> "COMPLETED".equals(payment.status())).toList();
+        if (order == null) {
+            captured.forEach(payment -> mismatch(runId, ReconciliationMismatch.Type.ORPHAN_PAYMENT,
+                    orderId, null, payment, false, tally));
+        } else if (FAILED.contains(order.status())) {
+            captured.forEach(payment -> mismatch(runId, ReconciliationMismatch.Type.FAILED_ORDER_CHARGED,
+                    orderId, order, payment, true, tally));
+        } else if (PAID.contains(order.status())) {
+            if (captured.isEmpty()) {
+                PaymentRow refunded = payments.stream()
+                        .filter(payment -> "REFUNDED".equals(payment.status())).findFirst().orElse(null);
+                mismatch(runId, refunded != null ? ReconciliationMismatch.Type.PAID_ORDER_REFUNDED
+                        : ReconciliationMismatch.Type.PAID_ORDER_WITHOUT_PAYMENT, orderId, order, refunded, false, tally);
+                return;
+            }
+            // Keep the payment the order recorded (or the first capture) and refund the rest
+            PaymentRow kept = captured.stream()
+                    .filter(payment -> payment.paymentId().equals(order.paymentId())).findFirst()
+                    .orElse(captured.get(0));
+            captured.stream().filter(payment -> payment != kept).forEach(payment -> mismatch(runId,
+                    ReconciliationMismatch.Type.DUPLICATE_PAYMENT, orderId, order, payment, true, tally));
+        } else {
+            captured.forEach(payment -> mismatch(runId, ReconciliationMismatch.Type.PAYMENT_NOT_APPLIED,
+                    orderId, order, payment, false, tally));
+        }
+    }
+
+    private void mismatch(String runId, ReconciliationMismatch.Type type, String orderId, OrderRow order,
+                          PaymentRow payment, boolean refundable, Tally tally) {
+        boolean refund = autoFix && refundable;
+        if (refund) {
+            kafkaTemplate.send(REFUND_PAYMENT_TOPIC, orderId, RefundPaymentCommand.builder()
+                    .orderId(orderId)
+                    .paymentId(payment.paymentId())
+                    .reason("Reconciliation: " + type)
+                    .build());
+        }
+        String action = refund ? "REFUND_REQUESTED" : "REPORTED";
+        log.warn("Reconciliation {}: {} for order {} (order {}, payment {} {}) -> {}", runId, type, orderId,
+                order != null ? order.status() : null, payment != null ? payment.paymentId() : null,
+                payment != null ? payment.status() : null, action);
+        mismatchRepository.save(ReconciliationMismatch.builder()
+                .runId(runId)
+                .type(type)
+                .orderId(orderId)
+                .orderStatus(order != null ? order.status() : null)
+                .orderPaymentId(order != null ? order.paymentId() : null)
+                .paymentId(payment != null ? payment.paymentId() : null)
+                .paymentStatus(payment != null ? payment.status() : null)
+                .action(action)
+                .detectedAt(LocalDateTime.now())
+                .build());
+        Counter.builder("reconciliation.mismatches")
+                .tag("type", type.name())
+                .tag("action", action)
+                .register(meterRegistry)
+                .increment();
+        tally.mismatches.merge(type, 1, Integer::sum);
+    }
+
+    private List<OrderRow> readOrders(String from, String to, OrderRow after, boolean archived) {
+        List<Object> args = new ArrayList<>();
+        String columns = "SELECT order_id, status, payment_id, updated_at FROM ";
+        StringBuilder sql = new StringBuilder("SELECT * FROM (")
+                .append(columns).append("orders").append(range(from, to, after != null ? after.orderId() : null, null, args));
+        if (archived) {
+            sql.append(" UNION ALL ").append(columns).append("orders_archive")
+                    .append(range(from, to, after != null ? after.orderId() : null, null, args));
+        }
+        sql.append(") u ORDER BY ").append(KEY).append(" LIMIT ?");
+        args.add(chunkSize);
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) -> new OrderRow(
+                rs.getString("order_id"),
+                Order.OrderStatus.valueOf(rs.getString("status")),
+                rs.getString("payment_id"),
+                rs.getTimestamp("updated_at").toLocalDateTime()), args.toArray());
+    }
+
+    private List<PaymentRow> readPayments(String from, String to, PaymentRow after, boolean archived) {
+        List<Object> args = new ArrayList<>();
+        String columns = "SELECT order_id, payment_id, status, updated_at FROM ";
+        String afterOrder = after != null ? after.orderId() : null;
+        String afterPayment = after != null ? after.paymentId() : null;
+        StringBuilder sql = new StringBuilder("SELECT * FROM (")
+                .append(columns).append("payments").append(range(from, to, afterOrder, afterPayment, args));
+        if (archived) {
+            sql.append(" UNION ALL ").append(columns).append("payments_archive")
+                    .append(range(from, to, afterOrder, afterPayment, args));
+        }
+        sql.append(") u ORDER BY ").append(KEY).append(", payment_id COLLATE \"C\" LIMIT ?");
+        args.add(chunkSize);
+        return paymentJdbcTemplate.query(sql.toString(), (rs, rowNum) -> new PaymentRow(
+                rs.getString("order_id"),
+                rs.getString("payment_id"),
+                rs.getString("status"),
+                updatedAt(rs)), args.toArray());
+    }
+
+    private String range(String from, String to, String afterOrder, String afterPayment, List<Object> args) {
+        StringBuilder where = new StringBuilder(" WHERE order_id IS NOT NULL");
+        if (from != null) {
+            where.append(" AND ").append(KEY).append(" >= ?");
+            args.add(from);
+        }
+        if (to != null) {
+            where.append(" AND ").append(KEY).append(" < ?");
+            args.add(to);
+        }
+        if (afterOrder != null && afterPayment != null) {
+            where.append(" AND (").append(KEY).append(", payment_id COLLATE \"C\") > (?, ?)");
+            args.add(afterOrder);
+            args.add(afterPayment);
+        } else if (afterOrder != null) {
+            where.append(" AND ").append(KEY).append(" > ?");
+            args.add(afterOrder);
+        }
+        return where.toString();
+    }
+
+    /**
+     * Creates the bytewise order_id indexes the keyset scans walk on the current order
+     * database; returns whether its archive exists.
+     */
+    private boolean prepareOrders() {
+        jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_orders_order_id_c ON orders (" + KEY + ")");
+        boolean archived = exists(jdbcTemplate, "orders_archive");
+        if (archived) {
+            // Partitioned tables cannot be indexed concurrently; the archive is only ever appended to
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_orders_archive_order_id_c ON orders_archive (" + KEY + ")");
+        }
+        return archived;
+    }
+
+    private static boolean exists(JdbcTemplate jdbc, String table) {
+        return Boolean.TRUE.equals(jdbc.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, table));
+    }
+
+    /**
+     * Range boundaries at even quantiles of a 1% sample of payments, which has a row
+     * for nearly every order on any order database.
+     */
+    private List<String> rangeBounds() {
+        if (parallelism == 1) {
+            return List.of();
+        }
+        String fractions = IntStream.range(1, parallelism)
+                .mapToObj(i -> String.valueOf((double) i / parallelism))
+                .collect(Collectors.joining(", "));
+        String[] quantiles = paymentJdbcTemplate.queryForObject(
+                "SELECT percentile_disc(ARRAY[" + fractions + "]::float8[]) WITHIN GROUP (ORDER BY " + KEY + ") " +
+                "FROM payments TABLESAMPLE SYSTEM (1) WHERE order_id IS NOT NULL",
+                (rs, rowNum) -> rs.getArray(1) != null ? (String[]) rs.getArray(1).getArray() : new String[0]);
+        return Arrays.stream(quantiles)
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .toList();
+    }
+
+    // Spreads the reads of all workers so they add up to at most max-rows-per-second
+    private void throttle(int rows) {
+        if (maxRowsPerSecond <= 0 || rows == 0) {
+            return;
+        }
+        long cost = rows * 1_000_000_000L / maxRowsPerSecond;
+        long now = System.nanoTime();
+        long slot = nextReadSlot.getAndUpdate(previous -> Math.max(previous, now) + cost);
+        long waitNanos = Math.max(slot, now) - now;
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Payment reconciliation interrupted", e);
+            }
+        }
+    }
+
+    private static String newRunId() {
+        return "REC-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+    }
+
+    private static LocalDateTime updatedAt(ResultSet rs) throws SQLException {
+        return rs.getTimestamp("updated_at") != null ? rs.getTimestamp("updated_at").toLocalDateTime() : LocalDateTime.MIN;
+    }
+
+    private static boolean advisoryLock(Connection connection, String function) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(
+                     "SELECT " + function + "(hashtext('order-payment-reconciliation'))")) {
+            return result.next() && result.getBoolean(1);
+        }
+    }
+
+    private static OrderRow peekOrder(List<KeysetReader<OrderRow>> readers) {
+        OrderRow lowest = null;
+        for (KeysetReader<OrderRow> reader : readers) {
+            OrderRow row = reader.peek();
+            if (row != null && (lowest == null || row.orderId().compareTo(lowest.orderId()) < 0)) {
+                lowest = row;
+            }
+        }
+        return lowest;
+    }
+
+    private static void nextOrder(List<KeysetReader<OrderRow>> readers) {
+        OrderRow lowest = peekOrder(readers);
+        readers.stream().filter(reader -> reader.peek() == lowest).findFirst().ifPresent(KeysetReader::next);
+    }
+
+    record OrderRow(String orderId, Order.OrderStatus status, String paymentId, LocalDateTime updatedAt) {
+    }
+
+    record PaymentRow(String orderId, String paymentId, String status, LocalDateTime updatedAt) {
+    }
+
+    private static class Tally {
+        long orders;
+        long payments;
+        final Map<ReconciliationMismatch.Type, Integer> mismatches = new EnumMap<>(ReconciliationMismatch.Type.class);
+
+        void add(Tally other) {
+            orders += other.orders;
+            payments += other.payments;
+            other.mismatches.forEach((type, count) -> mismatches.merge(type, count, Integer::sum));
+        }
+    }
+
+    /**
+     * Walks one keyset-paginated stream; {@code nextChunk} gets the last row read (null
+     * for the first chunk) and returns the rows after it.
+     */
+    private class KeysetReader<T> {
+        private final Function<T, List<T>> nextChunk;
+        private List<T> chunk = List.of();
+        private int position;
+        private T last;
+        private boolean exhausted;
+
+        KeysetReader(Function<T, List<T>> nextChunk) {
+            this.nextChunk = nextChunk;
+        }
+
+        T peek() {
+            if (position == chunk.size()) {
+                if (exhausted) {
+                    return null;
+                }
+                chunk = nextChunk.apply(last);
+                // Outside the chunk's transaction, so a paced reader holds no connection
+                throttle(chunk.size());
+                position = 0;
+                exhausted = chunk.size() < chunkSize;
+                if (chunk.isEmpty()) {
+                    return null;
+                }
+            }
+            return chunk.get(position);
+        }
+
+        T next() {
+            T row = peek();
+            position++;
+            last = row;
+            return row;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.orderms.order.service;
+
+import com.orderms.order.config.ReadReplicas;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+/**
+ * Read-your-writes for clients of the read replicas. After a write, the client gets
+ * the primary's current WAL position in {@link #HEADER}. When it sends that header back
+ * on its reads, they are served by a replica that has replayed the position, or else
+ * by the primary.
+ */
+@Service
+@RequiredArgsConstructor
+public class ReadPositionService {
+
+    public static final String HEADER = "X-Read-Position";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadReplicas readReplicas;
+
+    /**
+     * WAL position of the current shard's primary, once this thread's writes have committed.
+     */
+    public Optional<String> currentWritePosition() {
+        if (!readReplicas.enabled()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(jdbcTemplate.queryForObject(
+                "SELECT pg_current_wal_lsn() - '0/0'::pg_lsn", Long.class))
+                .map(String::valueOf);
+    }
+}
@@ -0,0 +1,255 @@
+package com.orderms.order.service;
+
+import com.orderms.order.kafka.OrderStatusChangedEvent;
+import com.orderms.order.model.Order;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sliding 1m/5m/1h aggregates over the saga events this instance consumes: orders
+ * entering each status, payment declines and inventory failures per SKU. Every event
+ * is an O(1) lock-free update of three {@link SlidingWindowCounter}s; rates are only
+ * computed when read. Per-SKU outcomes come from the product ids on the inventory
+ * events. Status transitions are only counted the first time they are projected.
+ * Each instance only sees its own partitions: sum the count gauges across instances
+ * for cluster-wide figures.
+ */
+@Service
+public class SagaAnalyticsService {
+
+    public static final String UNKNOWN_SKU = "unknown";
+    public static final String OTHER_SKU = "other";
+
+    public enum Window {
+        ONE_MINUTE("1m", 1_000),
+        FIVE_MINUTES("5m", 5_000),
+        ONE_HOUR("1h", 60_000);
+
+        static final int BUCKETS = 60;
+
+        private final String label;
+        private final long bucketMs;
+
+        Window(String label, long bucketMs) {
+            this.label = label;
+            this.bucketMs = bucketMs;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        public static Window parse(String label) {
+            for (Window window : values()) {
+                if (window.label.equalsIgnoreCase(label)) {
+                    return window;
+                }
+            }
+            throw new IllegalArgumentException("Unknown window: " + label);
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final int maxSkus;
+    private final Map<Order.OrderStatus, WindowedCount> statusEntered = new EnumMap<>(Order.OrderStatus.class);
+    private final WindowedCount paymentsCompleted = new WindowedCount();
+    private final WindowedCount paymentsFailed = new WindowedCount();
+    private final WindowedCount inventoryReserved = new WindowedCount();
+    private final WindowedCount inventoryFailed = new WindowedCount();
+    private final Map<String, SkuOutcomes> skus = new ConcurrentHashMap<>();
+
+    public SagaAnalyticsService(MeterRegistry meterRegistry,
+                                @Value("${orders.analytics.max-skus:200}") int maxSkus) {
+        this.meterRegistry = meterRegistry;
+        this.maxSkus = maxSkus;
+        for (Order.OrderStatus status : Order.OrderStatus.values()) {
+            WindowedCount count = new WindowedCount();
+            statusEntered.put(status, count);
+            for (Window window : Window.values()) {
+                Gauge.builder("saga.window.status.entered", count, c -> c.sum(window))
+                        .tags("status", status.name(), "window", window.label)
+                        .description("Orders that entered this status within the window")
+                        .register(meterRegistry);
+            }
+        }
+        for (Window window : Window.values()) {
+            registerCount("saga.window.payments", "completed", paymentsCompleted, window);
+            registerCount("saga.window.payments", "failed", paymentsFailed, window);
+            registerCount("saga.window.inventory", "reserved", inventoryReserved, window);
+            registerCount("saga.window.inventory", "failed", inventoryFailed, window);
+            Gauge.builder("saga.window.payment.decline.rate", this, a -> a.paymentDeclineRate(window))
+                    .tag("window", window.label)
+                    .description("Share of payments declined within the window")
+                    .register(meterRegistry);
+            Gauge.builder("saga.window.inventory.failure.rate", this, a -> a.inventoryFailureRate(window))
+                    .tag("window", window.label)
+                    .description("Share of reservations that failed within the window")
+                    .register(meterRegistry);
+        }
+    }
+
+    public void onStatusChanged(OrderStatusChangedEvent event) {
+        if (event.getStatus() == null || event.getStatus() == event.getFromStatus()) {
+            return;
+        }
+        statusEntered.get(event.getStatus()).increment();
+    }
+
+    public void onPaymentCompleted() {
+        paymentsCompleted.increment();
+    }
+
+    public void onPaymentFailed() {
+        paymentsFailed.increment();
+    }
+
+    public void onInventoryReserved(List<String> productIds) {
+        inventoryReserved.increment();
+        for (String sku : skusOf(productIds)) {
+            sku(sku).reserved.increment();
+        }
+    }
+
+    public void onInventoryFailed(List<String> productIds) {
+        inventoryFailed.increment();
+        for (String sku : skusOf(productIds)) {
+            sku(sku).failed.increment();
+        }
+    }
+
+    public double paymentDeclineRate(Window window) {
+        return rate(paymentsFailed.sum(window), paymentsCompleted.sum(window));
+    }
+
+    public double inventoryFailureRate(Window window) {
+        return rate(inventoryFailed.sum(window), inventoryReserved.sum(window));
+    }
+
+    public Snapshot snapshot(Window window, int topSkus) {
+        Map<Order.OrderStatus, Long> byStatus = new EnumMap<>(Order.OrderStatus.class);
+        statusEntered.forEach((status, count) -> byStatus.put(status, count.sum(window)));
+        List<SkuSnapshot> skuSnapshots = skus.entrySet().stream()
+                .map(e -> e.getValue().snapshot(e.getKey(), window))
+                .filter(s -> s.failed() + s.reserved() > 0)
+                .sorted(Comparator.comparingLong(SkuSnapshot::failed).reversed()
+                        .thenComparing(Comparator.comparingDouble(SkuSnapshot::failureRate).reversed()))
+                .limit(topSkus)
+                .toList();
+        double minutes = window.bucketMs * Window.BUCKETS / 60_000.0;
+        Map<Order.OrderStatus, Double> perMinute = new EnumMap<>(Order.OrderStatus.class);
+        byStatus.forEach((status, count) -> perMinute.put(status, count / minutes));
+        return new Snapshot(window.label,
+                byStatus,
+                perMinute,
+                paymentsCompleted.sum(window),
+                paymentsFailed.sum(window),
+                paymentDeclineRate(window),
+                inventoryReserved.sum(window),
+                inventoryFailed.sum(window),
+                inventoryFailureRate(window),
+                skuSnapshots);
+    }
+
+    // Events from inventory services that predate the product ids count as unknown
+    private static List<String> skusOf(List<String> productIds) {
+        return productIds != null && !productIds.isEmpty() ? productIds : List.of(UNKNOWN_SKU);
+    }
+
+    // Bounded so per-SKU gauges cannot grow without limit; later SKUs share one entry
+    private SkuOutcomes sku(String productId) {
+        String key = productId != null ? productId : UNKNOWN_SKU;
+        SkuOutcomes outcomes = skus.get(key);
+        if (outcomes != null) {
+            return outcomes;
+        }
+        if (skus.size() >= maxSkus) {
+            key = OTHER_SKU;
+        }
+        return skus.computeIfAbsent(key, this::registerSku);
+    }
+
+    private SkuOutcomes registerSku(String sku) {
+        SkuOutcomes outcomes = new SkuOutcomes();
+        for (Window window : Window.values()) {
+            Gauge.builder("saga.window.sku.inventory.failure.rate", outcomes, o -> o.failureRate(window))
+                    .tags("sku", sku, "window", window.label)
+                    .description("Share of reservations of this SKU that failed within the window")
+                    .register(meterRegistry);
+        }
+        return outcomes;
+    }
+
+    private void registerCount(String name, String outcome, WindowedCount count, Window window) {
+        Gauge.builder(name, count, c -> c.sum(window))
+                .tags("outcome", outcome, "window", window.label)
+                .description("Saga outcomes within the window")
+                .register(meterRegistry);
+    }
+
+    private static double rate(long failed, long succeeded) {
+        long total = failed + succeeded;
+        return total == 0 ? 0.0 : (double) failed / total;
+    }
+
+    // One counter per window, each with the same number of buckets
+    static class WindowedCount {
+
+        private final Map<Window, SlidingWindowCounter> counters = new EnumMap<>(Window.class);
+
+        WindowedCount() {
+            for (Window window : Window.values()) {
+                counters.put(window, new SlidingWindowCounter(window.bucketMs, Window.BUCKETS));
+            }
+        }
+
+        void increment() {
+            long now = System.currentTimeMillis();
+            for (SlidingWindowCounter counter : counters.values()) {
+                counter.add(now, 1);
+            }
+        }
+
+        long sum(Window window) {
+            return counters.get(window).sum(System.currentTimeMillis());
+        }
+    }
+
+    static class SkuOutcomes {
+
+        private final WindowedCount reserved = new WindowedCount();
+        private final WindowedCount failed = new WindowedCount();
+
+        double failureRate(Window window) {
+            return rate(failed.sum(window), reserved.sum(window));
+        }
+
+        SkuSnapshot snapshot(String sku, Window window) {
+            long failedCount = failed.sum(window);
+            long reservedCount = reserved.sum(window);
+            return new SkuSnapshot(sku, reservedCount, failedCount, rate(failedCount, reservedCount));
+        }
+    }
+
+    public record Snapshot(String window,
+                           Map<Order.OrderStatus, Long> statusEntered,
+                           Map<Order.OrderStatus, Double> statusPerMinute,
+                           long paymentsCompleted,
+                           long paymentsFailed,
+                           double paymentDeclineRate,
+                           long inventoryReserved,
+                           long inventoryFailed,
+                           double inventoryFailureRate,
+                           List<SkuSnapshot> skus) {
+    }
+
+    public record SkuSnapshot(String sku, long reserved, long failed, double failureRate) {
+    }
+}
@@ -0,0 +1,157 @@
+package com.orderms.order.service;
+
+import com.orderms.order.model.Order;
+import com.orderms.order.repository.ShardedOrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Deadline for the saga step each in-flight order is waiting on, kept in a
+ * {@link TimingWheel} instead of polling the orders table. Every status transition
+ * re-arms (or, for terminal statuses, cancels) the order's deadline; on startup the
+ * wheel is rebuilt from the indexed status column. Expired deadlines are published
+ * as {@link DeadlineExpired} events on a separate thread so the wheel never waits on
+ * the database.
+ */
+@Component
+@Slf4j
+public class SagaDeadlineService {
+
+    private final ShardedOrderRepository orderRepository;
+    private final OrderShardRouter orderShardRouter;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final TimingWheel<String, Deadline> wheel;
+    private final Map<Order.OrderStatus, Duration> timeouts = new EnumMap<>(Order.OrderStatus.class);
+    private final ExecutorService expiryExecutor =
+            Executors.newSingleThreadExecutor(new CustomizableThreadFactory("saga-deadline-"));
+    private final boolean enabled;
+
+    public SagaDeadlineService(ShardedOrderRepository orderRepository,
+                               OrderShardRouter orderShardRouter,
+                               ApplicationEventPublisher eventPublisher,
+                               MeterRegistry meterRegistry,
+                               @Value("${orders.saga.deadline.enabled:true}") boolean enabled,
+                               @Value("${orders.saga.engine:jpa}") String sagaEngine,
+                               @Value("${orders.saga.deadline.tick-ms:100}") long tickMs,
+                               @Value("${orders.saga.deadline.wheel-size:512}") int wheelSize,
+                               @Value("${orders.saga.deadline.payment-timeout-seconds:60}") long paymentTimeout,
+                               @Value("${orders.saga.deadline.inventory-timeout-seconds:60}") long inventoryTimeout,
+                               @Value("${orders.saga.deadline.notification-timeout-seconds:120}") long notificationTimeout) {
+        this.orderRepository = orderRepository;
+        this.orderShardRouter = orderShardRouter;
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        // The streams engine checks its deadlines in a punctuator and only borrows the timeouts
+        this.enabled = enabled && !"streams".equalsIgnoreCase(sagaEngine);
+        this.wheel = new TimingWheel<>(tickMs, wheelSize, 4, System.currentTimeMillis());
+
+        timeouts.put(Order.OrderStatus.PENDING, Duration.ofSeconds(paymentTimeout));
+        timeouts.put(Order.OrderStatus.PAYMENT_PROCESSING, Duration.ofSeconds(paymentTimeout));
+        timeouts.put(Order.OrderStatus.PAYMENT_COMPLETED, Duration.ofSeconds(inventoryTimeout));
+        timeouts.put(Order.OrderStatus.INVENTORY_RESERVING, Duration.ofSeconds(inventoryTimeout));
+        timeouts.put(Order.OrderStatus.INVENTORY_RESERVED, Duration.ofSeconds(notificationTimeout));
+        timeouts.put(Order.OrderStatus.NOTIFYING, Duration.ofSeconds(notificationTimeout));
+
+        Gauge.builder("saga.deadlines.pending", wheel, TimingWheel::size)
+                .description("Saga step deadlines registered in the timing wheel")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Re-arms the deadline for the step an order entered at {@code enteredAt}.
+     * Statuses without a timeout (terminal ones) cancel it.
+     */
+    public void onTransition(String orderId, Order.OrderStatus status, LocalDateTime enteredAt) {
+        schedule(orderId, status, enteredAt, 0);
+    }
+
+    public void schedule(String orderId, Order.OrderStatus status, LocalDateTime enteredAt, int attempt) {
+        if (!enabled) {
+            return;
+        }
+        Duration timeout = timeouts.get(status);
+        if (timeout == null) {
+            wheel.cancel(orderId);
+            return;
+        }
+        wheel.schedule(orderId, new Deadline(status, attempt), deadlineMillis(enteredAt, timeout));
+    }
+
+    public Duration timeoutFor(Order.OrderStatus status) {
+        return timeouts.get(status);
+    }
+
+    public void recordExpiry(Order.OrderStatus status, String action) {
+        Counter.builder("saga.deadline.expired")
+                .tag("status", status.name())
+                .tag("action", action)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        orderRepository.forEachByStatusIn(timeouts.keySet(),
+                step -> onTransition(step.getOrderId(), step.getStatus(), step.getUpdatedAt()));
+        log.info("Saga deadline wheel rebuilt with {} pending steps in {} ms",
+                wheel.size(), System.currentTimeMillis() - start);
+    }
+
+    @Scheduled(fixedRateString = "${orders.saga.deadline.tick-ms:100}")
+    public void tick() {
+        wheel.advance(System.currentTimeMillis(), (orderId, deadline) ->
+                expiryExecutor.execute(() -> publish(orderId, deadline)));
+    }
+
+    @PreDestroy
+    public void stop() {
+        expiryExecutor.shutdownNow();
+    }
+
+    private void publish(String orderId, Deadline deadline) {
+        try {
+            // The handler's transaction has to start on the order's shard
+            orderShardRouter.onShardOf(orderId, () -> {
+                eventPublisher.publishEvent(new DeadlineExpired(orderId, deadline.status(), deadline.attempt()));
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // Typically a late event or another instance got there first; check again after another timeout
+            log.warn("Handling expired {} deadline for order {} failed: {}", deadline.status(), orderId, e.getMessage());
+            schedule(orderId, deadline.status(), LocalDateTime.now(), deadline.attempt());
+        }
+    }
+
+    private long deadlineMillis(LocalDateTime enteredAt, Duration timeout) {
+        return enteredAt.atZone(ZoneId.systemDefault()).toInstant().plus(timeout).toEpochMilli();
+    }
+
+    record Deadline(Order.OrderStatus status, int attempt) {
+    }
+
+    public record DeadlineExpired(String orderId, Order.OrderStatus status, int attempt) {
+    }
+}
@@ -0,0 +1,81 @@
+package com.orderms.order.service;
+
+import com.orderms.order.model.Order;
+import com.orderms.order.repository.ShardedOrderRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Number of sagas in each non-terminal status. Transitions made by this instance
+ * are applied immediately; a periodic grouped count over the indexed status column
+ * (summed over all order databases) corrects drift from transitions handled by other
+ * instances or rolled back.
+ */
+@Component
+public class SagaLoadTracker {
+
+    static final Set<Order.OrderStatus> IN_FLIGHT = EnumSet.complementOf(
+            EnumSet.of(Order.OrderStatus.COMPLETED, Order.OrderStatus.CANCELLED));
+
+    private final ShardedOrderRepository orderRepository;
+    private final Map<Order.OrderStatus, AtomicLong> counts = new EnumMap<>(Order.OrderStatus.class);
+
+    public SagaLoadTracker(ShardedOrderRepository orderRepository, MeterRegistry meterRegistry) {
+        this.orderRepository = orderRepository;
+        for (Order.OrderStatus status : IN_FLIGHT) {
+            AtomicLong count = new AtomicLong();
+            counts.put(status, count);
+            Gauge.builder("saga.inflight", count, AtomicLong::get)
+                    .tag("status", status.name())
+                    .description("Sagas currently in this status")
+                    .register(meterRegistry);
+        }
+        Gauge.builder("saga.inflight.total", this, SagaLoadTracker::inFlight)
+                .description("Sagas not yet COMPLETED or CANCELLED")
+                .register(meterRegistry);
+    }
+
+    public void onCreated(Order.OrderStatus status) {
+        adjust(status, 1);
+    }
+
+    public void onTransition(Order.OrderStatus from, Order.OrderStatus to) {
+        if (from == to) {
+            return;
+        }
+        adjust(from, -1);
+        adjust(to, 1);
+    }
+
+    public long inFlight() {
+        return counts.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    public long inFlight(Order.OrderStatus status) {
+        AtomicLong count = counts.get(status);
+        return count != null ? count.get() : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${orders.admission.refresh-interval-ms:5000}")
+    public void refresh() {
+        Map<Order.OrderStatus, Long> fresh = orderRepository.countByStatusIn(IN_FLIGHT);
+        for (Order.OrderStatus status : IN_FLIGHT) {
+            counts.get(status).set(fresh.getOrDefault(status, 0L));
+        }
+    }
+
+    private void adjust(Order.OrderStatus status, long delta) {
+        AtomicLong count = counts.get(status);
+        if (count != null) {
+            count.addAndGet(delta);
+        }
+    }
+}
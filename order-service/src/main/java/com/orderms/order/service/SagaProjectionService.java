@@ -0,0 +1,69 @@
+package com.orderms.order.service;
+
+import com.orderms.order.kafka.SagaState;
+import com.orderms.order.model.Order;
+import com.orderms.order.model.OrderItem;
+import com.orderms.order.repository.OrderRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+/**
+ * Keeps the {@code orders} table in step with the Kafka Streams saga engine by upserting
+ * every state snapshot from the status topic. The table, and everything that reads it
+ * (admission control, REST fallbacks), trails the state store by the projection's lag.
+ */
+@Service
+@ConditionalOnProperty(name = "orders.saga.engine", havingValue = "streams")
+@RequiredArgsConstructor
+@Slf4j
+public class SagaProjectionService {
+    
+    private final OrderRepository orderRepository;
+    private final SagaLoadTracker sagaLoadTracker;
+    
+    @Transactional
+    public void project(SagaState state) {
+        Optional<Order> existing = orderRepository.findByOrderId(state.getOrderId());
+        if (existing.isPresent()) {
+            Order order = existing.get();
+            sagaLoadTracker.onTransition(order.getStatus(), state.getStatus());
+            order.setStatus(state.getStatus());
+            order.setPaymentId(state.getPaymentId());
+            order.setReservationId(state.getReservationId());
+            return;
+        }
+        
+        if (state.getCustomerId() == null) {
+            // Saga events overtook order-created; a later snapshot carries the order details
+            log.debug("Order {} not created yet, skipping {} snapshot", state.getOrderId(), state.getStatus());
+            return;
+        }
+        
+        Order order = Order.builder()
+                .orderId(state.getOrderId())
+                .customerId(state.getCustomerId())
+                .customerEmail(state.getCustomerEmail())
+                .totalAmount(state.getTotalAmount())
+                .status(state.getStatus())
+                .paymentId(state.getPaymentId())
+                .reservationId(state.getReservationId())
+                .parallelSaga(state.isParallelSaga())
+                .priority(state.getPriority() != null ? Order.Priority.valueOf(state.getPriority()) : Order.Priority.STANDARD)
+                .build();
+        if (state.getItems() != null) {
+            state.getItems().forEach(item -> order.addItem(OrderItem.builder()
+                    .productId(item.getProductId())
+                    .productName(item.getProductName())
+                    .quantity(item.getQuantity())
+                    .price(item.getPrice())
+                    .build()));
+        }
+        orderRepository.save(order);
+        sagaLoadTracker.onCreated(state.getStatus());
+    }
+}
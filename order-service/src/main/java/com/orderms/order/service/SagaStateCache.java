@@ -0,0 +1,144 @@
+package com.orderms.order.service;
+
+import com.orderms.order.model.Order;
+import com.orderms.order.repository.OrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Saga state (status, payment and reservation ids, version, creation time) of active
+ * orders, so the event handlers can skip the select before every step. Handlers work
+ * on a detached {@link Order} built from the cached state and persist it with a single
+ * UPDATE guarded by the version column. If another instance moved the order on, the
+ * update matches no row: the entry is evicted and the handler fails, so its retry
+ * starts from fresh state. Entries are refreshed after commit and dropped once the
+ * order is COMPLETED or CANCELLED.
+ */
+@Component
+@Slf4j
+public class SagaStateCache {
+
+    private final OrderRepository orderRepository;
+    private final Map<String, SagaState> states;
+    private final Counter hits;
+    private final Counter misses;
+
+    public SagaStateCache(OrderRepository orderRepository,
+                          MeterRegistry meterRegistry,
+                          @Value("${orders.saga.state-cache-size:50000}") int cacheSize) {
+        this.orderRepository = orderRepository;
+        this.states = Collections.synchronizedMap(new LinkedHashMap<>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SagaState> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        this.hits = meterRegistry.counter("saga.state.cache", "result", "hit");
+        this.misses = meterRegistry.counter("saga.state.cache", "result", "miss");
+    }
+
+    public Optional<Order> find(String orderId) {
+        SagaState state = states.get(orderId);
+        if (state != null) {
+            hits.increment();
+            return Optional.of(state.toOrder());
+        }
+        misses.increment();
+        return orderRepository.findSagaStateByOrderId(orderId)
+                .map(SagaState::of)
+                .map(loaded -> {
+                    states.put(orderId, loaded);
+                    return loaded.toOrder();
+                });
+    }
+
+    /**
+     * Caches a newly inserted order once its transaction commits.
+     */
+    public void created(Order order) {
+        cacheAfterCommit(SagaState.of(order));
+    }
+
+    /**
+     * Writes the order's saga state with one version-guarded UPDATE.
+     */
+    public void write(Order order) {
+        order.setUpdatedAt(LocalDateTime.now());
+        int updated = orderRepository.updateSagaState(order.getOrderId(), order.getStatus(),
+                order.getPaymentId(), order.getReservationId(), order.getUpdatedAt(), order.getVersion());
+        if (updated == 0) {
+            states.remove(order.getOrderId());
+            throw new ObjectOptimisticLockingFailureException(Order.class, order.getOrderId());
+        }
+        order.setVersion(order.getVersion() + 1);
+        cacheAfterCommit(SagaState.of(order));
+    }
+
+    private void cacheAfterCommit(SagaState state) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(state);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    apply(state);
+                } else {
+                    states.remove(state.orderId());
+                }
+            }
+        });
+    }
+
+    private void apply(SagaState state) {
+        if (SagaLoadTracker.IN_FLIGHT.contains(state.status())) {
+            states.put(state.orderId(), state);
+        } else {
+            states.remove(state.orderId());
+        }
+    }
+
+    record SagaState(String orderId, Order.OrderStatus status, String paymentId, String reservationId,
+                     Long version, Boolean parallelSaga, Order.Priority priority, LocalDateTime createdAt,
+                     LocalDateTime updatedAt) {
+
+        static SagaState of(Order order) {
+            return new SagaState(order.getOrderId(), order.getStatus(), order.getPaymentId(),
+                    order.getReservationId(), order.getVersion(), order.getParallelSaga(), order.getPriority(),
+                    order.getCreatedAt(), order.getUpdatedAt());
+        }
+
+        static SagaState of(OrderRepository.SagaStateView view) {
+            return new SagaState(view.getOrderId(), view.getStatus(), view.getPaymentId(),
+                    view.getReservationId(), view.getVersion(), view.getParallelSaga(), view.getPriority(),
+                    view.getCreatedAt(), view.getUpdatedAt());
+        }
+
+        Order toOrder() {
+            return Order.builder()
+                    .orderId(orderId)
+                    .status(status)
+                    .paymentId(paymentId)
+                    .reservationId(reservationId)
+                    .version(version)
+                    .parallelSaga(parallelSaga)
+                    .priority(priority)
+                    .createdAt(createdAt)
+                    .updatedAt(updatedAt)
+                    .build();
+        }
+    }
+}
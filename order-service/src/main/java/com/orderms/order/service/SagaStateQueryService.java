@@ -0,0 +1,46 @@
+package com.orderms.order.service;
+
+import com.orderms.order.kafka.SagaState;
+import com.orderms.order.kafka.SagaStreamProcessor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StoreQueryParameters;
+import org.apache.kafka.streams.errors.InvalidStateStoreException;
+import org.apache.kafka.streams.state.QueryableStoreTypes;
+import org.apache.kafka.streams.state.ReadOnlyKeyValueStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.config.StreamsBuilderFactoryBean;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+/**
+ * Interactive queries against the Kafka Streams saga store. Only the partitions hosted
+ * by this instance are visible. For other orders, and for finished sagas that have been
+ * evicted, callers fall back to the {@code orders} projection.
+ */
+@Service
+@ConditionalOnProperty(name = "orders.saga.engine", havingValue = "streams")
+@RequiredArgsConstructor
+@Slf4j
+public class SagaStateQueryService {
+    
+    private final StreamsBuilderFactoryBean streamsBuilderFactoryBean;
+    
+    public Optional<SagaState> find(String orderId) {
+        KafkaStreams streams = streamsBuilderFactoryBean.getKafkaStreams();
+        if (streams == null || streams.state() != KafkaStreams.State.RUNNING) {
+            return Optional.empty();
+        }
+        try {
+            ReadOnlyKeyValueStore<String, SagaState> store = streams.store(StoreQueryParameters.fromNameAndType(
+                    SagaStreamProcessor.STATE_STORE, QueryableStoreTypes.keyValueStore()));
+            return Optional.ofNullable(store.get(orderId));
+        } catch (InvalidStateStoreException e) {
+            // Store is migrating after a rebalance
+            log.debug("Saga store not queryable for order {}: {}", orderId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+}
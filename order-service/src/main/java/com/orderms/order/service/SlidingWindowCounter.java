@@ -0,0 +1,64 @@
+package com.orderms.order.service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free event count over a sliding window of {@code buckets} time buckets of
+ * {@code bucketMs} each. Every slot packs the bucket it belongs to (low 24 bits of the
+ * bucket number) with that bucket's count, so moving a slot on to a new bucket and
+ * counting into it is a single CAS. Adding is O(1); reading sums the slots that still
+ * fall inside the window.
+ */
+public class SlidingWindowCounter {
+
+    private static final int COUNT_BITS = 40;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long TAG_MASK = (1L << (Long.SIZE - COUNT_BITS)) - 1;
+
+    private final long bucketMs;
+    private final int buckets;
+    private final AtomicLongArray slots;
+
+    public SlidingWindowCounter(long bucketMs, int buckets) {
+        this.bucketMs = bucketMs;
+        this.buckets = buckets;
+        this.slots = new AtomicLongArray(buckets);
+    }
+
+    public void add(long nowMs, long delta) {
+        long bucket = nowMs / bucketMs;
+        int slot = (int) (bucket % buckets);
+        long tag = bucket & TAG_MASK;
+        while (true) {
+            long current = slots.get(slot);
+            long next = (current >>> COUNT_BITS) == tag
+                    ? current + delta
+                    : (tag << COUNT_BITS) | (delta & COUNT_MASK);
+            if (slots.compareAndSet(slot, current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Events in the {@code buckets} buckets up to and including the one {@code nowMs} falls in.
+     */
+    public long sum(long nowMs) {
+        long latest = nowMs / bucketMs;
+        long total = 0;
+        for (long bucket = latest - buckets + 1; bucket <= latest; bucket++) {
+            if (bucket < 0) {
+                continue;
+            }
+            long value = slots.get((int) (bucket % buckets));
+            if ((value >>> COUNT_BITS) == (bucket & TAG_MASK)) {
+                total += value & COUNT_MASK;
+            }
+        }
+        return total;
+    }
+
+    public long windowMs() {
+        return bucketMs * buckets;
+    }
+}
@@ -0,0 +1,154 @@
+package com.orderms.order.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Hierarchical hashed timing wheel. Level 0 has one slot per tick, and every level
+ * above covers {@code wheelSize} slots of the level below it. Entries are kept in
+ * intrusive doubly-linked slot lists, so schedule and cancel are O(1). On each tick,
+ * slots of the higher levels cascade down, and the level-0 slot fires.
+ *
+ * Deadlines past the range of the top level are clamped to that range. Callers are
+ * expected to re-check the deadline when an entry fires.
+ */
+public class TimingWheel<K, V> {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final Slot<K, V>[][] levels;
+    private final long[] ticksPerSlot;
+    private final Map<K, Entry<K, V>> entries = new HashMap<>();
+
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMs, int wheelSize, int levelCount, long startMs) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.levels = (Slot<K, V>[][]) new Slot<?, ?>[levelCount][wheelSize];
+        this.ticksPerSlot = new long[levelCount];
+        long span = 1;
+        for (int level = 0; level < levelCount; level++) {
+            ticksPerSlot[level] = span;
+            for (int slot = 0; slot < wheelSize; slot++) {
+                levels[level][slot] = new Slot<>();
+            }
+            span *= wheelSize;
+        }
+        this.currentTick = startMs / tickMs;
+    }
+
+    /**
+     * Schedules {@code key} to fire at {@code deadlineMs}, replacing any deadline
+     * already registered for it.
+     */
+    public synchronized void schedule(K key, V value, long deadlineMs) {
+        cancel(key);
+        long maxTick = currentTick + ticksPerSlot[levels.length - 1] * (wheelSize - 1);
+        long tick = Math.min(Math.max(deadlineMs / tickMs, currentTick + 1), maxTick);
+        Entry<K, V> entry = new Entry<>(key, value, tick);
+        entries.put(key, entry);
+        insert(entry);
+    }
+
+    public synchronized boolean cancel(K key) {
+        Entry<K, V> entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        entry.unlink();
+        return true;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Advances the wheel to {@code nowMs} and hands every expired entry to
+     * {@code onExpiry}, which runs under the wheel's lock and should not block.
+     */
+    public synchronized void advance(long nowMs, BiConsumer<K, V> onExpiry) {
+        long targetTick = nowMs / tickMs;
+        while (currentTick < targetTick) {
+            currentTick++;
+            for (int level = levels.length - 1; level > 0; level--) {
+                if (currentTick % ticksPerSlot[level] == 0) {
+                    cascade(levels[level][slotIndex(level, currentTick)]);
+                }
+            }
+            Slot<K, V> due = levels[0][slotIndex(0, currentTick)];
+            for (Entry<K, V> entry = due.first(); entry != null; entry = due.first()) {
+                entry.unlink();
+                entries.remove(entry.key);
+                onExpiry.accept(entry.key, entry.value);
+            }
+        }
+    }
+
+    private void insert(Entry<K, V> entry) {
+        for (int level = 0; level < levels.length; level++) {
+            if (entry.tick / ticksPerSlot[level] - currentTick / ticksPerSlot[level] < wheelSize) {
+                levels[level][slotIndex(level, entry.tick)].add(entry);
+                return;
+            }
+        }
+        levels[levels.length - 1][slotIndex(levels.length - 1, entry.tick)].add(entry);
+    }
+
+    private void cascade(Slot<K, V> slot) {
+        for (Entry<K, V> entry = slot.first(); entry != null; entry = slot.first()) {
+            entry.unlink();
+            insert(entry);
+        }
+    }
+
+    private int slotIndex(int level, long tick) {
+        return (int) ((tick / ticksPerSlot[level]) % wheelSize);
+    }
+
+    private static class Entry<K, V> {
+        final K key;
+        final V value;
+        final long tick;
+        Entry<K, V> prev;
+        Entry<K, V> next;
+
+        Entry(K key, V value, long tick) {
+            this.key = key;
+            this.value = value;
+            this.tick = tick;
+        }
+
+        void unlink() {
+            if (prev != null) {
+                prev.next = next;
+                next.prev = prev;
+                prev = null;
+                next = null;
+            }
+        }
+    }
+
+    private static class Slot<K, V> {
+        private final Entry<K, V> head = new Entry<>(null, null, -1);
+
+        Slot() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        void add(Entry<K, V> entry) {
+            entry.prev = head.prev;
+            entry.next = head;
+            head.prev.next = entry;
+            head.prev = entry;
+        }
+
+        Entry<K, V> first() {
+            return head.next != head ? head.next : null;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.orderms.order.tools;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Moves one logical order shard between order databases, for rebalancing shards onto
+ * new databases. Standalone (plain JDBC, no Spring context), so it runs while the
+ * order service is stopped:
+ *
+ * <pre>
+ * copy   &lt;shard&gt; &lt;source-url&gt; &lt;target-url&gt;   copy the shard's orders, items, read model,
+ *                                           history, archive and processed messages
+ * delete &lt;shard&gt; &lt;source-url&gt;                remove the shard from its old database
+ * </pre>
+ *
+ * Run {@code copy}, point the shard at the target in {@code orders.sharding.assignment},
+ * start the order service and then run {@code delete}. Credentials come from
+ * {@code ORDER_DB_USER} / {@code ORDER_DB_PASSWORD}. Order ids do not change; order
+ * and history rows get new surrogate ids in the target. Idempotency keys stay with
+ * shard 0's database.
+ */
+public class ShardMigrationTool {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String[] ORDER_KEYED_TABLES = {"order_views", "order_status_history", "processed_messages"};
+
+    public static void main(String[] args) throws SQLException {
+        if (args.length < 3 || !(args[0].equals("copy") && args.length == 4 || args[0].equals("delete"))) {
+            System.err.println("Usage: ShardMigrationTool copy <shard> <source-url> <target-url>");
+            System.err.println("       ShardMigrationTool delete <shard> <source-url>");
+            System.exit(2);
+        }
+        int shard = Integer.parseInt(args[1]);
+        String user = System.getenv().getOrDefault("ORDER_DB_USER", "orderuser");
+        String password = System.getenv().getOrDefault("ORDER_DB_PASSWORD", "orderpass");
+
+        try (Connection source = DriverManager.getConnection(args[2], user, password)) {
+            source.setAutoCommit(false);
+            if (args[0].equals("copy")) {
+                try (Connection target = DriverManager.getConnection(args[3], user, password)) {
+                    target.setAutoCommit(false);
+                    copy(shard, source, target);
+                }
+            } else {
+                delete(shard, source);
+            }
+        }
+    }
+
+    private static void copy(int shard, Connection source, Connection target) throws SQLException {
+        String where = shardPredicate(shard, "order_id");
+        if (count(target, "orders", where) > 0 || count(target, "orders_archive", where) > 0) {
+            throw new IllegalStateException("Target already holds orders of shard " + shard);
+        }
+
+        int orders = 0;
+        int items = 0;
+        try (PreparedStatement select = source.prepareStatement("SELECT * FROM orders WHERE " + where)) {
+            select.setFetchSize(BATCH_SIZE);
+            try (ResultSet rows = select.executeQuery()) {
+                List<String> columns = columns(rows.getMetaData(), "id");
+                try (PreparedStatement insert = target.prepareStatement(insertSql("orders", columns, "") + " RETURNING id")) {
+                    while (rows.next()) {
+                        bind(insert, rows, columns);
+                        long id;
+                        try (ResultSet generated = insert.executeQuery()) {
+                            generated.next();
+                            id = generated.getLong(1);
+                        }
+                        items += copyItems(source, target, rows.getLong("id"), id);
+                        orders++;
+                    }
+                }
+            }
+        }
+        System.out.printf("orders: %d (%d items)%n", orders, items);
+
+        for (String table : ORDER_KEYED_TABLES) {
+            String key = table.equals("processed_messages") ? "message_key" : "order_id";
+            System.out.printf("%s: %d%n", table, copyRows(source, target, table, shardPredicate(shard, key),
+                    !table.equals("order_views"), " ON CONFLICT DO NOTHING"));
+        }
+
+        if (exists(source, "orders_archive")) {
+            createArchive(source, target, where);
+            System.out.printf("orders_archive: %d%n", copyRows(source, target, "orders_archive", where, false, ""));
+        }
+        target.commit();
+        System.out.printf("Shard %d copied%n", shard);
+    }
+
+    private static void delete(int shard, Connection source) throws SQLException {
+        String where = shardPredicate(shard, "order_id");
+        try (Statement statement = source.createStatement()) {
+            System.out.printf("order_items: %d%n", statement.executeUpdate(
+                    "DELETE FROM order_items WHERE order_id IN (SELECT id FROM orders WHERE " + where + ")"));
+            System.out.printf("orders: %d%n", statement.executeUpdate("DELETE FROM orders WHERE " + where));
+            for (String table : ORDER_KEYED_TABLES) {
+                if (exists(source, table)) {
+                    String key = table.equals("processed_messages") ? "message_key" : "order_id";
+                    System.out.printf("%s: %d%n", table, statement.executeUpdate(
+                            "DELETE FROM " + table + " WHERE " + shardPredicate(shard, key)));
+                }
+            }
+            if (exists(source, "orders_archive")) {
+                System.out.printf("orders_archive: %d%n", statement.executeUpdate("DELETE FROM orders_archive WHERE " + where));
+            }
+        }
+        source.commit();
+        System.out.printf("Shard %d deleted%n", shard);
+    }
+
+    private static int copyItems(Connection source, Connection target, long sourceOrderId, long targetOrderId) throws SQLException {
+        try (PreparedStatement select = source.prepareStatement("SELECT * FROM order_items WHERE order_id = ?")) {
+            select.setLong(1, sourceOrderId);
+            try (ResultSet rows = select.executeQuery()) {
+                List<String> columns = columns(rows.getMetaData(), "id", "order_id");
+                List<String> insertColumns = new ArrayList<>(columns);
+                insertColumns.add("order_id");
+                int copied = 0;
+                try (PreparedStatement insert = target.prepareStatement(insertSql("order_items", insertColumns, ""))) {
+                    while (rows.next()) {
+                        bind(insert, rows, columns);
+                        insert.setLong(insertColumns.size(), targetOrderId);
+                        insert.addBatch();
+                        copied++;
+                    }
+                    insert.executeBatch();
+                }
+                return copied;
+            }
+        }
+    }
+
+    private static int copyRows(Connection source, Connection target, String table, String where,
+                                boolean newIds, String suffix) throws SQLException {
+        if (!exists(source, table) || !exists(target, table)) {
+            return 0;
+        }
+        try (PreparedStatement select = source.prepareStatement("SELECT * FROM " + table + " WHERE " + where)) {
+            select.setFetchSize(BATCH_SIZE);
+            try (ResultSet rows = select.executeQuery()) {
+                List<String> columns = newIds ? columns(rows.getMetaData(), "id") : columns(rows.getMetaData());
+                int copied = 0;
+                try (PreparedStatement insert = target.prepareStatement(insertSql(table, columns, suffix))) {
+                    while (rows.next()) {
+                        bind(insert, rows, columns);
+                        insert.addBatch();
+                        if (++copied % BATCH_SIZE == 0) {
+                            insert.executeBatch();
+                        }
+                    }
+                    insert.executeBatch();
+                }
+                return copied;
+            }
+        }
+    }
+
+    // Same layout as OrderArchiveService: monthly range partitions on created_at
+    private static void createArchive(Connection source, Connection target, String where) throws SQLException {
+        try (Statement statement = target.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS orders_archive (LIKE orders INCLUDING DEFAULTS, " +
+                    "items jsonb COMPRESSION lz4) PARTITION BY RANGE (created_at)");
+        }
+        try (Statement months = source.createStatement();
+             ResultSet rows = months.executeQuery("SELECT DISTINCT date_trunc('month', created_at) FROM orders_archive WHERE " + where)) {
+            while (rows.next()) {
+                LocalDate from = rows.getTimestamp(1).toLocalDateTime().toLocalDate();
+                String partition = String.format("orders_archive_y%04dm%02d", from.getYear(), from.getMonthValue());
+                try (Statement statement = target.createStatement()) {
+                    statement.execute("CREATE TABLE IF NOT EXISTS " + partition + " PARTITION OF orders_archive " +
+                            "FOR VALUES FROM ('" + from + "') TO ('" + from.plusMonths(1) + "')");
+                }
+            }
+        }
+    }
+
+    // Ids without a shard prefix were created before sharding and belong to shard 0
+    private static String shardPredicate(int shard, String column) {
+        String predicate = column + " LIKE 'ORD-S" + shard + "-%'";
+        return shard == 0 ? "(" + predicate + " OR " + column + " NOT LIKE 'ORD-S%')" : predicate;
+    }
+
+    private static long count(Connection connection, String table, String where) throws SQLException {
+        if (!exists(connection, table)) {
+            return 0;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT count(*) FROM " + table + " WHERE " + where)) {
+            rows.next();
+            return rows.getLong(1);
+        }
+    }
+
+    private static boolean exists(Connection connection, String table) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT to_regclass(?) IS NOT NULL")) {
+            statement.setString(1, table);
+            try (ResultSet rows = statement.executeQuery()) {
+                rows.next();
+                return rows.getBoolean(1);
+            }
+        }
+    }
+
+    private static List<String> columns(ResultSetMetaData metaData, String... excluded) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        List<String> skip = new ArrayList<>();
+        Collections.addAll(skip, excluded);
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            if (!skip.contains(metaData.getColumnName(i))) {
+                columns.add(metaData.getColumnName(i));
+            }
+        }
+        return columns;
+    }
+
+    private static String insertSql(String table, List<String> columns, String suffix) {
+        return "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+                + String.join(", ", Collections.nCopies(columns.size(), "?")) + ")" + suffix;
+    }
+
+    private static void bind(PreparedStatement insert, ResultSet row, List<String> columns) throws SQLException {
+        for (int i = 0; i < columns.size(); i++) {
+            insert.setObject(i + 1, row.getObject(columns.get(i)));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.orderms.order.service;
+
+import com.orderms.order.service.OrderExportService.Cursor;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.ErrorResponseException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderExportServiceTest {
+
+    @Test
+    void decodesWhatItEncodes() {
+        Cursor cursor = new Cursor(1, LocalDateTime.of(2026, 1, 15, 10, 30, 5, 123_000_000), "ORD-S3-1A2B3C4D");
+
+        assertThat(Cursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void keepsOrderIdsContainingTheSeparator() {
+        Cursor cursor = new Cursor(0, LocalDateTime.of(2026, 1, 15, 10, 30), "ORD-|odd|");
+
+        assertThat(Cursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void encodesAUrlSafeTokenWithoutPadding() {
+        String token = new Cursor(12, LocalDateTime.of(2026, 1, 15, 10, 30, 5), "ORD-1A2B3C4D").encode();
+
+        assertThat(token).matches("[A-Za-z0-9_-]+");
+        assertThat(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8))
+                .isEqualTo("12|2026-01-15T10:30:05|ORD-1A2B3C4D");
+    }
+
+    @Test
+    void treatsAMissingCursorAsTheStart() {
+        assertThat(Cursor.decode(null)).isNull();
+        assertThat(Cursor.decode(" ")).isNull();
+    }
+
+    @Test
+    void rejectsMalformedCursors() {
+        assertThatThrownBy(() -> Cursor.decode("not base64!")).isInstanceOf(ErrorResponseException.class);
+        assertThatThrownBy(() -> Cursor.decode(token("x|2026-01-15T10:30|ORD-1")))
+                .isInstanceOf(ErrorResponseException.class);
+        assertThatThrownBy(() -> Cursor.decode(token("0|yesterday|ORD-1")))
+                .isInstanceOf(ErrorResponseException.class);
+        assertThatThrownBy(() -> Cursor.decode(token("0|2026-01-15T10:30")))
+                .isInstanceOf(ErrorResponseException.class);
+    }
+
+    private static String token(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,84 @@
+package com.orderms.order.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderShardRouterTest {
+
+    private static final List<String> DATABASES = List.of("jdbc:postgresql://db0/orders", "jdbc:postgresql://db1/orders");
+
+    // 4 logical shards on 2 databases
+    private final OrderShardRouter router = new OrderShardRouter(true, 4, 64, DATABASES, List.of());
+
+    @Test
+    void writesTheCustomersShardIntoTheOrderId() {
+        for (int i = 0; i < 100; i++) {
+            String customerId = "customer-" + i;
+            String orderId = router.newOrderId(customerId);
+
+            assertThat(orderId).matches("ORD-S[0-3]-[0-9A-F]{8}");
+            assertThat(router.shardOf(orderId)).isEqualTo(router.shardForCustomer(customerId));
+        }
+    }
+
+    @Test
+    void placesACustomerOnTheSameShardEveryTime() {
+        OrderShardRouter other = new OrderShardRouter(true, 4, 64, DATABASES, List.of());
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(other.shardForCustomer("customer-" + i)).isEqualTo(router.shardForCustomer("customer-" + i));
+        }
+    }
+
+    @Test
+    void routesIdsWithoutAKnownShardToShardZero() {
+        assertThat(router.shardOf("ORD-1A2B3C4D")).isZero();
+        assertThat(router.shardOf("ORD-S9-1A2B3C4D")).isZero();
+        assertThat(router.shardOf("ORD-Sx-1A2B3C4D")).isZero();
+        assertThat(router.shardOf("ORD-S2")).isZero();
+        assertThat(router.shardOf(null)).isZero();
+        assertThat(router.shardOf("ORD-S3-1A2B3C4D")).isEqualTo(3);
+    }
+
+    @Test
+    void mapsShardsRoundRobinOntoDatabasesByDefault() {
+        assertThat(router.databaseOf(0)).isZero();
+        assertThat(router.databaseOf(1)).isEqualTo(1);
+        assertThat(router.databaseOf(2)).isZero();
+        assertThat(router.databaseOf(3)).isEqualTo(1);
+    }
+
+    @Test
+    void followsTheConfiguredAssignment() {
+        OrderShardRouter moved = new OrderShardRouter(true, 4, 64, DATABASES, List.of(0, 0, 0, 1));
+
+        assertThat(moved.databaseOf(1)).isZero();
+        assertThat(moved.databaseOf(3)).isEqualTo(1);
+        assertThat(moved.onShardOf("ORD-S3-1A2B3C4D", moved::currentDatabase)).isEqualTo(1);
+        assertThat(moved.onShardOf("ORD-S1-1A2B3C4D", moved::currentDatabase)).isZero();
+        assertThat(moved.currentDatabase()).isZero();
+    }
+
+    @Test
+    void rejectsAnAssignmentThatDoesNotCoverEveryShard() {
+        assertThatThrownBy(() -> new OrderShardRouter(true, 4, 64, DATABASES, List.of(0, 1)))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new OrderShardRouter(true, 4, 64, DATABASES, List.of(0, 1, 2, 0)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void usesASingleShardWhenDisabled() {
+        OrderShardRouter disabled = new OrderShardRouter(false, 4, 64, DATABASES, List.of());
+
+        String orderId = disabled.newOrderId("customer-1");
+        assertThat(orderId).matches("ORD-[0-9A-F]{8}");
+        assertThat(disabled.shardOf(orderId)).isZero();
+        assertThat(disabled.shardForCustomer("customer-1")).isZero();
+        assertThat(disabled.databases()).isEqualTo(1);
+    }
+}
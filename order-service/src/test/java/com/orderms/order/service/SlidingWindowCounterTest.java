@@ -0,0 +1,70 @@
+package com.orderms.order.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlidingWindowCounterTest {
+
+    // 6 buckets of 10s: a 1 minute window
+    private final SlidingWindowCounter counter = new SlidingWindowCounter(10_000, 6);
+
+    @Test
+    void sumsEverythingInsideTheWindow() {
+        counter.add(1_000, 1);
+        counter.add(15_000, 2);
+        counter.add(59_999, 3);
+
+        assertThat(counter.sum(59_999)).isEqualTo(6);
+        assertThat(counter.windowMs()).isEqualTo(60_000);
+    }
+
+    @Test
+    void dropsBucketsThatLeftTheWindow() {
+        counter.add(1_000, 1);
+        counter.add(15_000, 2);
+
+        assertThat(counter.sum(60_000)).isEqualTo(2);
+        assertThat(counter.sum(70_000)).isZero();
+    }
+
+    @Test
+    void restartsASlotWhenItsBucketComesRoundAgain() {
+        counter.add(5_000, 7);
+        counter.add(65_000, 1);
+
+        assertThat(counter.sum(65_000)).isEqualTo(1);
+    }
+
+    @Test
+    void ignoresSlotsLeftFromAnOlderLap() {
+        counter.add(5_000, 4);
+        counter.add(45_000, 1);
+
+        // Bucket 6 shares slot 0 with bucket 0 but was never written
+        assertThat(counter.sum(65_000)).isEqualTo(1);
+        assertThat(counter.sum(125_000)).isZero();
+    }
+
+    @Test
+    void countsConcurrentAddsExactly() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    counter.add(25_000, 1);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(counter.sum(30_000)).isEqualTo(80_000);
+    }
+}
@@ -0,0 +1,100 @@
+package com.orderms.order.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTest {
+
+    private static final long TICK_MS = 10;
+
+    // 3 levels of 8 slots: 8, 64 and 512 ticks
+    private final TimingWheel<String, String> wheel = new TimingWheel<>(TICK_MS, 8, 3, 0);
+
+    @Test
+    void firesAtTheDeadlineAndNotBefore() {
+        wheel.schedule("order-1", "PAYMENT_PROCESSING", 50);
+
+        assertThat(advanceTo(40)).isEmpty();
+        assertThat(advanceTo(50)).containsExactly("order-1");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void cascadesDeadlinesFromHigherLevels() {
+        wheel.schedule("level-1", "a", 200);
+        wheel.schedule("level-2", "b", 3_000);
+
+        assertThat(advanceTo(190)).isEmpty();
+        assertThat(advanceTo(200)).containsExactly("level-1");
+        assertThat(advanceTo(2_990)).isEmpty();
+        assertThat(advanceTo(3_000)).containsExactly("level-2");
+    }
+
+    @Test
+    void cancelledEntriesNeverFire() {
+        wheel.schedule("order-1", "a", 100);
+        wheel.schedule("order-2", "b", 100);
+
+        assertThat(wheel.cancel("order-1")).isTrue();
+        assertThat(wheel.cancel("order-1")).isFalse();
+        assertThat(advanceTo(1_000)).containsExactly("order-2");
+    }
+
+    @Test
+    void reschedulingReplacesTheDeadline() {
+        wheel.schedule("order-1", "a", 100);
+        wheel.schedule("order-1", "b", 300);
+
+        assertThat(wheel.size()).isEqualTo(1);
+        assertThat(advanceTo(290)).isEmpty();
+        assertThat(advanceTo(300)).containsExactly("order-1");
+    }
+
+    @Test
+    void pastDeadlinesFireOnTheNextTick() {
+        advanceTo(500);
+        wheel.schedule("order-1", "a", 100);
+
+        assertThat(advanceTo(510)).containsExactly("order-1");
+    }
+
+    @Test
+    void deadlinesBeyondTheTopLevelAreClampedToItsRange() {
+        wheel.schedule("order-1", "a", 1_000_000);
+
+        List<String> fired = advanceTo(7 * 64 * TICK_MS);
+        assertThat(fired).containsExactly("order-1");
+    }
+
+    @Test
+    void firesEveryEntryOnItsOwnTick() {
+        Random random = new Random(42);
+        Map<String, Long> deadlines = new HashMap<>();
+        for (int i = 0; i < 2_000; i++) {
+            long deadline = TICK_MS * (1 + random.nextInt(440));
+            deadlines.put("order-" + i, deadline);
+            wheel.schedule("order-" + i, "v", deadline);
+        }
+
+        Map<String, Long> firedAt = new HashMap<>();
+        for (long now = TICK_MS; now <= 450 * TICK_MS; now += TICK_MS) {
+            long tickNow = now;
+            wheel.advance(now, (key, value) -> firedAt.put(key, tickNow));
+        }
+
+        assertThat(firedAt).isEqualTo(deadlines);
+    }
+
+    private List<String> advanceTo(long nowMs) {
+        List<String> fired = new ArrayList<>();
+        wheel.advance(nowMs, (key, value) -> fired.add(key));
+        return fired;
+    }
+}
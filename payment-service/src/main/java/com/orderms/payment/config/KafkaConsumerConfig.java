@@ -1,6 +1,12 @@
 package com.orderms.payment.config;
 
+import com.orderms.common.config.SqlProfiler;
+import com.orderms.common.kafka.IdempotentConsumer;
+import com.orderms.common.kafka.PriorityLanes;
+import com.orderms.common.kafka.SagaTiming;
 import com.orderms.payment.kafka.OrderCreatedEvent;
+import com.orderms.payment.kafka.RefundPaymentCommand;
+import lombok.RequiredArgsConstructor;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,17 +15,28 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.listener.CompositeRecordInterceptor;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 
 import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
+@RequiredArgsConstructor
 public class KafkaConsumerConfig {
 
+    private final IdempotentConsumer idempotentConsumer;
+    private final PriorityLanes priorityLanes;
+    private final SagaTiming sagaTiming;
+    private final SqlProfiler sqlProfiler;
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
+    // Continues the trace (and its sampling decision) carried in the record's headers
+    @Value("${spring.kafka.listener.observation-enabled:false}")
+    private boolean observationEnabled;
+
     @Bean
     public ConsumerFactory<String, OrderCreatedEvent> orderCreatedConsumerFactory() {
         Map<String, Object> props = new HashMap<>();
@@ -43,6 +60,41 @@ public class KafkaConsumerConfig {
         ConcurrentKafkaListenerContainerFactory<String, OrderCreatedEvent> factory = 
             new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(orderCreatedConsumerFactory());
+        factory.getContainerProperties().setObservationEnabled(observationEnabled);
+        // SQL profiling covers the duplicate check; then a weighted-fair slot for the record's lane,
+        // then stage timing
+        factory.setRecordInterceptor(new CompositeRecordInterceptor<>(sqlProfiler.recordInterceptor(),
+                idempotentConsumer.recordInterceptor(), priorityLanes.recordInterceptor(), sagaTiming.recordInterceptor()));
+        factory.getContainerProperties().setConsumerRebalanceListener(idempotentConsumer);
+        return factory;
+    }
+
+    @Bean
+    public ConsumerFactory<String, RefundPaymentCommand> refundPaymentConsumerFactory() {
+        Map<String, Object> props = new HashMap<>();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, "payment-service-group");
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        // Never see commands from aborted transactions of the Kafka Streams saga engine
+        props.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        props.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
+        props.put(JsonDeserializer.USE_TYPE_INFO_HEADERS, false);
+        
+        return new DefaultKafkaConsumerFactory<>(
+                props,
+                new StringDeserializer(),
+                new JsonDeserializer<>(RefundPaymentCommand.class, false));
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, RefundPaymentCommand> refundPaymentKafkaListenerContainerFactory() {
+        ConcurrentKafkaListenerContainerFactory<String, RefundPaymentCommand> factory = 
+            new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(refundPaymentConsumerFactory());
+        factory.getContainerProperties().setObservationEnabled(observationEnabled);
+        factory.setRecordInterceptor(new CompositeRecordInterceptor<>(sqlProfiler.recordInterceptor(),
+                idempotentConsumer.recordInterceptor(), sagaTiming.recordInterceptor()));
+        factory.getContainerProperties().setConsumerRebalanceListener(idempotentConsumer);
         return factory;
     }
 }
@@ -0,0 +1,85 @@
+package com.orderms.payment.config;
+
+import com.orderms.common.config.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Payment database with the streaming replicas in {@code payment.replicas.urls}
+ * (credentials from {@code spring.datasource}) serving read-only transactions.
+ */
+@Configuration
+@ConditionalOnExpression("'${payment.replicas.urls:}' != ''")
+public class ReadReplicaConfig {
+
+    private ReplicaRoutingDataSource router;
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${payment.replicas.urls}") List<String> urls,
+                                 @Value("${payment.replicas.max-lag-ms:1000}") long maxLagMs,
+                                 @Value("${payment.replicas.pool-size:10}") int poolSize) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        primary.setPoolName("payment-db");
+        primary.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource pool = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(url.trim())
+                    .build();
+            pool.setPoolName("payment-db-replica-" + replicas.size());
+            pool.setMaximumPoolSize(poolSize);
+            pool.setReadOnly(true);
+            pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+            replicas.add(pool);
+        }
+        router = new ReplicaRoutingDataSource("payment-db", primary, replicas, maxLagMs, meterRegistry);
+        router.afterPropertiesSet();
+        router.refreshLag();
+        return new ClosingLazyConnectionDataSourceProxy(router);
+    }
+
+    @Scheduled(fixedDelayString = "${payment.replicas.check-interval-ms:500}")
+    public void refreshLag() {
+        if (router != null) {
+            router.refreshLag();
+        }
+    }
+
+    // Defers fetching the physical connection until the transaction's read-only flag is known
+    static class ClosingLazyConnectionDataSourceProxy extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+        ClosingLazyConnectionDataSourceProxy(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public void close() {
+            if (getTargetDataSource() instanceof ReplicaRoutingDataSource target) {
+                target.close();
+            }
+        }
+    }
+}
@@ -6,6 +6,8 @@ public class OrderCreatedEvent {
     private String orderId, customerId, customerEmail;
     private Double totalAmount;
     private List<OrderItemDto> items;
+    private Boolean inventoryHold;
+    private String priority;
     @Data @NoArgsConstructor @AllArgsConstructor @Builder
     public static class OrderItemDto { private String productId, productName; private Integer quantity; private Double price; }
 }
@@ -6,4 +6,6 @@ public class PaymentCompletedEvent {
     private String orderId, paymentId, transactionId;
     private Double amount;
     private List<OrderCreatedEvent.OrderItemDto> items;
+    private Boolean inventoryHold;
+    private String priority;
 }
@@ -1,4 +1,5 @@
 package com.orderms.payment.kafka;
+import com.orderms.common.kafka.PriorityLanes;
 import com.orderms.payment.service.PaymentService;
 import io.micrometer.observation.annotation.Observed;
 import lombok.RequiredArgsConstructor;
@@ -13,16 +14,35 @@ public class PaymentEventConsumer {
     @KafkaListener(
         topics = "order-created", 
         groupId = "payment-service-group",
-        containerFactory = "orderCreatedKafkaListenerContainerFactory"
+        containerFactory = "orderCreatedKafkaListenerContainerFactory",
+        concurrency = "${lanes.concurrency:2}",
+        autoStartup = "#{!${exactly-once.enabled:false}}"
+    )
+    @KafkaListener(
+        topics = "order-created" + PriorityLanes.EXPRESS_SUFFIX, 
+        groupId = "payment-service-group",
+        containerFactory = "orderCreatedKafkaListenerContainerFactory",
+        concurrency = "${lanes.concurrency:2}",
+        autoStartup = "#{!${exactly-once.enabled:false}}"
     )
     public void handleOrderCreated(OrderCreatedEvent event) {
-        log.info("Received OrderCreatedEvent: {}", event.getOrderId());
+        log.debug("Received OrderCreatedEvent: {}", event.getOrderId());
         service.processPayment(event);
     }
     
-    @KafkaListener(topics = "refund-payment", groupId = "payment-service-group")
+    @KafkaListener(
+        topics = "refund-payment", 
+        groupId = "payment-service-group",
+        containerFactory = "refundPaymentKafkaListenerContainerFactory",
+        autoStartup = "#{!${exactly-once.enabled:false}}"
+    )
     public void handleRefund(RefundPaymentCommand cmd) {
-        log.info("Received RefundPaymentCommand: {}", cmd.getOrderId());
+        log.debug("Received RefundPaymentCommand: {}", cmd.getOrderId());
+        // Timeouts and late results re-send refunds; repeats are answered without touching the primary
+        if (service.isRefunded(cmd.getPaymentId())) {
+            log.info("Payment {} already refunded, skipping", cmd.getPaymentId());
+            return;
+        }
         service.refundPayment(cmd);
     }
 }
@@ -0,0 +1,102 @@
+package com.orderms.payment.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orderms.common.kafka.ExactlyOnceProcessor;
+import com.orderms.common.kafka.IdempotentConsumer;
+import com.orderms.common.kafka.PriorityLanes;
+import com.orderms.common.kafka.SagaEventPublisher;
+import com.orderms.payment.model.OutboxEvent;
+import com.orderms.payment.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The payment service's {@link ExactlyOnceProcessor}: the same listener methods the
+ * containers call in the default mode, with the service's processed-message markers
+ * and outbox.
+ */
+@Component
+@ConditionalOnProperty(name = "exactly-once.enabled", havingValue = "true")
+public class PaymentExactlyOnceProcessor extends ExactlyOnceProcessor {
+
+    private final IdempotentConsumer idempotentConsumer;
+    private final SagaEventPublisher eventPublisher;
+    private final OutboxEventRepository outboxRepository;
+
+    public PaymentExactlyOnceProcessor(PaymentEventConsumer listener,
+                                       IdempotentConsumer idempotentConsumer,
+                                       SagaEventPublisher eventPublisher,
+                                       OutboxEventRepository outboxRepository,
+                                       TransactionTemplate transactionTemplate,
+                                       ObjectMapper objectMapper,
+                                       MeterRegistry meterRegistry) {
+        super(transactionTemplate, objectMapper, meterRegistry);
+        this.idempotentConsumer = idempotentConsumer;
+        this.eventPublisher = eventPublisher;
+        this.outboxRepository = outboxRepository;
+
+        register("order-created", OrderCreatedEvent.class, listener::handleOrderCreated);
+        register("order-created" + PriorityLanes.EXPRESS_SUFFIX, OrderCreatedEvent.class, listener::handleOrderCreated);
+        register("refund-payment", RefundPaymentCommand.class, listener::handleRefund);
+    }
+
+    @Override
+    protected boolean isDuplicate(ConsumerRecord<String, String> record) {
+        return idempotentConsumer.isDuplicate(record);
+    }
+
+    @Override
+    protected void markProcessedInTransaction(ConsumerRecord<String, String> record) {
+        idempotentConsumer.markProcessedInTransaction(record);
+    }
+
+    @Override
+    protected void onPartitionsAssigned(KafkaConsumer<String, String> consumer, Collection<TopicPartition> partitions) {
+        idempotentConsumer.onPartitionsAssigned(consumer, partitions);
+    }
+
+    @Override
+    protected String sourceId(ConsumerRecord<String, String> record) {
+        return IdempotentConsumer.MessageId.of(record).value();
+    }
+
+    @Override
+    protected void runForSource(String sourceId, Runnable action) {
+        eventPublisher.runForSource(sourceId, action);
+    }
+
+    @Override
+    protected List<OutboxRecord> findOutbox(List<String> sourceIds) {
+        return outboxRepository.findBySourceIdInOrderById(sourceIds).stream()
+                .map(event -> new OutboxRecord(event.getId(), toRecord(event)))
+                .toList();
+    }
+
+    @Override
+    protected void deleteOutbox(List<Long> ids) {
+        outboxRepository.deleteByIdIn(ids);
+    }
+
+    @Override
+    protected int deleteOutboxCreatedBefore(LocalDateTime cutoff) {
+        return outboxRepository.deleteCreatedBefore(cutoff);
+    }
+
+    private ProducerRecord<String, String> toRecord(OutboxEvent event) {
+        ProducerRecord<String, String> record =
+                new ProducerRecord<>(event.getTopic(), event.getMessageKey(), event.getPayload());
+        record.headers().add(IdempotentConsumer.EVENT_ID_HEADER, event.getEventId().getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+}
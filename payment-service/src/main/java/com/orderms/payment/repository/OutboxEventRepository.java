@@ -0,0 +1,29 @@
+package com.orderms.payment.repository;
+
+import com.orderms.payment.model.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    
+    List<OutboxEvent> findBySourceIdInOrderById(Collection<String> sourceIds);
+    
+    @Modifying
+    @Transactional
+    @Query("delete from OutboxEvent e where e.id in :ids")
+    int deleteByIdIn(@Param("ids") Collection<Long> ids);
+    
+    @Modifying
+    @Transactional
+    @Query("delete from OutboxEvent e where e.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,110 @@
+package com.orderms.payment.service;
+
+import com.orderms.common.service.PartitionedArchive;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Moves settled payments (COMPLETED, FAILED, REFUNDED) that have not changed for
+ * {@code payment.archive.retention-days} into {@code payments_archive}, range-partitioned
+ * by month of creation. The retention has to outlast any refund the order saga can
+ * still send, since refunds only look at the hot table.
+ *
+ * Both tables also get a bytewise {@code order_id} index, which the order service's
+ * payment reconciliation walks in {@code COLLATE "C"} order.
+ */
+@Service
+@Slf4j
+public class PaymentArchiveService {
+
+    private static final String ORDER_ID_C = "order_id COLLATE \"C\"";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PartitionedArchive archive;
+    private final boolean enabled;
+    private final long retentionDays;
+    private final int batchSize;
+
+    public PaymentArchiveService(JdbcTemplate jdbcTemplate,
+                                 TransactionTemplate transactionTemplate,
+                                 @Value("${payment.archive.enabled:true}") boolean enabled,
+                                 @Value("${payment.archive.retention-days:30}") long retentionDays,
+                                 @Value("${payment.archive.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.archive = new PartitionedArchive(jdbcTemplate, "payments", "payments_archive");
+        this.enabled = enabled;
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+    }
+
+    // Outside a transaction: the hot table is indexed without blocking payment writes
+    @EventListener(ApplicationReadyEvent.class)
+    public void createReconciliationIndex() {
+        jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_payments_order_id_c ON payments (" + ORDER_ID_C + ")");
+    }
+
+    @Scheduled(fixedDelayString = "${payment.archive.interval-ms:3600000}",
+               initialDelayString = "${payment.archive.initial-delay-ms:300000}")
+    public void archive() {
+        if (!enabled) {
+            return;
+        }
+        if (!Boolean.TRUE.equals(transactionTemplate.execute(status -> prepare()))) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int total = 0;
+        int moved;
+        do {
+            moved = transactionTemplate.execute(status -> archiveBatch(LocalDateTime.now().minusDays(retentionDays)));
+            total += moved;
+        } while (moved == batchSize);
+        if (total > 0) {
+            log.info("Archived {} payments older than {} days in {} ms",
+                    total, retentionDays, System.currentTimeMillis() - start);
+        }
+    }
+
+    // Schema work for the run, done once under the archiver lock; false if another instance is archiving
+    private boolean prepare() {
+        if (!archive.tryLock()) {
+            return false;
+        }
+        archive.initialize();
+        archive.createIndex("order_id");
+        archive.createIndex("payment_id");
+        // Partitioned tables cannot be indexed concurrently; the archive is only ever appended to
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_payments_archive_order_id_c ON payments_archive (" + ORDER_ID_C + ")");
+        return true;
+    }
+
+    private int archiveBatch(LocalDateTime cutoff) {
+        if (!archive.tryLock()) {
+            return 0;
+        }
+        // Rows without created_at have no partition to go to
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM payments WHERE status IN ('COMPLETED', 'FAILED', 'REFUNDED') AND updated_at < ? " +
+                "AND created_at IS NOT NULL ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED", Long.class, cutoff, batchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Long[] batch = ids.toArray(Long[]::new);
+        archive.ensurePartitions(batch);
+        jdbcTemplate.update("INSERT INTO payments_archive (" + archive.columnList("") + ") " +
+                "SELECT " + archive.columnList("p") + " FROM payments p WHERE p.id = ANY(?)", (Object) batch);
+        jdbcTemplate.update("DELETE FROM payments WHERE id = ANY(?)", (Object) batch);
+        return ids.size();
+    }
+}
@@ -1,11 +1,13 @@
 package com.orderms.payment.service;
+import com.orderms.common.config.HotPathLogSampler;
+import com.orderms.common.kafka.PriorityLanes;
+import com.orderms.common.kafka.SagaEventPublisher;
 import com.orderms.payment.kafka.*;
 import com.orderms.payment.model.Payment;
 import com.orderms.payment.repository.PaymentRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import java.util.Random;
@@ -14,7 +16,7 @@ import java.util.UUID;
 @Service @RequiredArgsConstructor @Slf4j
 public class PaymentService {
     private final PaymentRepository repo;
-    private final KafkaTemplate<String, Object> kafka;
+    private final SagaEventPublisher events;
     private final Random random = new Random();
     
     // Configurable failure rate (default 10%)
@@ -23,7 +25,7 @@ public class PaymentService {
     
     @Transactional
     public void processPayment(OrderCreatedEvent event) {
-        log.info("Processing payment for order: {} (Failure rate: {}%)", event.getOrderId(), failureRate);
+        log.debug("Processing payment for order: {} (Failure rate: {}%)", event.getOrderId(), failureRate);
         String paymentId = "PAY-" + UUID.randomUUID().toString().substring(0, 8).toUpperCase();
         Payment payment = Payment.builder()
             .paymentId(paymentId).orderId(event.getOrderId())
@@ -39,30 +41,46 @@ public class PaymentService {
             payment.setStatus(Payment.PaymentStatus.COMPLETED);
             payment.setTransactionId("TXN-" + UUID.randomUUID().toString().substring(0, 8));
             repo.save(payment);
-            kafka.send("payment-completed", event.getOrderId(), PaymentCompletedEvent.builder()
+            events.publish(PriorityLanes.topic("payment-completed", event.getPriority()), event.getOrderId(), PaymentCompletedEvent.builder()
                 .orderId(event.getOrderId()).paymentId(paymentId)
                 .transactionId(payment.getTransactionId()).amount(event.getTotalAmount())
                 .items(event.getItems())  // Pass items to inventory service
+                .inventoryHold(event.getInventoryHold())
+                .priority(event.getPriority())
                 .build());
-            log.info("Payment completed: {}", event.getOrderId());
+            log.atInfo().addMarker(HotPathLogSampler.HOT_PATH).addKeyValue("orderId", event.getOrderId())
+                .addKeyValue("paymentId", paymentId).log("Payment completed");
         } else {
             payment.setStatus(Payment.PaymentStatus.FAILED);
             repo.save(payment);
-            kafka.send("payment-failed", event.getOrderId(), PaymentFailedEvent.builder()
+            events.publish("payment-failed", event.getOrderId(), PaymentFailedEvent.builder()
                 .orderId(event.getOrderId()).reason("Payment gateway declined (simulated failure)").build());
             log.error("Payment failed: {}", event.getOrderId());
         }
     }
     
+    // Served by a read replica when one is configured; REFUNDED is terminal, so a lagging replica never claims it early
+    @Transactional(readOnly = true)
+    public boolean isRefunded(String paymentId) {
+        return repo.findByPaymentId(paymentId)
+            .map(payment -> payment.getStatus() == Payment.PaymentStatus.REFUNDED)
+            .orElse(false);
+    }
+    
     @Transactional
     public void refundPayment(RefundPaymentCommand cmd) {
-        log.info("Refunding payment: {}", cmd.getPaymentId());
+        log.debug("Refunding payment: {}", cmd.getPaymentId());
         Payment payment = repo.findByPaymentId(cmd.getPaymentId())
             .orElseThrow(() -> new RuntimeException("Payment not found: " + cmd.getPaymentId()));
+        if (payment.getStatus() == Payment.PaymentStatus.REFUNDED) {
+            log.info("Payment {} already refunded", cmd.getPaymentId());
+            return;
+        }
         payment.setStatus(Payment.PaymentStatus.REFUNDED);
         repo.save(payment);
-        kafka.send("payment-refunded", cmd.getOrderId(), PaymentRefundedEvent.builder()
+        events.publish("payment-refunded", cmd.getOrderId(), PaymentRefundedEvent.builder()
             .orderId(cmd.getOrderId()).paymentId(cmd.getPaymentId()).build());
-        log.info("Payment refunded: {}", cmd.getOrderId());
+        log.atInfo().addMarker(HotPathLogSampler.HOT_PATH).addKeyValue("orderId", cmd.getOrderId())
+            .addKeyValue("paymentId", cmd.getPaymentId()).log("Payment refunded");
     }
 }
@@ -0,0 +1,66 @@
+#!/bin/bash
+
+# Dead-Letter Replay Tool
+# Moves records from a service's dead-letter topic back into that service's
+# first retry topic, so only the consumer group that failed sees them again.
+#
+#   ./replay-dlq.sh list                       # show dead-letter topics and depth
+#   ./replay-dlq.sh <dlt-topic> [max-messages] # replay, e.g. payment-completed-order-dlt
+#
+# The replay itself runs inside the owning service (POST /api/dlq/<dlt-topic>/replay),
+# which copies key, value, headers and partition unchanged. Progress is tracked by the
+# "dlq-replay" consumer group, so a record is replayed once.
+
+set -e
+
+KAFKA_CONTAINER=${KAFKA_CONTAINER:-kafka}
+BOOTSTRAP=${BOOTSTRAP:-localhost:9092}
+ORDER_SERVICE_URL=${ORDER_SERVICE_URL:-http://localhost:8080}
+PAYMENT_SERVICE_URL=${PAYMENT_SERVICE_URL:-http://localhost:8081}
+INVENTORY_SERVICE_URL=${INVENTORY_SERVICE_URL:-http://localhost:8082}
+NOTIFICATION_SERVICE_URL=${NOTIFICATION_SERVICE_URL:-http://localhost:8083}
+
+kafka() {
+    docker exec -i "${KAFKA_CONTAINER}" "$@"
+}
+
+if [ -z "$1" ]; then
+    echo "Usage: $0 list | <dlt-topic> [max-messages]"
+    exit 1
+fi
+
+if [ "$1" == "list" ]; then
+    for topic in $(kafka kafka-topics --bootstrap-server "${BOOTSTRAP}" --list | grep -- '-dlt$'); do
+        depth=$(kafka kafka-run-class kafka.tools.GetOffsetShell --broker-list "${BOOTSTRAP}" --topic "${topic}" \
+            | awk -F: '{sum += $3} END {print sum}')
+        echo "${topic}: ${depth} records"
+    done
+    exit 0
+fi
+
+DLT_TOPIC=$1
+MAX_MESSAGES=${2:-100}
+
+if [[ "${DLT_TOPIC}" != *-dlt ]]; then
+    echo "❌ ${DLT_TOPIC} is not a dead-letter topic"
+    exit 1
+fi
+
+# <topic>-<service>-dlt is replayed by <service>
+case "${DLT_TOPIC}" in
+    *-order-dlt) SERVICE_URL=${ORDER_SERVICE_URL} ;;
+    *-payment-dlt) SERVICE_URL=${PAYMENT_SERVICE_URL} ;;
+    *-inventory-dlt) SERVICE_URL=${INVENTORY_SERVICE_URL} ;;
+    *-notification-dlt) SERVICE_URL=${NOTIFICATION_SERVICE_URL} ;;
+    *)
+        echo "❌ No service owns ${DLT_TOPIC}"
+        exit 1
+        ;;
+esac
+
+echo "Replaying up to ${MAX_MESSAGES} records from ${DLT_TOPIC} via ${SERVICE_URL}"
+
+curl -sf -X POST "${SERVICE_URL}/api/dlq/${DLT_TOPIC}/replay?max=${MAX_MESSAGES}"
+echo
+
+echo "✅ Replay finished"